@@ -0,0 +1,120 @@
+package agency;
+
+import agency.criteria.*;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Hot paths of the agency package, for fleets of 1k to 1M vehicles.
+ * Run with {@code ./gradlew jmh}, which also reports allocation rates with the GC profiler.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class AgencyBenchmark {
+
+    @Param({"1000", "10000", "100000", "1000000"})
+    private int fleetSize;
+
+    @Param({"CARS", "MOTORBIKES", "MIXED"})
+    private Fleets.Mix mix;
+
+    private List<Vehicle> fleet;
+    private RentalAgency agency;
+    private Vehicle extraVehicle;
+    private Client client;
+    private int next;
+
+    private Criterion brand;
+    private Criterion maxPrice;
+    private Criterion productionYear;
+    private Criterion vehicleType;
+    private Criterion minSeats;
+    private Criterion minCylinderCapacity;
+    private Criterion composite;
+
+    @Setup
+    public void setUp() {
+        this.fleet = Fleets.generate(this.fleetSize, this.mix);
+        this.agency = new RentalAgency(this.fleet);
+        this.extraVehicle = Fleets.vehicle(this.fleetSize, this.mix);
+        this.client = new Client("Bench", "Client", 1990);
+
+        this.brand = new BrandCriterion("Brand7");
+        this.maxPrice = new MaxPriceCriterion(60);
+        this.productionYear = new ProductionYearCriterion(2010, 2015);
+        this.vehicleType = new VehicleTypeCriterion(Motorbike.class);
+        this.minSeats = new MinSeatsCriterion(5);
+        this.minCylinderCapacity = new MinCylinderCapacityCriterion(500);
+        this.composite = this.productionYear.and(this.maxPrice.or(this.minSeats)).and(this.brand.negate());
+    }
+
+    private Vehicle nextVehicle() {
+        this.next = (this.next + 1) % this.fleetSize;
+        return this.fleet.get(this.next);
+    }
+
+    @Benchmark
+    public boolean addRemove() {
+        this.agency.add(this.extraVehicle);
+        this.agency.remove(this.extraVehicle);
+        return this.agency.contains(this.extraVehicle);
+    }
+
+    @Benchmark
+    public List<Vehicle> selectBrand() {
+        return this.agency.select(this.brand);
+    }
+
+    @Benchmark
+    public List<Vehicle> selectMaxPrice() {
+        return this.agency.select(this.maxPrice);
+    }
+
+    @Benchmark
+    public List<Vehicle> selectProductionYear() {
+        return this.agency.select(this.productionYear);
+    }
+
+    @Benchmark
+    public List<Vehicle> selectVehicleType() {
+        return this.agency.select(this.vehicleType);
+    }
+
+    @Benchmark
+    public List<Vehicle> selectMinSeats() {
+        return this.agency.select(this.minSeats);
+    }
+
+    @Benchmark
+    public List<Vehicle> selectMinCylinderCapacity() {
+        return this.agency.select(this.minCylinderCapacity);
+    }
+
+    @Benchmark
+    public List<Vehicle> selectComposite() {
+        return this.agency.select(this.composite);
+    }
+
+    @Benchmark
+    public double rentReturnChurn() {
+        double price = this.agency.rentVehicle(this.client, this.nextVehicle());
+        this.agency.returnVehicle(this.client);
+        return price;
+    }
+
+    @Benchmark
+    public double dailyRentalPrice() {
+        return this.nextVehicle().dailyRentalPrice();
+    }
+
+    @Benchmark
+    public String vehicleToString() {
+        return this.nextVehicle().toString();
+    }
+}
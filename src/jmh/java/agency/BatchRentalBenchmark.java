@@ -0,0 +1,75 @@
+package agency;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares a group booking through {@link RentalAgency#rentAll(List)} with a loop of
+ * {@link RentalAgency#rentVehicle(Client, Vehicle)} that rolls back the booked vehicles when a request fails.
+ * With {@code failLast}, the last request of the group targets a rented vehicle, so the whole group is rejected.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class BatchRentalBenchmark {
+    private static final int FLEET_SIZE = 100_000;
+
+    @Param({"10", "100", "1000"})
+    private int batchSize;
+
+    @Param({"false", "true"})
+    private boolean failLast;
+
+    private RentalAgency agency;
+    private List<RentalRequest> requests;
+    private Client client;
+
+    @Setup
+    public void setUp() {
+        List<Vehicle> fleet = Fleets.generate(FLEET_SIZE);
+        this.agency = new RentalAgency(fleet);
+        this.agency.setRentalLimit(this.batchSize);
+        this.client = new Client("Bench", "Corporate", 1990);
+        this.requests = new ArrayList<>(this.batchSize);
+        for(int i = 0; i < this.batchSize; i++) {
+            this.requests.add(new RentalRequest(this.client, fleet.get(i)));
+        }
+        if(this.failLast) {
+            Vehicle rented = fleet.get(FLEET_SIZE - 1);
+            this.agency.rentVehicle(new Client("Bench", "Other", 1990), rented);
+            this.requests.set(this.batchSize - 1, new RentalRequest(this.client, rented));
+        }
+    }
+
+    @Benchmark
+    public double batch() {
+        BatchRentalResult result = this.agency.rentAll(this.requests);
+        this.agency.returnVehicle(this.client);
+        return result.getTotalDailyPrice();
+    }
+
+    @Benchmark
+    public double loopWithRollback() {
+        double total = 0;
+        int booked = 0;
+        try {
+            for(RentalRequest request : this.requests) {
+                total += this.agency.rentVehicle(request.client(), request.vehicle());
+                booked++;
+            }
+        } catch(IllegalStateException e) {
+            for(int i = 0; i < booked; i++) {
+                this.agency.returnVehicle(this.requests.get(i).client(), this.requests.get(i).vehicle());
+            }
+            total = 0;
+        }
+        this.agency.returnVehicle(this.client);
+        return total;
+    }
+}
@@ -0,0 +1,113 @@
+package agency;
+
+import agency.service.BookingService;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A closed-loop load generator for the {@link BookingService}.
+ * Every simulated user books a random vehicle, returns it, and starts again. Each agency call first blocks for
+ * a simulated I/O delay, like a request handler waiting for a database, which is where one thread per request
+ * beats a fixed pool of platform threads.
+ * <p>
+ * Usage: {@code ./gradlew bookingLoad [-PloadArgs='users bookingsPerUser ioMillis poolSize']}
+ */
+public class BookingLoadGenerator {
+
+    /**
+     * An agency whose bookings block for a while before being applied.
+     */
+    static class SlowAgency extends ConcurrentRentalAgency {
+        private final long ioMillis;
+
+        SlowAgency(List<Vehicle> fleet, long ioMillis) {
+            super(fleet);
+            this.ioMillis = ioMillis;
+        }
+
+        @Override
+        public RentalOutcome tryRentVehicle(Client client, Vehicle vehicle) {
+            this.block();
+            return super.tryRentVehicle(client, vehicle);
+        }
+
+        @Override
+        public void returnVehicle(Client client) {
+            this.block();
+            super.returnVehicle(client);
+        }
+
+        private void block() {
+            try {
+                Thread.sleep(this.ioMillis);
+            } catch(InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    public static void main(String[] args) {
+        int users = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+        int bookingsPerUser = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+        long ioMillis = args.length > 2 ? Long.parseLong(args[2]) : 5;
+        int poolSize = args.length > 3 ? Integer.parseInt(args[3]) : Runtime.getRuntime().availableProcessors() * 2;
+        List<Vehicle> fleet = Fleets.generate(users * 4);
+
+        System.out.printf("%d users x %d bookings, %d ms of I/O per call%n", users, bookingsPerUser, ioMillis);
+        String perRequest = BookingService.virtualThreadsAvailable() ? "virtual threads" : "cached platform pool (Java < 21)";
+        try(BookingService service = new BookingService(new SlowAgency(fleet, ioMillis))) {
+            report(perRequest, run(service, fleet, users, bookingsPerUser));
+        }
+        try(BookingService service = new BookingService(new SlowAgency(fleet, ioMillis), Executors.newFixedThreadPool(poolSize))) {
+            report("fixed pool of " + poolSize + " platform threads", run(service, fleet, users, bookingsPerUser));
+        }
+    }
+
+    private record Result(long[] latencies, long elapsedNanos) {
+    }
+
+    private static Result run(BookingService service, List<Vehicle> fleet, int users, int bookingsPerUser) {
+        long[] latencies = new long[users * bookingsPerUser];
+        AtomicInteger recorded = new AtomicInteger();
+        CompletableFuture<?>[] loops = new CompletableFuture<?>[users];
+        long start = System.nanoTime();
+        for(int user = 0; user < users; user++) {
+            Client client = new Client("Load", "User" + user, 1990);
+            loops[user] = book(service, fleet, client, bookingsPerUser, latencies, recorded);
+        }
+        CompletableFuture.allOf(loops).join();
+        return new Result(Arrays.copyOf(latencies, recorded.get()), System.nanoTime() - start);
+    }
+
+    private static CompletableFuture<Void> book(BookingService service, List<Vehicle> fleet, Client client, int remaining,
+                                                long[] latencies, AtomicInteger recorded) {
+        if(remaining == 0) {
+            return CompletableFuture.completedFuture(null);
+        }
+        Vehicle vehicle = fleet.get(ThreadLocalRandom.current().nextInt(fleet.size()));
+        long start = System.nanoTime();
+        return service.rent(client, vehicle)
+                .thenCompose(outcome -> {
+                    latencies[recorded.getAndIncrement()] = System.nanoTime() - start;
+                    return service.returnVehicle(client);
+                })
+                .thenCompose(ignored -> book(service, fleet, client, remaining - 1, latencies, recorded));
+    }
+
+    private static void report(String executor, Result result) {
+        long[] latencies = result.latencies();
+        Arrays.sort(latencies);
+        double seconds = result.elapsedNanos() / 1e9;
+        System.out.printf("%-45s p50 %7.2f ms  p99 %7.2f ms  %9.0f bookings/s%n", executor,
+                percentile(latencies, 0.50) / 1e6, percentile(latencies, 0.99) / 1e6, latencies.length / seconds);
+    }
+
+    private static long percentile(long[] sorted, double rank) {
+        return sorted.length == 0 ? 0 : sorted[Math.min(sorted.length - 1, (int) (rank * sorted.length))];
+    }
+}
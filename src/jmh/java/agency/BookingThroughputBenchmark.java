@@ -0,0 +1,91 @@
+package agency;
+
+import agency.service.EventLoopRentalAgency;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Compares rent/return throughput of the lock-striped agency and of the single-writer event loop
+ * against a RentalAgency behind a global lock.
+ * Each thread books its own slice of the fleet, so the only contention is the locking itself.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@Threads(8)
+public class BookingThroughputBenchmark {
+    private static final int VEHICLES_PER_THREAD = 64;
+    private static final int MAX_THREADS = 64;
+
+    private List<Vehicle> fleet;
+    private RentalAgency synchronizedAgency;
+    private ConcurrentRentalAgency concurrentAgency;
+    private EventLoopRentalAgency eventLoopAgency;
+
+    @State(Scope.Thread)
+    public static class Booker {
+        private static final AtomicInteger NEXT_SLICE = new AtomicInteger();
+
+        private final Client client = new Client("Bench", "Booker", 1990);
+        private int offset;
+        private int next;
+
+        @Setup
+        public void setUp() {
+            this.offset = (NEXT_SLICE.getAndIncrement() % MAX_THREADS) * VEHICLES_PER_THREAD;
+        }
+
+        int nextVehicle() {
+            this.next = (this.next + 1) % VEHICLES_PER_THREAD;
+            return this.offset + this.next;
+        }
+    }
+
+    @Setup
+    public void setUp() {
+        this.fleet = Fleets.generate(VEHICLES_PER_THREAD * MAX_THREADS);
+        this.synchronizedAgency = new RentalAgency(this.fleet);
+        this.concurrentAgency = new ConcurrentRentalAgency(this.fleet);
+        this.eventLoopAgency = new EventLoopRentalAgency(this.fleet);
+    }
+
+    @TearDown
+    public void tearDown() {
+        this.eventLoopAgency.close();
+    }
+
+    @Benchmark
+    public double synchronizedBaseline(Booker booker) {
+        Vehicle vehicle = this.fleet.get(booker.nextVehicle());
+        double price;
+        synchronized(this.synchronizedAgency) {
+            price = this.synchronizedAgency.rentVehicle(booker.client, vehicle);
+        }
+        synchronized(this.synchronizedAgency) {
+            this.synchronizedAgency.returnVehicle(booker.client);
+        }
+        return price;
+    }
+
+    @Benchmark
+    public double lockStriped(Booker booker) {
+        Vehicle vehicle = this.fleet.get(booker.nextVehicle());
+        double price = this.concurrentAgency.rentVehicle(booker.client, vehicle);
+        this.concurrentAgency.returnVehicle(booker.client);
+        return price;
+    }
+
+    @Benchmark
+    public RentalOutcome eventLoop(Booker booker) {
+        Vehicle vehicle = this.fleet.get(booker.nextVehicle());
+        RentalOutcome outcome = this.eventLoopAgency.rent(booker.client, vehicle).join();
+        this.eventLoopAgency.returnVehicle(booker.client).join();
+        return outcome;
+    }
+}
@@ -0,0 +1,48 @@
+package agency;
+
+import agency.criteria.Criterion;
+import agency.criteria.MaxPriceCriterion;
+import agency.criteria.ProductionYearCriterion;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares price and year scans on the vehicle objects against the columnar store.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class ColumnarBenchmark {
+
+    @Param({"100000", "1000000"})
+    private int fleetSize;
+
+    private RentalAgency objectAgency;
+    private RentalAgency columnarAgency;
+    private Criterion criterion;
+
+    @Setup
+    public void setUp() {
+        List<Vehicle> fleet = Fleets.generate(this.fleetSize);
+        this.objectAgency = new RentalAgency(fleet);
+        this.columnarAgency = new RentalAgency(fleet);
+        this.columnarAgency.enableColumnarStore();
+        // A conjunction is not answered by the secondary indexes, so both agencies scan the fleet.
+        this.criterion = new MaxPriceCriterion(60).and(new ProductionYearCriterion(2010, 2015));
+    }
+
+    @Benchmark
+    public List<Vehicle> objectScan() {
+        return this.objectAgency.select(this.criterion);
+    }
+
+    @Benchmark
+    public List<Vehicle> columnarScan() {
+        return this.columnarAgency.select(this.criterion);
+    }
+}
@@ -0,0 +1,57 @@
+package agency;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class Fleets {
+
+    /**
+     * The kinds of vehicles making up a generated fleet.
+     */
+    public enum Mix {
+        CARS, MOTORBIKES, MIXED
+    }
+
+    private Fleets() {
+    }
+
+    /**
+     * Generate a fleet of distinct vehicles, with one motorbike every four vehicles.
+     * @param size The number of vehicles to generate.
+     * @return The generated vehicles.
+     */
+    public static List<Vehicle> generate(int size) {
+        return generate(size, Mix.MIXED);
+    }
+
+    /**
+     * Generate a fleet of distinct vehicles.
+     * @param size The number of vehicles to generate.
+     * @param mix The kinds of vehicles to generate.
+     * @return The generated vehicles.
+     */
+    public static List<Vehicle> generate(int size, Mix mix) {
+        List<Vehicle> vehicles = new ArrayList<>(size);
+        for(int i = 0; i < size; i++) {
+            vehicles.add(vehicle(i, mix));
+        }
+        return vehicles;
+    }
+
+    /**
+     * Generate the i-th vehicle of a fleet. Vehicles with different indexes are never equal.
+     * @param i The index of the vehicle.
+     * @param mix The kinds of vehicles to generate.
+     * @return The generated vehicle.
+     */
+    public static Vehicle vehicle(int i, Mix mix) {
+        String brand = "Brand" + (i % 50);
+        String model = "Model" + i;
+        int productionYear = 1995 + (i % 30);
+        boolean motorbike = mix == Mix.MOTORBIKES || (mix == Mix.MIXED && i % 4 == 3);
+        if(motorbike) {
+            return new Motorbike(brand, model, productionYear, 50 + (i % 20) * 50);
+        }
+        return new Car(brand, model, productionYear, 1 + (i % 8));
+    }
+}
@@ -0,0 +1,50 @@
+package agency;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class InventoryBenchmark {
+
+    @Param({"1000", "10000", "100000", "200000"})
+    private int fleetSize;
+
+    private List<Vehicle> fleet;
+    private RentalAgency agency;
+
+    @Setup
+    public void setUp() {
+        this.fleet = Fleets.generate(this.fleetSize);
+        this.agency = new RentalAgency(this.fleet);
+    }
+
+    /**
+     * Load the whole fleet one vehicle at a time.
+     */
+    @Benchmark
+    public RentalAgency bulkLoad() {
+        RentalAgency loaded = new RentalAgency();
+        for(Vehicle vehicle : this.fleet) {
+            loaded.add(vehicle);
+        }
+        return loaded;
+    }
+
+    /**
+     * Check the membership of every vehicle of the fleet.
+     */
+    @Benchmark
+    public void membershipChecks(Blackhole blackhole) {
+        for(Vehicle vehicle : this.fleet) {
+            blackhole.consume(this.agency.contains(vehicle));
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package agency;
+
+import agency.criteria.Criterion;
+import agency.criteria.MinSeatsCriterion;
+import agency.criteria.ProductionYearCriterion;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class SelectStreamBenchmark {
+
+    @Param({"1000000"})
+    private int fleetSize;
+
+    private RentalAgency agency;
+    private Criterion criterion;
+
+    @Setup
+    public void setUp() {
+        this.agency = new RentalAgency(Fleets.generate(this.fleetSize));
+        this.criterion = new MinSeatsCriterion(4).and(new ProductionYearCriterion(2005, 2015));
+    }
+
+    @Benchmark
+    public List<Vehicle> sequentialSelect() {
+        return this.agency.select(this.criterion);
+    }
+
+    @Benchmark
+    public List<Vehicle> parallelStream() {
+        return this.agency.selectStream(this.criterion).collect(Collectors.toList());
+    }
+
+    @Benchmark
+    public List<Vehicle> lazyWithLimit() {
+        return this.agency.selectStream(this.criterion).sequential().limit(20).collect(Collectors.toList());
+    }
+}
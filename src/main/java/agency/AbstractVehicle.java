@@ -1,9 +1,14 @@
 package agency;
 
+import util.Interner;
 import util.TimeProvider;
 
+import java.util.Objects;
+
 public abstract class AbstractVehicle implements Vehicle{
 
+    static final int MIN_PRODUCTION_YEAR = 1900;
+
     private String brand;
     private String model;
     private int productionYear;
@@ -16,11 +21,24 @@ public abstract class AbstractVehicle implements Vehicle{
      * @throws IllegalArgumentException if the production year is not between 1900 and the current year.
      */
     public AbstractVehicle(String brand, String model, int productionYear) throws IllegalArgumentException {
-        if(productionYear < 1900 || productionYear > TimeProvider.currentYearValue()) {
+        this(brand, model, productionYear, TimeProvider.currentYearValue());
+    }
+
+    /**
+     * Create a new vehicle, checked against an already known current year.
+     * @param brand The brand of the vehicle.
+     * @param model The model of the vehicle.
+     * @param productionYear The production year of the vehicle.
+     * @param currentYear The current year.
+     * @throws IllegalArgumentException if the production year is not between 1900 and the current year.
+     */
+    AbstractVehicle(String brand, String model, int productionYear, int currentYear) throws IllegalArgumentException {
+        if(productionYear < MIN_PRODUCTION_YEAR || productionYear > currentYear) {
             throw new IllegalArgumentException("Production year must be between 1900 and the current year. " + productionYear + " is invalid.");
         }
-        this.brand = brand;
-        this.model = model;
+        // Brands and models repeat across the fleet, so every vehicle shares their canonical instance.
+        this.brand = Interner.intern(brand);
+        this.model = Interner.intern(model);
         this.productionYear = productionYear;
     }
 
@@ -59,8 +77,47 @@ public abstract class AbstractVehicle implements Vehicle{
     public boolean equals(Object obj) {
         if(obj.getClass() == this.getClass()) {
             AbstractVehicle other = (AbstractVehicle) obj;
-            return this.brand.equals(other.brand) && this.model.equals(other.model) && this.productionYear == other.productionYear;
+            // Brands and models are interned, so equal ones are the same instance.
+            return this.brand == other.brand && this.model == other.model && this.productionYear == other.productionYear;
         }
         return false;
     }
+
+    /**
+     * Get the hash code of the vehicle, consistent with {@link #equals(Object)}.
+     * @return a hash code based on the brand, the model and the production year.
+     */
+    @Override
+    public int hashCode() {
+        // Same formula as Objects.hash, without allocating a varargs array and boxing the year.
+        int hash = 31 + Objects.hashCode(this.brand);
+        hash = 31 * hash + Objects.hashCode(this.model);
+        return 31 * hash + this.productionYear;
+    }
+
+    /**
+     * Append a price as {@link Double#toString(double)} formats it.
+     * Prices are whole cents in practice, which are written digit by digit instead of through the
+     * general floating-point formatting.
+     * @param builder The builder to append to.
+     * @param price The price to append.
+     * @return The builder.
+     */
+    static StringBuilder appendPrice(StringBuilder builder, double price) {
+        double cents = price * 100;
+        // Double.toString switches to scientific notation outside of [1e-3, 1e7).
+        if(price < 1e-3 || price >= 1e7 || cents != Math.rint(cents)) {
+            return builder.append(price);
+        }
+        long value = (long) cents;
+        int fraction = (int) (value % 100);
+        builder.append(value / 100).append('.');
+        if(fraction % 10 == 0) {
+            return builder.append(fraction / 10);
+        }
+        if(fraction < 10) {
+            builder.append('0');
+        }
+        return builder.append(fraction);
+    }
 }
@@ -0,0 +1,58 @@
+package agency;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The outcome of a batch of rentals or returns, which are applied all together or not at all.
+ */
+public class BatchRentalResult {
+
+    /**
+     * A request of a batch which cannot be applied.
+     * @param index The position of the request in the batch.
+     * @param reason The reason why the request cannot be applied.
+     */
+    public record Failure(int index, RentalOutcome reason) {
+    }
+
+    private final List<Failure> failures;
+    private double totalDailyPrice;
+
+    BatchRentalResult() {
+        this.failures = new ArrayList<>();
+    }
+
+    void fail(int index, RentalOutcome reason) {
+        this.failures.add(new Failure(index, reason));
+    }
+
+    void setTotalDailyPrice(double totalDailyPrice) {
+        this.totalDailyPrice = totalDailyPrice;
+    }
+
+    /**
+     * Get the sum of the daily rental prices of the vehicles of the batch.
+     * @return The total daily price, or 0 if the batch was not applied.
+     */
+    public double getTotalDailyPrice() {
+        return this.totalDailyPrice;
+    }
+
+    /**
+     * Get the requests which cannot be applied, in batch order.
+     * @return The failed requests.
+     */
+    public List<Failure> getFailures() {
+        return Collections.unmodifiableList(this.failures);
+    }
+
+    /**
+     * Test if the batch was applied.
+     * @return true if no request failed and every request was applied, false if nothing was applied.
+     */
+    public boolean isApplied() {
+        return this.failures.isEmpty();
+    }
+}
@@ -4,7 +4,12 @@ import util.TimeProvider;
 
 public class Car extends AbstractVehicle{
 
+    static final int MIN_NUMBER_OF_SEATS = 1;
+
     private int numberOfSeats;
+    private final int lastNewYear;
+    private final double newPrice;
+    private final double usedPrice;
 
     /**
      * Create a new car.
@@ -15,13 +20,38 @@ public class Car extends AbstractVehicle{
      * @throws IllegalArgumentException if the production year is not between 1900 and the current year or if the number of seats is less than 1.
      */
     public Car(String brand, String model, int productionYear, int numberOfSeats) throws IllegalArgumentException {
-        super(brand, model, productionYear);
+        this(brand, model, productionYear, numberOfSeats, TimeProvider.currentYearValue());
+    }
+
+    /**
+     * Create a new car, checked against an already known current year.
+     * @param brand The brand of the car.
+     * @param model The model of the car.
+     * @param productionYear The production year of the car.
+     * @param numberOfSeats The number of seats in the car.
+     * @param currentYear The current year.
+     * @throws IllegalArgumentException if the production year is not between 1900 and the current year or if the number of seats is less than 1.
+     */
+    Car(String brand, String model, int productionYear, int numberOfSeats, int currentYear) throws IllegalArgumentException {
+        super(brand, model, productionYear, currentYear);
 
-        if(numberOfSeats < 1) {
+        if(numberOfSeats < MIN_NUMBER_OF_SEATS) {
             throw new IllegalArgumentException("Number of seats must be at least 1. " + numberOfSeats + " is invalid.");
         }
 
         this.numberOfSeats = numberOfSeats;
+        // The price only depends on whether the car is new, so both prices are computed once.
+        this.lastNewYear = productionYear + 5;
+        this.newPrice = numberOfSeats * 40;
+        this.usedPrice = numberOfSeats * 20;
+    }
+
+    /**
+     * Get the number of seats of the car.
+     * @return The number of seats of the car.
+     */
+    public int getNumberOfSeats() {
+        return this.numberOfSeats;
     }
 
     /**
@@ -29,7 +59,7 @@ public class Car extends AbstractVehicle{
      * @return true if the car is new (5 years old or less), false otherwise.
      */
     public boolean isNew(){
-        return TimeProvider.currentYearValue() - this.getProductionYear() <= 5;
+        return TimeProvider.currentYearValue() <= this.lastNewYear;
     }
 
     /**
@@ -38,11 +68,7 @@ public class Car extends AbstractVehicle{
      */
     @Override
     public double dailyRentalPrice() {
-        if(this.isNew()) {
-            return this.numberOfSeats * 40;
-        } else {
-            return this.numberOfSeats * 20;
-        }
+        return this.isNew() ? this.newPrice : this.usedPrice;
     }
 
     /**
@@ -51,11 +77,21 @@ public class Car extends AbstractVehicle{
      */
     @Override
     public String toString() {
-        return "Car " + this.getBrand() + " " +
-                this.getModel() + " " +
-                this.getProductionYear() + " (" +
-                this.numberOfSeats +
-                " seat" + (this.numberOfSeats > 1 ? "s" : "") +  ") : " +
-                dailyRentalPrice() + "€";
+        return this.appendTo(new StringBuilder(64)).toString();
+    }
+
+    /**
+     * Append the string representation of the car to a builder.
+     * @param builder The builder to append to.
+     * @return The builder.
+     */
+    @Override
+    public StringBuilder appendTo(StringBuilder builder) {
+        builder.append("Car ").append(this.getBrand()).append(' ')
+                .append(this.getModel()).append(' ')
+                .append(this.getProductionYear()).append(" (")
+                .append(this.numberOfSeats)
+                .append(this.numberOfSeats > 1 ? " seats" : " seat").append(") : ");
+        return appendPrice(builder, this.dailyRentalPrice()).append('€');
     }
 }
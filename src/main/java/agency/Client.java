@@ -1,14 +1,47 @@
 package agency;
 
+import java.util.concurrent.atomic.AtomicLong;
+
 public class Client {
+    private static final AtomicLong NEXT_ID = new AtomicLong(1);
+
+    private final long id;
     private String firstName;
     private String lastName;
     private int birthYear;
 
+    /**
+     * Create a new client with a generated identifier.
+     * @param firstName The first name of the client.
+     * @param lastName The last name of the client.
+     * @param birthYear The birth year of the client.
+     */
     public Client(String firstName, String lastName, int birthYear) {
+        this(NEXT_ID.getAndIncrement(), firstName, lastName, birthYear);
+    }
+
+    /**
+     * Create a new client with a known identifier, e.g. when reloading clients.
+     * Generated identifiers will never collide with the given one.
+     * @param id The identifier of the client.
+     * @param firstName The first name of the client.
+     * @param lastName The last name of the client.
+     * @param birthYear The birth year of the client.
+     */
+    public Client(long id, String firstName, String lastName, int birthYear) {
+        this.id = id;
         this.firstName = firstName;
         this.lastName = lastName;
         this.birthYear = birthYear;
+        NEXT_ID.accumulateAndGet(id + 1, Math::max);
+    }
+
+    /**
+     * Get the identifier of the client. It never changes, even if the client details are edited.
+     * @return The identifier of the client.
+     */
+    public long getId() {
+        return id;
     }
 
     public String getFirstName() {
@@ -34,4 +67,32 @@ public class Client {
     public void setBirthYear(int birthYear) {
         this.birthYear = birthYear;
     }
+
+    /**
+     * Test if two clients are equal.
+     * @param obj The object to compare to.
+     * @return true if both clients have the same identifier, false otherwise.
+     */
+    @Override
+    public boolean equals(Object obj) {
+        return obj instanceof Client other && this.id == other.id;
+    }
+
+    /**
+     * Get the hash code of the client, consistent with {@link #equals(Object)}.
+     * @return a hash code based on the identifier.
+     */
+    @Override
+    public int hashCode() {
+        return Long.hashCode(this.id);
+    }
+
+    /**
+     * Get a string representation of the client.
+     * @return [first name] [last name] (#[id])
+     */
+    @Override
+    public String toString() {
+        return this.firstName + " " + this.lastName + " (#" + this.id + ")";
+    }
 }
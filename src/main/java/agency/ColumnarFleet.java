@@ -0,0 +1,247 @@
+package agency;
+
+import agency.criteria.*;
+import util.TimeProvider;
+
+import java.util.*;
+
+/**
+ * A column-oriented copy of the fleet of a rental agency.
+ * Built-in criteria are evaluated on primitive arrays, and vehicles are only read for the matching rows.
+ * Rows keep the agency insertion order, removed rows are skipped until the columns are compacted.
+ */
+class ColumnarFleet {
+    private static final byte CAR = 0;
+    private static final byte MOTORBIKE = 1;
+    private static final byte OTHER = 2;
+    private static final int REMOVED = -1;
+    private static final int INITIAL_CAPACITY = 16;
+
+    private final Map<String, Integer> brandIds;
+    private final Map<Vehicle, Integer> rows;
+    private Vehicle[] vehicles;
+    private int[] brands;
+    private int[] productionYears;
+    private int[] capacities;
+    private byte[] types;
+    private double[] prices;
+    private int size;
+    private int removed;
+    private int priceYear;
+
+    ColumnarFleet() {
+        this.brandIds = new HashMap<>();
+        this.rows = new HashMap<>();
+        this.allocate(INITIAL_CAPACITY);
+        this.priceYear = TimeProvider.currentYearValue();
+    }
+
+    /**
+     * Append a vehicle as the last row.
+     * @param vehicle The vehicle to append.
+     */
+    void add(Vehicle vehicle) {
+        if(this.size == this.vehicles.length) {
+            this.grow();
+        }
+        int row = this.size++;
+        this.vehicles[row] = vehicle;
+        this.brands[row] = this.brandIds.computeIfAbsent(vehicle.getBrand(), brand -> this.brandIds.size());
+        this.productionYears[row] = vehicle.getProductionYear();
+        if(vehicle instanceof Car car) {
+            this.types[row] = CAR;
+            this.capacities[row] = car.getNumberOfSeats();
+        } else if(vehicle instanceof Motorbike motorbike) {
+            this.types[row] = MOTORBIKE;
+            this.capacities[row] = motorbike.getCylinderCapacity();
+        } else {
+            this.types[row] = OTHER;
+        }
+        this.prices[row] = vehicle.dailyRentalPrice();
+        this.rows.put(vehicle, row);
+    }
+
+    /**
+     * Remove the row of a vehicle.
+     * @param vehicle The stored vehicle to remove.
+     */
+    void remove(Vehicle vehicle) {
+        Integer row = this.rows.remove(vehicle);
+        if(row == null) {
+            return;
+        }
+        this.vehicles[row] = null;
+        this.brands[row] = REMOVED;
+        this.removed++;
+        if(this.removed > INITIAL_CAPACITY && this.removed > this.size / 2) {
+            this.compact();
+        }
+    }
+
+    /**
+     * Select the vehicles satisfying a criterion.
+     * @param criterion The criterion, preferably optimized.
+     * @return The matching vehicles, in insertion order.
+     */
+    List<Vehicle> select(Criterion criterion) {
+        this.refreshPrices();
+        RowFilter filter = this.compile(criterion);
+        List<Vehicle> selectedVehicles = new ArrayList<>();
+        int[] brands = this.brands;
+        for(int row = 0; row < this.size; row++) {
+            if(brands[row] != REMOVED && filter.test(row)) {
+                selectedVehicles.add(this.vehicles[row]);
+            }
+        }
+        return selectedVehicles;
+    }
+
+    /**
+     * Get the number of bytes of column data per row, without the vehicle references.
+     * @return The size of one row in the primitive columns.
+     */
+    static int bytesPerRow() {
+        return Integer.BYTES * 3 + Byte.BYTES + Double.BYTES;
+    }
+
+    private interface RowFilter {
+        boolean test(int row);
+    }
+
+    private RowFilter compile(Criterion criterion) {
+        Class<?> kind = criterion.getClass();
+        if(kind == ConstantCriterion.class) {
+            boolean value = criterion == ConstantCriterion.ALWAYS;
+            return row -> value;
+        }
+        if(kind == AndCriterion.class) {
+            RowFilter[] operands = this.compileAll(((AndCriterion) criterion).getOperands());
+            return row -> {
+                for(RowFilter operand : operands) {
+                    if(!operand.test(row)) {
+                        return false;
+                    }
+                }
+                return true;
+            };
+        }
+        if(kind == OrCriterion.class) {
+            RowFilter[] operands = this.compileAll(((OrCriterion) criterion).getOperands());
+            return row -> {
+                for(RowFilter operand : operands) {
+                    if(operand.test(row)) {
+                        return true;
+                    }
+                }
+                return false;
+            };
+        }
+        if(kind == NotCriterion.class) {
+            RowFilter operand = this.compile(((NotCriterion) criterion).getOperand());
+            return row -> !operand.test(row);
+        }
+        if(kind == BrandCriterion.class) {
+            Integer id = this.brandIds.get(((BrandCriterion) criterion).getBrand());
+            if(id == null) {
+                return row -> false;
+            }
+            int brand = id;
+            int[] brands = this.brands;
+            return row -> brands[row] == brand;
+        }
+        if(kind == MaxPriceCriterion.class) {
+            double maxPrice = ((MaxPriceCriterion) criterion).getMaxPrice();
+            double[] prices = this.prices;
+            return row -> prices[row] <= maxPrice;
+        }
+        if(kind == ProductionYearCriterion.class) {
+            int minYear = ((ProductionYearCriterion) criterion).getMinYear();
+            int maxYear = ((ProductionYearCriterion) criterion).getMaxYear();
+            int[] productionYears = this.productionYears;
+            return row -> productionYears[row] >= minYear && productionYears[row] <= maxYear;
+        }
+        if(kind == MinSeatsCriterion.class) {
+            return this.capacityFilter(CAR, ((MinSeatsCriterion) criterion).getMinSeats());
+        }
+        if(kind == MinCylinderCapacityCriterion.class) {
+            return this.capacityFilter(MOTORBIKE, ((MinCylinderCapacityCriterion) criterion).getMinCylinderCapacity());
+        }
+        if(kind == VehicleTypeCriterion.class) {
+            Class<? extends Vehicle> type = ((VehicleTypeCriterion) criterion).getType();
+            byte[] types = this.types;
+            if(type == Car.class) {
+                return row -> types[row] == CAR;
+            }
+            if(type == Motorbike.class) {
+                return row -> types[row] == MOTORBIKE;
+            }
+            if(type == Vehicle.class) {
+                return row -> true;
+            }
+        }
+        // Unknown criteria are evaluated on the vehicle itself.
+        Vehicle[] vehicles = this.vehicles;
+        return row -> criterion.test(vehicles[row]);
+    }
+
+    private RowFilter[] compileAll(List<Criterion> criteria) {
+        RowFilter[] filters = new RowFilter[criteria.size()];
+        for(int i = 0; i < filters.length; i++) {
+            filters[i] = this.compile(criteria.get(i));
+        }
+        return filters;
+    }
+
+    private RowFilter capacityFilter(byte type, int minCapacity) {
+        byte[] types = this.types;
+        int[] capacities = this.capacities;
+        return row -> types[row] == type && capacities[row] >= minCapacity;
+    }
+
+    // Prices depend on the current year, so the price column is recomputed once when the year changes.
+    private void refreshPrices() {
+        int currentYear = TimeProvider.currentYearValue();
+        if(currentYear == this.priceYear) {
+            return;
+        }
+        for(int row = 0; row < this.size; row++) {
+            if(this.brands[row] != REMOVED) {
+                this.prices[row] = this.vehicles[row].dailyRentalPrice();
+            }
+        }
+        this.priceYear = currentYear;
+    }
+
+    private void allocate(int capacity) {
+        this.vehicles = Arrays.copyOf(this.vehicles == null ? new Vehicle[0] : this.vehicles, capacity);
+        this.brands = Arrays.copyOf(this.brands == null ? new int[0] : this.brands, capacity);
+        this.productionYears = Arrays.copyOf(this.productionYears == null ? new int[0] : this.productionYears, capacity);
+        this.capacities = Arrays.copyOf(this.capacities == null ? new int[0] : this.capacities, capacity);
+        this.types = Arrays.copyOf(this.types == null ? new byte[0] : this.types, capacity);
+        this.prices = Arrays.copyOf(this.prices == null ? new double[0] : this.prices, capacity);
+    }
+
+    private void grow() {
+        this.allocate(this.vehicles.length + (this.vehicles.length >> 1));
+    }
+
+    private void compact() {
+        int live = 0;
+        for(int row = 0; row < this.size; row++) {
+            if(this.brands[row] == REMOVED) {
+                continue;
+            }
+            this.vehicles[live] = this.vehicles[row];
+            this.brands[live] = this.brands[row];
+            this.productionYears[live] = this.productionYears[row];
+            this.capacities[live] = this.capacities[row];
+            this.types[live] = this.types[row];
+            this.prices[live] = this.prices[row];
+            this.rows.put(this.vehicles[live], live);
+            live++;
+        }
+        Arrays.fill(this.vehicles, live, this.size, null);
+        this.size = live;
+        this.removed = 0;
+    }
+}
@@ -0,0 +1,351 @@
+package agency;
+
+import agency.exceptions.RentalConflictException;
+import agency.exceptions.UnknownVehicleException;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Predicate;
+
+/**
+ * A thread-safe rental agency.
+ * Every operation only locks the stripes of the client and/or vehicle it touches,
+ * so bookings on unrelated clients and vehicles run in parallel.
+ */
+public class ConcurrentRentalAgency {
+    private static final int DEFAULT_CONCURRENCY_LEVEL = 16;
+
+    private final ConcurrentMap<Vehicle, Long> inventory;
+    private final ConcurrentSkipListMap<Long, Vehicle> vehicles;
+    // The rentals of a client are an immutable set, replaced while the stripe of the client is locked.
+    private final ConcurrentMap<Client, Set<Vehicle>> rentedVehicles;
+    private final ConcurrentMap<Vehicle, Client> renters;
+    private final AtomicLong nextSequence;
+    private final ReentrantLock[] stripes;
+    private final RentalPolicy policy;
+
+    /**
+     * Create a new concurrent rental agency without any vehicle.
+     */
+    public ConcurrentRentalAgency() {
+        this(DEFAULT_CONCURRENCY_LEVEL);
+    }
+
+    /**
+     * Create a new concurrent rental agency without any vehicle.
+     * @param concurrencyLevel The expected number of threads updating the agency at the same time.
+     * @throws IllegalArgumentException if the concurrency level is less than 1.
+     */
+    public ConcurrentRentalAgency(int concurrencyLevel) throws IllegalArgumentException {
+        if(concurrencyLevel < 1) {
+            throw new IllegalArgumentException("Concurrency level must be at least 1. " + concurrencyLevel + " is invalid.");
+        }
+        int size = Integer.highestOneBit(Math.max(1, concurrencyLevel * 4 - 1)) << 1;
+        this.stripes = new ReentrantLock[size];
+        for(int i = 0; i < size; i++) {
+            this.stripes[i] = new ReentrantLock();
+        }
+        this.inventory = new ConcurrentHashMap<>();
+        this.vehicles = new ConcurrentSkipListMap<>();
+        this.rentedVehicles = new ConcurrentHashMap<>();
+        this.renters = new ConcurrentHashMap<>();
+        this.nextSequence = new AtomicLong();
+        this.policy = new RentalPolicy();
+    }
+
+    /**
+     * Create a new concurrent rental agency with a list of vehicles.
+     * @param vehicles The list of vehicles.
+     */
+    public ConcurrentRentalAgency(List<Vehicle> vehicles) {
+        this();
+        for(Vehicle vehicle : vehicles) {
+            this.add(vehicle);
+        }
+    }
+
+    /**
+     * Add a vehicle to the rental agency if it is not already in the list.
+     * @param vehicle The vehicle to add.
+     * @return true if the vehicle was added, false otherwise.
+     */
+    public boolean add(Vehicle vehicle) {
+        ReentrantLock lock = this.stripeOf(vehicle);
+        lock.lock();
+        try {
+            if(this.inventory.containsKey(vehicle)) {
+                return false;
+            }
+            long sequence = this.nextSequence.getAndIncrement();
+            this.inventory.put(vehicle, sequence);
+            this.vehicles.put(sequence, vehicle);
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Remove a vehicle from the rental agency.
+     * @param vehicle The vehicle to remove.
+     * @throws UnknownVehicleException if the vehicle is not in the list.
+     */
+    public void remove(Vehicle vehicle) throws UnknownVehicleException {
+        if(!this.tryRemove(vehicle)) {
+            throw new UnknownVehicleException(vehicle);
+        }
+    }
+
+    /**
+     * Remove a vehicle from the rental agency, without throwing if it is unknown.
+     * @param vehicle The vehicle to remove.
+     * @return true if the vehicle was removed, false if it is not in the list.
+     */
+    public boolean tryRemove(Vehicle vehicle) {
+        ReentrantLock lock = this.stripeOf(vehicle);
+        lock.lock();
+        try {
+            Long sequence = this.inventory.remove(vehicle);
+            if(sequence == null) {
+                return false;
+            }
+            this.vehicles.remove(sequence);
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Test if a vehicle belongs to the rental agency.
+     * @param vehicle The vehicle to test.
+     * @return true if the vehicle is in the agency, false otherwise.
+     */
+    public boolean contains(Vehicle vehicle) {
+        return this.inventory.containsKey(vehicle);
+    }
+
+    /**
+     * Get the vehicles of the rental agency, in insertion order.
+     * @return A snapshot of the vehicles of the rental agency.
+     */
+    public List<Vehicle> getVehicles() {
+        return List.copyOf(this.vehicles.values());
+    }
+
+    /**
+     * Returns the list of vehicles of this agency that satisfy the specified criterion.
+     * @param criterion the criterion that the selected vehicles must satisfy
+     * @return the list of vehicles of this agency that satisfy the given criterion
+     */
+    public List<Vehicle> select(Predicate<Vehicle> criterion) {
+        List<Vehicle> selectedVehicles = new ArrayList<>();
+        for(Vehicle vehicle : this.vehicles.values()) {
+            if(criterion.test(vehicle)) {
+                selectedVehicles.add(vehicle);
+            }
+        }
+        return selectedVehicles;
+    }
+
+    /**
+     * Get the maximum number of vehicles a client can rent at the same time.
+     * @return The rental limit, 1 by default.
+     */
+    public int getRentalLimit() {
+        return this.policy.getRentalLimit();
+    }
+
+    /**
+     * Set the maximum number of vehicles a client can rent at the same time.
+     * Clients already renting more vehicles keep them, but cannot rent another one.
+     * @param rentalLimit The rental limit.
+     * @throws IllegalArgumentException if the limit is less than 1.
+     */
+    public void setRentalLimit(int rentalLimit) throws IllegalArgumentException {
+        this.policy.setRentalLimit(rentalLimit);
+    }
+
+    /**
+     * Test if a vehicle is rented by a client.
+     * @param client The client to test.
+     * @return true if the client has a rented vehicle, false otherwise.
+     */
+    public boolean aVehicleIsRentedBy(Client client) {
+        return this.rentedVehicles.containsKey(client);
+    }
+
+    /**
+     * Get the vehicles rented by a client.
+     * @param client The client.
+     * @return A snapshot of the vehicles rented by the client, in rental order.
+     */
+    public Set<Vehicle> vehiclesRentedBy(Client client) {
+        return this.rentedVehicles.getOrDefault(client, Set.of());
+    }
+
+    /**
+     * Test if a vehicle is rented.
+     * @param vehicle The vehicle to test.
+     * @return true if the vehicle is rented, false otherwise.
+     */
+    public boolean vehicleIsRented(Vehicle vehicle) {
+        return this.renters.containsKey(vehicle);
+    }
+
+    /**
+     * Get the client renting a vehicle.
+     * @param vehicle The rented vehicle.
+     * @return The client renting the vehicle, or null if the vehicle is not rented.
+     */
+    public Client renterOf(Vehicle vehicle) {
+        return this.renters.get(vehicle);
+    }
+
+    /**
+     * Atomically rent a vehicle to a client.
+     * @param client The client who wants to rent a vehicle.
+     * @param vehicle The vehicle to rent.
+     * @return The daily rental price of the vehicle.
+     * @throws UnknownVehicleException if the vehicle is not in the list.
+     * @throws RentalConflictException if the client already rents as many vehicles as the {@link #getRentalLimit() limit}
+     * or if the vehicle is already rented.
+     */
+    public double rentVehicle(Client client, Vehicle vehicle) throws UnknownVehicleException, RentalConflictException {
+        RentalOutcome outcome = this.tryRentVehicle(client, vehicle);
+        if(outcome != RentalOutcome.RENTED) {
+            RentalPolicy.throwIfRefused(outcome, client, vehicle, this.vehiclesRentedBy(client).size());
+        }
+        return vehicle.dailyRentalPrice();
+    }
+
+    /**
+     * Atomically rent a vehicle to a client, without throwing if it cannot be rented.
+     * @param client The client who wants to rent a vehicle.
+     * @param vehicle The vehicle to rent.
+     * @return {@link RentalOutcome#RENTED} if the vehicle is rented, or the reason why it cannot be rented.
+     */
+    public RentalOutcome tryRentVehicle(Client client, Vehicle vehicle) {
+        ReentrantLock first = this.firstStripe(client, vehicle);
+        ReentrantLock second = this.secondStripe(client, vehicle);
+        first.lock();
+        second.lock();
+        try {
+            Set<Vehicle> rented = this.vehiclesRentedBy(client);
+            RentalOutcome outcome = this.policy.check(this.inventory.containsKey(vehicle), rented.size(),
+                    this.renters.containsKey(vehicle));
+            if(outcome == RentalOutcome.RENTED) {
+                Set<Vehicle> updated = new LinkedHashSet<>(rented);
+                updated.add(vehicle);
+                this.rentedVehicles.put(client, Collections.unmodifiableSet(updated));
+                this.renters.put(vehicle, client);
+            }
+            return outcome;
+        } finally {
+            second.unlock();
+            first.unlock();
+        }
+    }
+
+    /**
+     * Atomically return every vehicle rented by a client, if any.
+     * @param client The client who wants to return the vehicles.
+     */
+    public void returnVehicle(Client client) {
+        while(true) {
+            Set<Vehicle> rented = this.rentedVehicles.get(client);
+            if(rented == null) {
+                return;
+            }
+            int[] indexes = new int[rented.size() + 1];
+            int count = 0;
+            indexes[count++] = this.stripeIndex(client);
+            for(Vehicle vehicle : rented) {
+                indexes[count++] = this.stripeIndex(vehicle);
+            }
+            Arrays.sort(indexes);
+            int locked = 0;
+            try {
+                for(int i = 0; i < indexes.length; i++) {
+                    if(i == 0 || indexes[i] != indexes[i - 1]) {
+                        this.stripes[indexes[i]].lock();
+                        locked = i + 1;
+                    }
+                }
+                // The rentals may have changed before the stripes were acquired, they are replaced on every change.
+                if(this.rentedVehicles.remove(client, rented)) {
+                    for(Vehicle vehicle : rented) {
+                        this.renters.remove(vehicle, client);
+                    }
+                    return;
+                }
+            } finally {
+                for(int i = locked - 1; i >= 0; i--) {
+                    if(i == 0 || indexes[i] != indexes[i - 1]) {
+                        this.stripes[indexes[i]].unlock();
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Atomically return one of the vehicles rented by a client.
+     * @param client The client who wants to return the vehicle.
+     * @param vehicle The vehicle to return.
+     * @return true if the vehicle was rented by the client and is returned, false otherwise.
+     */
+    public boolean returnVehicle(Client client, Vehicle vehicle) {
+        ReentrantLock first = this.firstStripe(client, vehicle);
+        ReentrantLock second = this.secondStripe(client, vehicle);
+        first.lock();
+        second.lock();
+        try {
+            if(!this.renters.remove(vehicle, client)) {
+                return false;
+            }
+            Set<Vehicle> updated = new LinkedHashSet<>(this.vehiclesRentedBy(client));
+            updated.remove(vehicle);
+            if(updated.isEmpty()) {
+                this.rentedVehicles.remove(client);
+            } else {
+                this.rentedVehicles.put(client, Collections.unmodifiableSet(updated));
+            }
+            return true;
+        } finally {
+            second.unlock();
+            first.unlock();
+        }
+    }
+
+    /**
+     * Get the rented vehicles.
+     * @return A read-only, weakly consistent view of the rented vehicles.
+     */
+    public Collection<Vehicle> allRentedVehicles() {
+        return Collections.unmodifiableCollection(this.renters.keySet());
+    }
+
+    private int stripeIndex(Object key) {
+        int hash = key.hashCode();
+        hash ^= hash >>> 16;
+        return hash & (this.stripes.length - 1);
+    }
+
+    private ReentrantLock stripeOf(Object key) {
+        return this.stripes[this.stripeIndex(key)];
+    }
+
+    // Stripes are always acquired in index order so that two bookings cannot deadlock.
+    private ReentrantLock firstStripe(Client client, Vehicle vehicle) {
+        return this.stripes[Math.min(this.stripeIndex(client), this.stripeIndex(vehicle))];
+    }
+
+    private ReentrantLock secondStripe(Client client, Vehicle vehicle) {
+        return this.stripes[Math.max(this.stripeIndex(client), this.stripeIndex(vehicle))];
+    }
+}
@@ -0,0 +1,172 @@
+package agency;
+
+import util.TimeProvider;
+
+import java.util.*;
+
+/**
+ * Secondary indexes over the vehicles of a rental agency.
+ * Lookups return vehicles in the agency insertion order, exactly like a scan of the fleet would.
+ */
+class FleetIndex {
+    private final Map<Vehicle, Long> sequences;
+    // Brand buckets are persistent snapshots, so a lookup can hand one out without copying it.
+    private final Map<String, FleetSnapshot> byBrand;
+    private final NavigableMap<Double, Set<Vehicle>> byPrice;
+    private int priceYear;
+
+    /**
+     * Create empty indexes.
+     * @param sequences The insertion sequence number of every vehicle of the agency, used to order results.
+     */
+    FleetIndex(Map<Vehicle, Long> sequences) {
+        this.sequences = sequences;
+        this.byBrand = new HashMap<>();
+        this.byPrice = new TreeMap<>();
+        this.priceYear = TimeProvider.currentYearValue();
+    }
+
+    /**
+     * Index a vehicle. It must already have a sequence number.
+     * @param vehicle The vehicle to index.
+     */
+    void add(Vehicle vehicle) {
+        this.byBrand.put(vehicle.getBrand(), this.brand(vehicle.getBrand()).with(this.sequences.get(vehicle), vehicle));
+        this.byPrice.computeIfAbsent(vehicle.dailyRentalPrice(), price -> new LinkedHashSet<>()).add(vehicle);
+    }
+
+    /**
+     * Index a batch of vehicles. They must already have a sequence number.
+     * @param vehicles The vehicles to index, in insertion order.
+     */
+    void addAll(List<Vehicle> vehicles) {
+        this.refreshPrices();
+        Map<String, List<Vehicle>> brands = new HashMap<>();
+        List<Vehicle> brandBatch = null;
+        String brand = null;
+        for(Vehicle vehicle : vehicles) {
+            // Fleets are often loaded brand by brand, so consecutive vehicles reuse the same batch.
+            if(brandBatch == null || !Objects.equals(brand, vehicle.getBrand())) {
+                brand = vehicle.getBrand();
+                brandBatch = brands.computeIfAbsent(brand, key -> new ArrayList<>());
+            }
+            brandBatch.add(vehicle);
+            this.byPrice.computeIfAbsent(vehicle.dailyRentalPrice(), price -> new LinkedHashSet<>()).add(vehicle);
+        }
+        // Each bucket gets its batch at once, which rebuilds it instead of inserting one vehicle at a time when it is large.
+        for(Map.Entry<String, List<Vehicle>> entry : brands.entrySet()) {
+            List<Vehicle> batch = entry.getValue();
+            long[] sequences = new long[batch.size()];
+            for(int i = 0; i < sequences.length; i++) {
+                sequences[i] = this.sequences.get(batch.get(i));
+            }
+            this.byBrand.put(entry.getKey(), this.brand(entry.getKey()).withAll(sequences, batch));
+        }
+    }
+
+    /**
+     * Remove a vehicle from the indexes. It must still have its sequence number.
+     * @param vehicle The vehicle to remove.
+     */
+    void remove(Vehicle vehicle) {
+        FleetSnapshot bucket = this.byBrand.get(vehicle.getBrand());
+        if(bucket != null) {
+            bucket = bucket.without(this.sequences.get(vehicle));
+            if(bucket.isEmpty()) {
+                this.byBrand.remove(vehicle.getBrand());
+            } else {
+                this.byBrand.put(vehicle.getBrand(), bucket);
+            }
+        }
+        this.refreshPrices();
+        removeFrom(this.byPrice, vehicle.dailyRentalPrice(), vehicle);
+    }
+
+    /**
+     * Get the vehicles of a brand.
+     * @param brand The brand to look up.
+     * @return The vehicles of the brand, in insertion order.
+     */
+    List<Vehicle> withBrand(String brand) {
+        return this.brand(brand).copy();
+    }
+
+    /**
+     * Get the vehicles of a brand as an immutable snapshot, which later changes of the index do not affect.
+     * @param brand The brand to look up.
+     * @return The vehicles of the brand, in insertion order.
+     */
+    FleetSnapshot brand(String brand) {
+        return this.byBrand.getOrDefault(brand, FleetSnapshot.EMPTY);
+    }
+
+    /**
+     * Get the vehicles whose daily rental price is lower than or equal to a maximum price.
+     * @param maxPrice The maximum daily rental price.
+     * @return The matching vehicles, in insertion order.
+     */
+    List<Vehicle> withMaxPrice(double maxPrice) {
+        List<Vehicle> vehicles = new ArrayList<>();
+        if(Double.isNaN(maxPrice)) {
+            return vehicles;
+        }
+        this.refreshPrices();
+        for(Set<Vehicle> bucket : this.byPrice.headMap(maxPrice, true).values()) {
+            vehicles.addAll(bucket);
+        }
+        vehicles.sort(Comparator.comparingLong(this.sequences::get));
+        return vehicles;
+    }
+
+    /**
+     * Get the vehicles by increasing daily rental price, from a minimum price.
+     * @param minPrice The minimum daily rental price.
+     * @return A read-only view of the vehicles grouped by price, by increasing price, each group in insertion order.
+     */
+    Collection<Set<Vehicle>> fromPrice(double minPrice) {
+        this.refreshPrices();
+        return Collections.unmodifiableCollection(this.byPrice.tailMap(minPrice, true).values());
+    }
+
+    /**
+     * Count the vehicles whose daily rental price is lower than or equal to a maximum price.
+     * @param maxPrice The maximum daily rental price.
+     * @return The number of matching vehicles.
+     */
+    int countWithMaxPrice(double maxPrice) {
+        if(Double.isNaN(maxPrice)) {
+            return 0;
+        }
+        this.refreshPrices();
+        int count = 0;
+        for(Set<Vehicle> bucket : this.byPrice.headMap(maxPrice, true).values()) {
+            count += bucket.size();
+        }
+        return count;
+    }
+
+    // Prices depend on the current year, so the price index is rebuilt once when the year changes.
+    private void refreshPrices() {
+        int currentYear = TimeProvider.currentYearValue();
+        if(currentYear == this.priceYear) {
+            return;
+        }
+        List<Vehicle> vehicles = new ArrayList<>();
+        for(Set<Vehicle> bucket : this.byPrice.values()) {
+            vehicles.addAll(bucket);
+        }
+        vehicles.sort(Comparator.comparingLong(this.sequences::get));
+        this.byPrice.clear();
+        for(Vehicle vehicle : vehicles) {
+            this.byPrice.computeIfAbsent(vehicle.dailyRentalPrice(), price -> new LinkedHashSet<>()).add(vehicle);
+        }
+        this.priceYear = currentYear;
+    }
+
+    private static <K> void removeFrom(Map<K, Set<Vehicle>> index, K key, Vehicle vehicle) {
+        Set<Vehicle> bucket = index.get(key);
+        if(bucket != null && bucket.remove(vehicle) && bucket.isEmpty()) {
+            index.remove(key);
+        }
+    }
+}
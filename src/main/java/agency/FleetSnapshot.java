@@ -0,0 +1,475 @@
+package agency;
+
+import java.util.*;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/**
+ * An immutable version of the fleet of a rental agency, in insertion order.
+ * The vehicles are kept in a persistent balanced tree keyed by insertion sequence number:
+ * a new version only copies the nodes on the path to the added or removed vehicle and shares all the others,
+ * so publishing it costs O(log n) instead of a copy of the fleet.
+ * A snapshot never changes, so it can be iterated and filtered from any thread without locks or copies.
+ * A snapshot traversed more than once is flattened into an array, which the following traversals read instead of the tree.
+ */
+public final class FleetSnapshot extends AbstractList<Vehicle> {
+    static final FleetSnapshot EMPTY = new FleetSnapshot(null, 0);
+
+    private final Node root;
+    private final long version;
+    private volatile Vehicle[] flattened;
+    private volatile boolean traversed;
+
+    private FleetSnapshot(Node root, long version) {
+        this.root = root;
+        this.version = version;
+    }
+
+    /**
+     * Get the version of the fleet. Every change of the agency publishes a snapshot with a greater version.
+     * @return The version of this snapshot.
+     */
+    public long version() {
+        return this.version;
+    }
+
+    @Override
+    public int size() {
+        return Node.size(this.root);
+    }
+
+    /**
+     * Get a vehicle by position, in O(log n).
+     * @param index The position of the vehicle in insertion order.
+     * @return The vehicle.
+     * @throws IndexOutOfBoundsException if the index is out of range.
+     */
+    @Override
+    public Vehicle get(int index) {
+        Objects.checkIndex(index, this.size());
+        Vehicle[] vehicles = this.flattened;
+        if(vehicles != null) {
+            return vehicles[index];
+        }
+        Node node = this.root;
+        while(true) {
+            int leftSize = Node.size(node.left);
+            if(index < leftSize) {
+                node = node.left;
+            } else if(index == leftSize) {
+                return node.vehicle;
+            } else {
+                index -= leftSize + 1;
+                node = node.right;
+            }
+        }
+    }
+
+    @Override
+    public Iterator<Vehicle> iterator() {
+        Vehicle[] vehicles = this.flattened;
+        if(vehicles != null) {
+            return Arrays.asList(vehicles).iterator();
+        }
+        return new Cursor(this.root, 0, this.size());
+    }
+
+    @Override
+    public Spliterator<Vehicle> spliterator() {
+        // Streams often stop early, so the tree is only read through the array if it is already flattened.
+        Vehicle[] vehicles = this.flattened;
+        if(vehicles != null) {
+            return Spliterators.spliterator(vehicles, Spliterator.ORDERED | Spliterator.IMMUTABLE | Spliterator.NONNULL);
+        }
+        return new Cursor(this.root, 0, this.size());
+    }
+
+    @Override
+    public void forEach(Consumer<? super Vehicle> action) {
+        Objects.requireNonNull(action);
+        // A snapshot replaced right after its first traversal is not worth flattening, the tree is walked directly.
+        if(this.flattened == null && !this.traversed) {
+            this.traversed = true;
+            Node.forEach(this.root, action);
+            return;
+        }
+        for(Vehicle vehicle : this.flatten()) {
+            action.accept(vehicle);
+        }
+    }
+
+    @Override
+    public Object[] toArray() {
+        return Arrays.copyOf(this.flatten(), this.size(), Object[].class);
+    }
+
+    /**
+     * Copy the vehicles of this snapshot into a new list.
+     * @return A new list of the vehicles, in insertion order.
+     */
+    ArrayList<Vehicle> copy() {
+        Vehicle[] vehicles = this.flatten();
+        // ArrayList copies the array of any other collection, so the shared array is copied once instead of twice.
+        return new ArrayList<>(new AbstractCollection<Vehicle>() {
+            @Override
+            public Object[] toArray() {
+                return vehicles;
+            }
+
+            @Override
+            public Iterator<Vehicle> iterator() {
+                return Arrays.asList(vehicles).iterator();
+            }
+
+            @Override
+            public int size() {
+                return vehicles.length;
+            }
+        });
+    }
+
+    /**
+     * Returns the vehicles of this snapshot that satisfy a criterion, in insertion order.
+     * @param criterion the criterion that the selected vehicles must satisfy
+     * @return a new list of the vehicles that satisfy the given criterion
+     */
+    public List<Vehicle> select(Predicate<Vehicle> criterion) {
+        List<Vehicle> selectedVehicles = new ArrayList<>();
+        this.forEach(vehicle -> {
+            if(criterion.test(vehicle)) {
+                selectedVehicles.add(vehicle);
+            }
+        });
+        return selectedVehicles;
+    }
+
+    /**
+     * Test if this snapshot is already flattened into an array.
+     * @return true if the traversals of this snapshot read an array, false if they walk the tree.
+     */
+    boolean isFlattened() {
+        return this.flattened != null;
+    }
+
+    /**
+     * Get the vehicles of this snapshot as an array, built by the first call and shared by the next ones.
+     * @return The vehicles in insertion order. The array must not be modified.
+     */
+    private Vehicle[] flatten() {
+        Vehicle[] vehicles = this.flattened;
+        if(vehicles == null) {
+            // Racing threads build equal arrays, any of them can be kept.
+            vehicles = new Vehicle[this.size()];
+            Node.copy(this.root, vehicles, 0);
+            this.flattened = vehicles;
+        }
+        return vehicles;
+    }
+
+    /**
+     * Find a vehicle by sequence number.
+     * @param sequence The insertion sequence number of the vehicle.
+     * @return The vehicle, or null if no vehicle has this sequence number.
+     */
+    Vehicle find(long sequence) {
+        Node node = this.root;
+        while(node != null && node.sequence != sequence) {
+            node = sequence < node.sequence ? node.left : node.right;
+        }
+        return node == null ? null : node.vehicle;
+    }
+
+    /**
+     * Create the next version with one more vehicle.
+     * @param sequence The sequence number of the vehicle, greater than those of the fleet.
+     * @param vehicle The added vehicle.
+     * @return The new snapshot.
+     */
+    FleetSnapshot with(long sequence, Vehicle vehicle) {
+        return new FleetSnapshot(Node.insert(this.root, sequence, vehicle), this.version + 1);
+    }
+
+    /**
+     * Create the next version with a batch of vehicles appended.
+     * @param firstSequence The sequence number of the first vehicle, the next ones being consecutive.
+     * @param vehicles The added vehicles, in insertion order.
+     * @return The new snapshot, or this one if the batch is empty.
+     */
+    FleetSnapshot withAll(long firstSequence, List<Vehicle> vehicles) {
+        long[] sequences = new long[vehicles.size()];
+        for(int i = 0; i < sequences.length; i++) {
+            sequences[i] = firstSequence + i;
+        }
+        return this.withAll(sequences, vehicles);
+    }
+
+    /**
+     * Create the next version with a batch of vehicles appended.
+     * @param added The sequence numbers of the vehicles, increasing and greater than those of the fleet.
+     * @param vehicles The added vehicles, in insertion order.
+     * @return The new snapshot, or this one if the batch is empty.
+     */
+    FleetSnapshot withAll(long[] added, List<Vehicle> vehicles) {
+        if(vehicles.isEmpty()) {
+            return this;
+        }
+        int size = this.size();
+        // Inserting m vehicles copies about m * log(n) nodes, rebuilding the whole tree copies n + m of them.
+        if((long) vehicles.size() * (32 - Integer.numberOfLeadingZeros(size)) < size) {
+            Node root = this.root;
+            for(int i = 0; i < added.length; i++) {
+                root = Node.insert(root, added[i], vehicles.get(i));
+            }
+            return new FleetSnapshot(root, this.version + 1);
+        }
+        long[] sequences = new long[size + vehicles.size()];
+        Vehicle[] all = new Vehicle[sequences.length];
+        int[] position = {0};
+        Node.forEachNode(this.root, node -> {
+            sequences[position[0]] = node.sequence;
+            all[position[0]++] = node.vehicle;
+        });
+        for(int i = 0; i < vehicles.size(); i++) {
+            sequences[size + i] = added[i];
+            all[size + i] = vehicles.get(i);
+        }
+        return new FleetSnapshot(Node.build(sequences, all, 0, all.length), this.version + 1);
+    }
+
+    /**
+     * Create the next version without a vehicle.
+     * @param sequence The sequence number of the removed vehicle.
+     * @return The new snapshot.
+     */
+    FleetSnapshot without(long sequence) {
+        return new FleetSnapshot(Node.delete(this.root, sequence), this.version + 1);
+    }
+
+    /**
+     * A node of an AVL tree. Nodes are never modified, rebalancing creates new ones.
+     */
+    private static final class Node {
+        final long sequence;
+        final Vehicle vehicle;
+        final Node left;
+        final Node right;
+        final int height;
+        final int size;
+
+        Node(long sequence, Vehicle vehicle, Node left, Node right) {
+            this.sequence = sequence;
+            this.vehicle = vehicle;
+            this.left = left;
+            this.right = right;
+            this.height = 1 + Math.max(height(left), height(right));
+            this.size = 1 + size(left) + size(right);
+        }
+
+        static int height(Node node) {
+            return node == null ? 0 : node.height;
+        }
+
+        static int size(Node node) {
+            return node == null ? 0 : node.size;
+        }
+
+        static Node insert(Node node, long sequence, Vehicle vehicle) {
+            if(node == null) {
+                return new Node(sequence, vehicle, null, null);
+            }
+            if(sequence < node.sequence) {
+                return balance(node.sequence, node.vehicle, insert(node.left, sequence, vehicle), node.right);
+            }
+            return balance(node.sequence, node.vehicle, node.left, insert(node.right, sequence, vehicle));
+        }
+
+        static Node delete(Node node, long sequence) {
+            if(node == null) {
+                return null;
+            }
+            if(sequence < node.sequence) {
+                return balance(node.sequence, node.vehicle, delete(node.left, sequence), node.right);
+            }
+            if(sequence > node.sequence) {
+                return balance(node.sequence, node.vehicle, node.left, delete(node.right, sequence));
+            }
+            if(node.left == null) {
+                return node.right;
+            }
+            if(node.right == null) {
+                return node.left;
+            }
+            Node successor = node.right;
+            while(successor.left != null) {
+                successor = successor.left;
+            }
+            return balance(successor.sequence, successor.vehicle, node.left, deleteFirst(node.right));
+        }
+
+        private static Node deleteFirst(Node node) {
+            if(node.left == null) {
+                return node.right;
+            }
+            return balance(node.sequence, node.vehicle, deleteFirst(node.left), node.right);
+        }
+
+        private static Node balance(long sequence, Vehicle vehicle, Node left, Node right) {
+            int leftHeight = height(left);
+            int rightHeight = height(right);
+            if(leftHeight > rightHeight + 1) {
+                if(height(left.left) >= height(left.right)) {
+                    return new Node(left.sequence, left.vehicle, left.left, new Node(sequence, vehicle, left.right, right));
+                }
+                Node pivot = left.right;
+                return new Node(pivot.sequence, pivot.vehicle,
+                        new Node(left.sequence, left.vehicle, left.left, pivot.left),
+                        new Node(sequence, vehicle, pivot.right, right));
+            }
+            if(rightHeight > leftHeight + 1) {
+                if(height(right.right) >= height(right.left)) {
+                    return new Node(right.sequence, right.vehicle, new Node(sequence, vehicle, left, right.left), right.right);
+                }
+                Node pivot = right.left;
+                return new Node(pivot.sequence, pivot.vehicle,
+                        new Node(sequence, vehicle, left, pivot.left),
+                        new Node(right.sequence, right.vehicle, pivot.right, right.right));
+            }
+            return new Node(sequence, vehicle, left, right);
+        }
+
+        static Node build(long[] sequences, Vehicle[] vehicles, int from, int to) {
+            if(from >= to) {
+                return null;
+            }
+            int middle = (from + to) >>> 1;
+            return new Node(sequences[middle], vehicles[middle],
+                    build(sequences, vehicles, from, middle), build(sequences, vehicles, middle + 1, to));
+        }
+
+        static void forEach(Node node, Consumer<? super Vehicle> action) {
+            while(node != null) {
+                forEach(node.left, action);
+                action.accept(node.vehicle);
+                node = node.right;
+            }
+        }
+
+        static int copy(Node node, Vehicle[] vehicles, int position) {
+            while(node != null) {
+                position = copy(node.left, vehicles, position);
+                vehicles[position++] = node.vehicle;
+                node = node.right;
+            }
+            return position;
+        }
+
+        static void forEachNode(Node node, Consumer<Node> action) {
+            while(node != null) {
+                forEachNode(node.left, action);
+                action.accept(node);
+                node = node.right;
+            }
+        }
+    }
+
+    /**
+     * An in-order traversal of a range of positions, for iterations which may stop before flattening would pay off.
+     * The path to the next node is kept on a stack, so each step is O(1) amortized,
+     * and the range can be split in halves for parallel streams.
+     */
+    private static final class Cursor implements Iterator<Vehicle>, Spliterator<Vehicle> {
+        // AVL trees of 2^31 nodes are less than 46 levels high.
+        private static final int MAX_DEPTH = 48;
+
+        private final Node root;
+        private final int end;
+        private int index;
+        private Node[] stack;
+        private int depth;
+
+        Cursor(Node root, int index, int end) {
+            this.root = root;
+            this.end = end;
+            this.index = index;
+        }
+
+        private void seek() {
+            this.stack = new Node[MAX_DEPTH];
+            this.depth = 0;
+            Node node = this.root;
+            int position = this.index;
+            while(node != null) {
+                int leftSize = Node.size(node.left);
+                if(position < leftSize) {
+                    this.stack[this.depth++] = node;
+                    node = node.left;
+                } else if(position == leftSize) {
+                    this.stack[this.depth++] = node;
+                    return;
+                } else {
+                    position -= leftSize + 1;
+                    node = node.right;
+                }
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return this.index < this.end;
+        }
+
+        @Override
+        public Vehicle next() {
+            if(this.index >= this.end) {
+                throw new NoSuchElementException();
+            }
+            if(this.stack == null) {
+                this.seek();
+            }
+            Node node = this.stack[--this.depth];
+            for(Node next = node.right; next != null; next = next.left) {
+                this.stack[this.depth++] = next;
+            }
+            this.index++;
+            return node.vehicle;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super Vehicle> action) {
+            if(!this.hasNext()) {
+                return false;
+            }
+            action.accept(this.next());
+            return true;
+        }
+
+        @Override
+        public void forEachRemaining(Consumer<? super Vehicle> action) {
+            while(this.hasNext()) {
+                action.accept(this.next());
+            }
+        }
+
+        @Override
+        public Spliterator<Vehicle> trySplit() {
+            int middle = (this.index + this.end) >>> 1;
+            if(middle <= this.index) {
+                return null;
+            }
+            Cursor prefix = new Cursor(this.root, this.index, middle);
+            this.index = middle;
+            this.stack = null;
+            return prefix;
+        }
+
+        @Override
+        public long estimateSize() {
+            return this.end - this.index;
+        }
+
+        @Override
+        public int characteristics() {
+            return ORDERED | SIZED | SUBSIZED | IMMUTABLE | NONNULL;
+        }
+    }
+}
@@ -0,0 +1,288 @@
+package agency;
+
+import util.TimeProvider;
+
+import java.util.*;
+
+/**
+ * Aggregates of the daily rental prices of a rental agency, per brand and per vehicle type,
+ * for the whole fleet and for the rented vehicles.
+ * They are updated by the agency on every change, so every query is a lookup.
+ * Prices depend on the current year, so the aggregates are rebuilt once when the year changes.
+ */
+public class FleetStatistics {
+
+    /**
+     * The aggregate of the daily rental prices of a group of vehicles.
+     * @param count The number of vehicles.
+     * @param sum The sum of their daily rental prices.
+     * @param min The lowest daily rental price, or NaN if there is no vehicle.
+     * @param max The highest daily rental price, or NaN if there is no vehicle.
+     */
+    public record Aggregate(long count, double sum, double min, double max) {
+        static final Aggregate EMPTY = new Aggregate(0, 0, Double.NaN, Double.NaN);
+
+        /**
+         * Get the average daily rental price.
+         * @return The average price, or NaN if there is no vehicle.
+         */
+        public double average() {
+            return this.count == 0 ? Double.NaN : this.sum / this.count;
+        }
+    }
+
+    private final Collection<Vehicle> fleet;
+    private final Map<Vehicle, Client> renters;
+    private Totals all;
+    private Totals rented;
+    private int priceYear;
+
+    /**
+     * Create the statistics of a fleet.
+     * @param fleet The vehicles of the agency.
+     * @param renters The client renting each rented vehicle.
+     */
+    FleetStatistics(Collection<Vehicle> fleet, Map<Vehicle, Client> renters) {
+        this.fleet = fleet;
+        this.renters = renters;
+        this.rebuild();
+    }
+
+    // The agency notifies a change after applying it, so a rebuild triggered by the notification already includes it.
+
+    void added(Vehicle vehicle) {
+        if(!this.refresh()) {
+            this.all.add(vehicle);
+        }
+    }
+
+    void addedAll(Collection<Vehicle> vehicles) {
+        if(!this.refresh()) {
+            for(Vehicle vehicle : vehicles) {
+                this.all.add(vehicle);
+            }
+        }
+    }
+
+    void removed(Vehicle vehicle) {
+        if(!this.refresh()) {
+            this.all.remove(vehicle);
+        }
+    }
+
+    void rented(Vehicle vehicle) {
+        if(!this.refresh()) {
+            this.rented.add(vehicle);
+        }
+    }
+
+    void returned(Vehicle vehicle) {
+        if(!this.refresh()) {
+            this.rented.remove(vehicle);
+        }
+    }
+
+    /**
+     * Get the aggregate of the whole fleet.
+     * @return The aggregate of every vehicle.
+     */
+    public Aggregate fleet() {
+        this.refresh();
+        return this.all.total.snapshot();
+    }
+
+    /**
+     * Get the aggregate of the vehicles of a brand.
+     * @param brand The brand.
+     * @return The aggregate of the vehicles of the brand.
+     */
+    public Aggregate brand(String brand) {
+        this.refresh();
+        return Totals.snapshot(this.all.byBrand.get(brand));
+    }
+
+    /**
+     * Get the aggregate of the vehicles of a type.
+     * @param type The vehicle type.
+     * @return The aggregate of the vehicles of the type.
+     */
+    public Aggregate type(VehicleType type) {
+        this.refresh();
+        return Totals.snapshot(this.all.byType.get(type));
+    }
+
+    /**
+     * Get the number of vehicles of each brand.
+     * @return A copy of the count of vehicles per brand.
+     */
+    public Map<String, Long> countPerBrand() {
+        this.refresh();
+        Map<String, Long> counts = new HashMap<>();
+        this.all.byBrand.forEach((brand, accumulator) -> {
+            if(accumulator.count > 0) {
+                counts.put(brand, accumulator.count);
+            }
+        });
+        return counts;
+    }
+
+    /**
+     * Get the aggregate of the rented vehicles. Its sum is the daily revenue of the agency.
+     * @return The aggregate of the rented vehicles.
+     */
+    public Aggregate rented() {
+        this.refresh();
+        return this.rented.total.snapshot();
+    }
+
+    /**
+     * Get the aggregate of the rented vehicles of a brand.
+     * @param brand The brand.
+     * @return The aggregate of the rented vehicles of the brand.
+     */
+    public Aggregate rentedBrand(String brand) {
+        this.refresh();
+        return Totals.snapshot(this.rented.byBrand.get(brand));
+    }
+
+    /**
+     * Get the aggregate of the rented vehicles of a type.
+     * @param type The vehicle type.
+     * @return The aggregate of the rented vehicles of the type.
+     */
+    public Aggregate rentedType(VehicleType type) {
+        this.refresh();
+        return Totals.snapshot(this.rented.byType.get(type));
+    }
+
+    /**
+     * Rebuild the aggregates if the year changed since they were computed.
+     * @return true if the aggregates were rebuilt, false otherwise.
+     */
+    private boolean refresh() {
+        if(TimeProvider.currentYearValue() == this.priceYear) {
+            return false;
+        }
+        this.rebuild();
+        return true;
+    }
+
+    private void rebuild() {
+        this.priceYear = TimeProvider.currentYearValue();
+        this.all = new Totals();
+        this.rented = new Totals();
+        for(Vehicle vehicle : this.fleet) {
+            this.all.add(vehicle);
+        }
+        for(Vehicle vehicle : this.renters.keySet()) {
+            this.rented.add(vehicle);
+        }
+    }
+
+    /**
+     * The aggregates of one population of vehicles.
+     */
+    private static class Totals {
+        private final Accumulator total = new Accumulator();
+        private final Map<String, Accumulator> byBrand = new HashMap<>();
+        private final Map<VehicleType, Accumulator> byType = new EnumMap<>(VehicleType.class);
+
+        void add(Vehicle vehicle) {
+            double price = vehicle.dailyRentalPrice();
+            this.total.add(price);
+            this.byBrand.computeIfAbsent(vehicle.getBrand(), brand -> new Accumulator()).add(price);
+            VehicleType type = typeOf(vehicle);
+            if(type != null) {
+                this.byType.computeIfAbsent(type, key -> new Accumulator()).add(price);
+            }
+        }
+
+        void remove(Vehicle vehicle) {
+            double price = vehicle.dailyRentalPrice();
+            this.total.remove(price);
+            removeFrom(this.byBrand, vehicle.getBrand(), price);
+            VehicleType type = typeOf(vehicle);
+            if(type != null) {
+                removeFrom(this.byType, type, price);
+            }
+        }
+
+        static Aggregate snapshot(Accumulator accumulator) {
+            return accumulator == null ? Aggregate.EMPTY : accumulator.snapshot();
+        }
+
+        // Empty groups are kept, since rentals come and go on the same few brands and types.
+        private static <K> void removeFrom(Map<K, Accumulator> groups, K key, double price) {
+            Accumulator accumulator = groups.get(key);
+            if(accumulator != null) {
+                accumulator.remove(price);
+            }
+        }
+
+        private static VehicleType typeOf(Vehicle vehicle) {
+            if(vehicle instanceof Car) {
+                return VehicleType.CAR;
+            }
+            if(vehicle instanceof Motorbike) {
+                return VehicleType.MOTORBIKE;
+            }
+            return null;
+        }
+    }
+
+    /**
+     * The count, sum and extremes of a group of prices.
+     * Prices are kept in a sorted multiset, so the extremes stay known when a vehicle is removed.
+     * A fleet only has a handful of distinct prices, so the multiset is a pair of small sorted arrays
+     * searched by bisection, which avoids boxing every price into a tree.
+     */
+    private static class Accumulator {
+        private double[] prices = new double[4];
+        private int[] occurrences = new int[4];
+        private int distinct;
+        private long count;
+        private double sum;
+
+        void add(double price) {
+            int position = Arrays.binarySearch(this.prices, 0, this.distinct, price);
+            if(position >= 0) {
+                this.occurrences[position]++;
+            } else {
+                position = -position - 1;
+                if(this.distinct == this.prices.length) {
+                    this.prices = Arrays.copyOf(this.prices, this.distinct * 2);
+                    this.occurrences = Arrays.copyOf(this.occurrences, this.distinct * 2);
+                }
+                System.arraycopy(this.prices, position, this.prices, position + 1, this.distinct - position);
+                System.arraycopy(this.occurrences, position, this.occurrences, position + 1, this.distinct - position);
+                this.prices[position] = price;
+                this.occurrences[position] = 1;
+                this.distinct++;
+            }
+            this.count++;
+            this.sum += price;
+        }
+
+        boolean remove(double price) {
+            int position = Arrays.binarySearch(this.prices, 0, this.distinct, price);
+            if(position < 0) {
+                return false;
+            }
+            if(--this.occurrences[position] == 0) {
+                this.distinct--;
+                System.arraycopy(this.prices, position + 1, this.prices, position, this.distinct - position);
+                System.arraycopy(this.occurrences, position + 1, this.occurrences, position, this.distinct - position);
+            }
+            this.count--;
+            this.sum = this.count == 0 ? 0 : this.sum - price;
+            return true;
+        }
+
+        Aggregate snapshot() {
+            if(this.count == 0) {
+                return Aggregate.EMPTY;
+            }
+            return new Aggregate(this.count, this.sum, this.prices[0], this.prices[this.distinct - 1]);
+        }
+    }
+}
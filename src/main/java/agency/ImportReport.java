@@ -0,0 +1,69 @@
+package agency;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The outcome of a bulk import into a rental agency.
+ */
+public class ImportReport {
+
+    /**
+     * The reasons why an item of a batch is rejected.
+     */
+    public enum Reason {
+        MISSING_FIELD,
+        INVALID_PRODUCTION_YEAR,
+        INVALID_NUMBER_OF_SEATS,
+        INVALID_CYLINDER_CAPACITY,
+        DUPLICATE
+    }
+
+    /**
+     * A rejected item of a batch.
+     * @param index The position of the item in the batch.
+     * @param reason The reason why the item is rejected.
+     */
+    public record Rejection(int index, Reason reason) {
+    }
+
+    private int addedCount;
+    private final List<Rejection> rejections;
+
+    ImportReport() {
+        this.rejections = new ArrayList<>();
+    }
+
+    void added() {
+        this.addedCount++;
+    }
+
+    void reject(int index, Reason reason) {
+        this.rejections.add(new Rejection(index, reason));
+    }
+
+    /**
+     * Get the number of vehicles added to the agency.
+     * @return The number of added vehicles.
+     */
+    public int getAddedCount() {
+        return this.addedCount;
+    }
+
+    /**
+     * Get the rejected items, in batch order.
+     * @return The rejected items.
+     */
+    public List<Rejection> getRejections() {
+        return Collections.unmodifiableList(this.rejections);
+    }
+
+    /**
+     * Test if every item of the batch was added.
+     * @return true if no item was rejected, false otherwise.
+     */
+    public boolean isComplete() {
+        return this.rejections.isEmpty();
+    }
+}
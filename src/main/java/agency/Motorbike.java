@@ -1,8 +1,13 @@
 package agency;
 
+import util.TimeProvider;
+
 public class Motorbike extends AbstractVehicle{
 
+    static final int MIN_CYLINDER_CAPACITY = 50;
+
     private int cylinderCapacity;
+    private final double price;
 
     /**
      * Create a new vehicle.
@@ -13,13 +18,36 @@ public class Motorbike extends AbstractVehicle{
      * @throws IllegalArgumentException if the production year is not between 1900 and the current year.
      */
     public Motorbike(String brand, String model, int productionYear, int cylinderCapacity) throws IllegalArgumentException {
-        super(brand, model, productionYear);
+        this(brand, model, productionYear, cylinderCapacity, TimeProvider.currentYearValue());
+    }
+
+    /**
+     * Create a new motorbike, checked against an already known current year.
+     *
+     * @param brand          The brand of the vehicle.
+     * @param model          The model of the vehicle.
+     * @param productionYear The production year of the vehicle.
+     * @param cylinderCapacity The cylinder capacity of the motorbike, in cm3.
+     * @param currentYear    The current year.
+     * @throws IllegalArgumentException if the production year is not between 1900 and the current year or if the cylinder capacity is less than 50.
+     */
+    Motorbike(String brand, String model, int productionYear, int cylinderCapacity, int currentYear) throws IllegalArgumentException {
+        super(brand, model, productionYear, currentYear);
 
-        if(cylinderCapacity < 50) {
+        if(cylinderCapacity < MIN_CYLINDER_CAPACITY) {
             throw new IllegalArgumentException("Cylinder capacity must be at least 50. " + cylinderCapacity + " is invalid.");
         }
 
         this.cylinderCapacity = cylinderCapacity;
+        this.price = cylinderCapacity * 0.25;
+    }
+
+    /**
+     * Get the cylinder capacity of the motorbike.
+     * @return The cylinder capacity of the motorbike, in cm3.
+     */
+    public int getCylinderCapacity() {
+        return this.cylinderCapacity;
     }
 
     /**
@@ -28,7 +56,7 @@ public class Motorbike extends AbstractVehicle{
      */
     @Override
     public double dailyRentalPrice() {
-        return this.cylinderCapacity * 0.25;
+        return this.price;
     }
 
     /**
@@ -37,10 +65,20 @@ public class Motorbike extends AbstractVehicle{
      */
     @Override
     public String toString() {
-        return "Motorbike " + this.getBrand() + " " +
-                this.getModel() + " " +
-                this.getProductionYear() + " (" +
-                this.cylinderCapacity + "cm3) " +
-                dailyRentalPrice() + "€";
+        return this.appendTo(new StringBuilder(64)).toString();
+    }
+
+    /**
+     * Append the string representation of the motorbike to a builder.
+     * @param builder The builder to append to.
+     * @return The builder.
+     */
+    @Override
+    public StringBuilder appendTo(StringBuilder builder) {
+        builder.append("Motorbike ").append(this.getBrand()).append(' ')
+                .append(this.getModel()).append(' ')
+                .append(this.getProductionYear()).append(" (")
+                .append(this.cylinderCapacity).append("cm3) ");
+        return appendPrice(builder, this.dailyRentalPrice()).append('€');
     }
 }
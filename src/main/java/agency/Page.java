@@ -0,0 +1,44 @@
+package agency;
+
+import java.util.List;
+
+/**
+ * A page of an ordered selection.
+ * @param vehicles The vehicles of the page, in order.
+ * @param next The position after the last vehicle of the page, or null if it is the last page.
+ */
+public record Page(List<Vehicle> vehicles, Cursor next) {
+
+    /**
+     * Test if there are more matching vehicles after this page.
+     * @return true if there is a next page, false otherwise.
+     */
+    public boolean hasNext() {
+        return this.next != null;
+    }
+
+    /**
+     * The position after a vehicle in an ordered selection.
+     * It keeps the key of the vehicle instead of a number of skipped vehicles, so the next page neither repeats
+     * nor misses vehicles when the fleet changes between two requests.
+     */
+    public static final class Cursor {
+        final VehicleOrder order;
+        final Vehicle last;
+        final long sequence;
+
+        Cursor(VehicleOrder order, Vehicle last, long sequence) {
+            this.order = order;
+            this.last = last;
+            this.sequence = sequence;
+        }
+
+        /**
+         * Get the order of the selection.
+         * @return The order of the selection.
+         */
+        public VehicleOrder getOrder() {
+            return this.order;
+        }
+    }
+}
@@ -1,21 +1,48 @@
 package agency;
 
+import agency.criteria.*;
+import agency.exceptions.RentalConflictException;
 import agency.exceptions.UnknownVehicleException;
+import util.TimeProvider;
 
+import java.io.*;
+import java.nio.charset.Charset;
+import java.time.LocalDate;
 import java.util.*;
+import java.util.function.Consumer;
 import java.util.function.Predicate;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 public class RentalAgency {
-    private final List<Vehicle> vehicles;
-    private final Map<Client, Vehicle> rentedVehicles;
+    private static final int PARALLEL_THRESHOLD = 10_000;
+    private static final int LISTING_BUFFER_SIZE = 8192;
+
+    private volatile FleetSnapshot fleet;
+    private final Map<Vehicle, Long> inventory;
+    private final FleetIndex index;
+    private final Map<Client, Set<Vehicle>> rentedVehicles;
+    private final Map<Vehicle, Client> renters;
+    private final ReservationBook reservations;
+    private long nextSequence;
+    private final RentalPolicy policy;
+    private ColumnarFleet columns;
+    private FleetStatistics statistics;
 
     /**
      * Create a new rental agency with a list of vehicles.
+     * Duplicated vehicles are only added once.
      * @param vehicles The list of vehicles.
      */
     public RentalAgency(List<Vehicle> vehicles) {
-        this.vehicles = vehicles;
+        this.fleet = FleetSnapshot.EMPTY;
+        this.inventory = new HashMap<>(Math.max(16, (int) (vehicles.size() / .75f) + 1));
+        this.index = new FleetIndex(this.inventory);
         this.rentedVehicles = new HashMap<>();
+        this.renters = new HashMap<>();
+        this.reservations = new ReservationBook();
+        this.policy = new RentalPolicy();
+        this.addAll(vehicles);
     }
 
     /**
@@ -31,59 +58,474 @@ public class RentalAgency {
      * @return true if the vehicle was added, false otherwise.
      */
     public boolean add(Vehicle vehicle){
-        if(this.vehicles.contains(vehicle)){
+        if(this.inventory.putIfAbsent(vehicle, this.nextSequence) != null){
             return false;
         }
-        this.vehicles.add(vehicle);
+        this.fleet = this.fleet.with(this.nextSequence++, vehicle);
+        this.index.add(vehicle);
+        if(this.columns != null){
+            this.columns.add(vehicle);
+        }
+        if(this.statistics != null){
+            this.statistics.added(vehicle);
+        }
         return true;
     }
 
+    /**
+     * Add a batch of vehicles in one pass. Vehicles already in the agency or repeated in the batch are rejected.
+     * The indexes are updated once for the whole batch.
+     * @param vehicles The vehicles to add.
+     * @return The number of added vehicles and the rejected ones.
+     */
+    public ImportReport addAll(Collection<? extends Vehicle> vehicles){
+        ImportReport report = new ImportReport();
+        List<Vehicle> batch = new ArrayList<>(vehicles.size());
+        int position = 0;
+        for(Vehicle vehicle : vehicles){
+            this.stage(vehicle, position++, batch, report);
+        }
+        this.indexAll(batch);
+        return report;
+    }
+
+    /**
+     * Create and add a batch of vehicles in one pass.
+     * Every description is checked against the same current year, and invalid or duplicated ones are reported
+     * instead of throwing. The indexes are updated once for the whole batch.
+     * @param specs The descriptions of the vehicles to add.
+     * @return The number of added vehicles and the rejected descriptions.
+     */
+    public ImportReport importFleet(List<VehicleSpec> specs){
+        int currentYear = TimeProvider.currentYearValue();
+        ImportReport report = new ImportReport();
+        List<Vehicle> batch = new ArrayList<>(specs.size());
+        int position = 0;
+        for(VehicleSpec spec : specs){
+            ImportReport.Reason reason = spec.validate(currentYear);
+            if(reason != null){
+                report.reject(position++, reason);
+                continue;
+            }
+            this.stage(spec.toVehicle(currentYear), position++, batch, report);
+        }
+        this.indexAll(batch);
+        return report;
+    }
+
+    private void stage(Vehicle vehicle, int position, List<Vehicle> batch, ImportReport report){
+        // One hashed lookup rejects both vehicles of the fleet and vehicles repeated in the batch.
+        if(this.inventory.putIfAbsent(vehicle, this.nextSequence) != null){
+            report.reject(position, ImportReport.Reason.DUPLICATE);
+            return;
+        }
+        this.nextSequence++;
+        batch.add(vehicle);
+        report.added();
+    }
+
+    private void indexAll(List<Vehicle> batch){
+        this.fleet = this.fleet.withAll(this.nextSequence - batch.size(), batch);
+        this.index.addAll(batch);
+        if(this.columns != null){
+            for(Vehicle vehicle : batch){
+                this.columns.add(vehicle);
+            }
+        }
+        if(this.statistics != null){
+            this.statistics.addedAll(batch);
+        }
+    }
+
     /**
      * Remove a vehicle from the rental agency.
      * @param vehicle The vehicle to remove.
-     * @throws agency.exceptions.UnknownVehicleException if the vehicle is not in the list.
+     * @throws UnknownVehicleException if the vehicle is not in the list.
+     */
+    public void remove(Vehicle vehicle) throws UnknownVehicleException {
+        if(!this.tryRemove(vehicle)){
+            throw new UnknownVehicleException(vehicle);
+        }
+    }
+
+    /**
+     * Remove a vehicle from the rental agency, without throwing if it is unknown.
+     * @param vehicle The vehicle to remove.
+     * @return true if the vehicle was removed, false if it is not in the list.
+     */
+    public boolean tryRemove(Vehicle vehicle){
+        Long sequence = this.inventory.get(vehicle);
+        if(sequence == null){
+            return false;
+        }
+        // The stored instance is the one indexed, the given vehicle may only be equal to it.
+        Vehicle stored = this.fleet.find(sequence);
+        this.fleet = this.fleet.without(sequence);
+        this.index.remove(stored);
+        this.inventory.remove(stored);
+        this.reservations.removeAll(stored);
+        if(this.columns != null){
+            this.columns.remove(stored);
+        }
+        if(this.statistics != null){
+            this.statistics.removed(stored);
+        }
+        return true;
+    }
+
+    /**
+     * Keep a column-oriented copy of the fleet, so that {@link Criterion criteria} are evaluated
+     * on primitive arrays by {@link #select(Predicate)} instead of on every vehicle object.
+     * It speeds up large scans at the cost of some memory per vehicle.
+     */
+    public void enableColumnarStore(){
+        if(this.columns != null){
+            return;
+        }
+        this.columns = new ColumnarFleet();
+        for(Vehicle vehicle : this.fleet){
+            this.columns.add(vehicle);
+        }
+    }
+
+    /**
+     * Get the aggregates of the daily rental prices of the fleet and of the rented vehicles.
+     * They are computed on the first call, then kept up to date by every change of the agency.
+     * @return The statistics of the agency.
      */
-    public void remove(Vehicle vehicle){
-        if(!this.vehicles.contains(vehicle)){
-            throw new agency.exceptions.UnknownVehicleException(vehicle);
+    public FleetStatistics getStatistics(){
+        if(this.statistics == null){
+            this.statistics = new FleetStatistics(this.inventory.keySet(), this.renters);
         }
-        this.vehicles.remove(vehicle);
+        return this.statistics;
+    }
+
+    /**
+     * Test if a vehicle belongs to the rental agency.
+     * @param vehicle The vehicle to test.
+     * @return true if the vehicle is in the agency, false otherwise.
+     */
+    public boolean contains(Vehicle vehicle){
+        return this.inventory.containsKey(vehicle);
     }
 
     /**
-     * Get the list of vehicles of the rental agency.
-     * @return The list of vehicles of the rental agency.
+     * Get the vehicles of the rental agency, in insertion order.
+     * The snapshot is not affected by later changes of the agency, and it is published safely:
+     * other threads can read and iterate it without locks while the agency is modified by a single writer.
+     * @return An immutable snapshot of the vehicles of the rental agency.
      */
-    public List<Vehicle> getVehicles() {
-        return this.vehicles;
+    public FleetSnapshot getVehicles() {
+        return this.fleet;
     }
 
     /**
     * Returns the list of vehicles of this agency that satisfy the specified criterion
     * The returned vehicles are then « filtered » by the criterion.
+    * {@link Criterion criteria} are optimized by the {@link CriterionPlanner} first,
+    * and brand and maximum price criteria are answered from indexes instead of scanning the whole fleet.
     *
     * @param criterion the criterion that the selected cars must satisfy
     * @return the list of cars of this agency that satisfy the given criterion
     */
     public List<Vehicle > select (Predicate<Vehicle> criterion) {
+        Predicate<Vehicle> plan = plan(criterion);
+        if(plan == ConstantCriterion.NEVER){
+            return new ArrayList<>();
+        }
+        if(plan == ConstantCriterion.ALWAYS){
+            return this.fleet.copy();
+        }
+
+        Predicate<Vehicle> indexed = this.indexedLeaf(plan);
+        if(indexed == plan){
+            return this.lookup(indexed);
+        }
+        if(this.columns != null && plan instanceof Criterion columnCriterion){
+            return this.columns.select(columnCriterion);
+        }
         List<Vehicle> selectedVehicles = new ArrayList<>();
+        this.scan(plan, indexed, selectedVehicles::add);
+        return selectedVehicles;
+    }
+
+    /**
+     * Returns the first vehicles of this agency that satisfy the specified criterion, in some order.
+     * Only the first {@code limit} matches are kept while the fleet is scanned, in a bounded heap,
+     * so the selection costs O(n log(limit)) instead of sorting every match.
+     *
+     * @param criterion the criterion that the selected vehicles must satisfy
+     * @param order the order of the selected vehicles, for instance a {@link VehicleOrder}, or null for the insertion order
+     * @param limit the maximum number of selected vehicles
+     * @return the list of at most {@code limit} vehicles satisfying the criterion, sorted by {@code order}
+     *         then in insertion order
+     * @throws IllegalArgumentException if the limit is negative.
+     */
+    public List<Vehicle> select(Predicate<Vehicle> criterion, Comparator<? super Vehicle> order, int limit) throws IllegalArgumentException {
+        if(limit < 0){
+            throw new IllegalArgumentException("Limit must not be negative. " + limit + " is invalid.");
+        }
+        if(limit == 0){
+            return new ArrayList<>();
+        }
+        if(order == null){
+            List<Vehicle> selectedVehicles = this.select(criterion);
+            return selectedVehicles.size() <= limit ? selectedVehicles : new ArrayList<>(selectedVehicles.subList(0, limit));
+        }
+        TopVehicles top = new TopVehicles(order, limit);
+        this.forEachMatch(plan(criterion), top);
+        return top.toList();
+    }
+
+    /**
+     * Returns a page of the vehicles of this agency that satisfy the specified criterion, in some order.
+     * Pages are selected like {@link #select(Predicate, Comparator, int)}, except for the cheapest vehicles
+     * of a criterion which is not answered by another index: they are read from the price index,
+     * which stops as soon as the page is full.
+     *
+     * @param criterion the criterion that the selected vehicles must satisfy
+     * @param order the order of the selected vehicles
+     * @param offset the number of first matching vehicles to skip
+     * @param limit the maximum number of vehicles of the page
+     * @return the page, with a cursor to the next one if more vehicles satisfy the criterion
+     * @throws IllegalArgumentException if the offset is negative or if the limit is not positive.
+     */
+    public Page selectPage(Predicate<Vehicle> criterion, VehicleOrder order, int offset, int limit) throws IllegalArgumentException {
+        if(offset < 0 || limit < 1){
+            throw new IllegalArgumentException("Offset must not be negative and limit must be positive. " + offset + " and " + limit + " are invalid.");
+        }
+        return this.page(criterion, order, null, offset, limit);
+    }
+
+    /**
+     * Returns the next page of an ordered selection, after a cursor returned by a previous page.
+     * Vehicles added or removed in the meantime are taken into account without repeating or skipping any vehicle.
+     *
+     * @param criterion the criterion that the selected vehicles must satisfy, the one of the previous pages
+     * @param after the cursor of the previous page
+     * @param limit the maximum number of vehicles of the page
+     * @return the page, with a cursor to the next one if more vehicles satisfy the criterion
+     * @throws IllegalArgumentException if the limit is not positive.
+     */
+    public Page selectPage(Predicate<Vehicle> criterion, Page.Cursor after, int limit) throws IllegalArgumentException {
+        if(limit < 1){
+            throw new IllegalArgumentException("Limit must be positive. " + limit + " is invalid.");
+        }
+        return this.page(criterion, after.order, after, 0, limit);
+    }
+
+    private Page page(Predicate<Vehicle> criterion, VehicleOrder order, Page.Cursor after, int offset, int limit){
+        // One more vehicle than the page is selected, to know whether there is a next page.
+        int count = (int) Math.min((long) offset + limit + 1, Integer.MAX_VALUE);
+        Predicate<Vehicle> plan = plan(criterion);
+        List<Vehicle> selected;
+        if(order == VehicleOrder.CHEAPEST && plan != ConstantCriterion.NEVER && this.indexedLeaf(plan) == null){
+            selected = this.cheapest(plan, after, count);
+        } else {
+            TopVehicles top = new TopVehicles(order, count);
+            this.forEachMatch(plan, after == null ? top : vehicle -> {
+                if(this.isAfter(vehicle, after)){
+                    top.accept(vehicle);
+                }
+            });
+            selected = top.toList();
+        }
+
+        int end = Math.min(selected.size(), offset + limit);
+        List<Vehicle> vehicles = offset >= end ? new ArrayList<>() : new ArrayList<>(selected.subList(offset, end));
+        if(selected.size() <= offset + limit || vehicles.isEmpty()){
+            return new Page(vehicles, null);
+        }
+        Vehicle last = vehicles.get(vehicles.size() - 1);
+        return new Page(vehicles, new Page.Cursor(order, last, this.inventory.get(last)));
+    }
 
-        for(Vehicle vehicle : this.vehicles){
-            if(criterion.test(vehicle)){
-                selectedVehicles.add(vehicle);
+    private List<Vehicle> cheapest(Predicate<Vehicle> plan, Page.Cursor after, int count){
+        List<Vehicle> selectedVehicles = new ArrayList<>();
+        double minPrice = after == null ? Double.NEGATIVE_INFINITY : after.last.dailyRentalPrice();
+        // Vehicles are read by increasing price, and in insertion order for the same price, which is already the page order.
+        for(Set<Vehicle> bucket : this.index.fromPrice(minPrice)){
+            for(Vehicle vehicle : bucket){
+                if((after == null || this.isAfter(vehicle, after)) && plan.test(vehicle)){
+                    selectedVehicles.add(vehicle);
+                    if(selectedVehicles.size() == count){
+                        return selectedVehicles;
+                    }
+                }
             }
         }
         return selectedVehicles;
     }
 
+    private boolean isAfter(Vehicle vehicle, Page.Cursor cursor){
+        int comparison = cursor.order.compare(vehicle, cursor.last);
+        return comparison > 0 || comparison == 0 && this.inventory.get(vehicle) > cursor.sequence;
+    }
+
+    /**
+     * Give every vehicle satisfying an optimized criterion to an action, in insertion order.
+     * @param plan The optimized criterion.
+     * @param action The action to run on every matching vehicle.
+     */
+    private void forEachMatch(Predicate<Vehicle> plan, Consumer<Vehicle> action){
+        if(plan == ConstantCriterion.NEVER){
+            return;
+        }
+        if(plan == ConstantCriterion.ALWAYS){
+            this.fleet.forEach(action);
+            return;
+        }
+        Predicate<Vehicle> indexed = this.indexedLeaf(plan);
+        if(indexed == plan){
+            this.lookup(indexed).forEach(action);
+            return;
+        }
+        if(this.columns != null && plan instanceof Criterion columnCriterion){
+            this.columns.select(columnCriterion).forEach(action);
+            return;
+        }
+        this.scan(plan, indexed, action);
+    }
+
+    private void scan(Predicate<Vehicle> plan, Predicate<Vehicle> indexed, Consumer<Vehicle> action){
+        Iterable<Vehicle> candidates = indexed == null ? this.fleet : this.lookup(indexed);
+        // forEach walks the fleet tree recursively, which is cheaper than stepping an iterator through it.
+        candidates.forEach(vehicle -> {
+            if(plan.test(vehicle)){
+                action.accept(vehicle);
+            }
+        });
+    }
+
+    /**
+     * Returns a lazy stream of the vehicles of this agency that satisfy the specified criterion, in insertion order.
+     * The stream runs in parallel when at least {@value #PARALLEL_THRESHOLD} vehicles have to be tested
+     * and the criterion only combines the stateless criteria of {@code agency.criteria}.
+     * The stream reads the vehicles of the agency when this method is called, from the immutable fleet snapshot
+     * or brand bucket, so the agency can be modified while the stream is consumed. Neither is copied:
+     * the stream walks the snapshot lazily and stops as soon as enough vehicles are found.
+     * Only selective price ranges are collected and sorted before streaming.
+     *
+     * @param criterion the criterion that the selected vehicles must satisfy
+     * @return a stream of the vehicles of this agency that satisfy the given criterion
+     */
+    public Stream<Vehicle> selectStream(Predicate<Vehicle> criterion) {
+        Predicate<Vehicle> plan = plan(criterion);
+        if(plan == ConstantCriterion.NEVER){
+            return Stream.empty();
+        }
+
+        Predicate<Vehicle> indexed = this.indexedLeaf(plan);
+        Collection<Vehicle> candidates;
+        if(indexed == null){
+            candidates = this.fleet;
+        } else if(indexed instanceof BrandCriterion brandCriterion){
+            candidates = this.index.brand(brandCriterion.getBrand());
+        } else {
+            candidates = this.lookup(indexed);
+        }
+
+        boolean parallel = candidates.size() >= PARALLEL_THRESHOLD && CriterionPlanner.isBuiltIn(plan);
+        Stream<Vehicle> stream = StreamSupport.stream(candidates.spliterator(), parallel);
+        return indexed == plan || plan == ConstantCriterion.ALWAYS ? stream : stream.filter(plan);
+    }
+
+    private static Predicate<Vehicle> plan(Predicate<Vehicle> criterion){
+        return criterion instanceof Criterion c ? CriterionPlanner.optimize(c) : criterion;
+    }
+
+    /**
+     * Find the part of a criterion that is worth answering with an index.
+     * A price range is only looked up when it is selective, since its matches must be sorted back in insertion order.
+     * @param criterion The criterion to inspect.
+     * @return The criterion itself, one of the operands of a conjunction, or null if the fleet should be scanned.
+     */
+    private Predicate<Vehicle> indexedLeaf(Predicate<Vehicle> criterion){
+        // Subclasses may redefine test(), so only the criteria themselves are routed to the indexes.
+        if(criterion.getClass() == BrandCriterion.class){
+            return criterion;
+        }
+        if(criterion.getClass() == MaxPriceCriterion.class){
+            return this.isSelective((MaxPriceCriterion) criterion) ? criterion : null;
+        }
+        if(criterion instanceof AndCriterion and){
+            Predicate<Vehicle> indexed = null;
+            for(Criterion operand : and.getOperands()){
+                if(operand.getClass() == BrandCriterion.class){
+                    return operand;
+                }
+                if(operand.getClass() == MaxPriceCriterion.class && this.isSelective((MaxPriceCriterion) operand)){
+                    indexed = operand;
+                }
+            }
+            return indexed;
+        }
+        return null;
+    }
+
+    private boolean isSelective(MaxPriceCriterion criterion){
+        return this.index.countWithMaxPrice(criterion.getMaxPrice()) * 8L <= this.fleet.size();
+    }
+
+    private List<Vehicle> lookup(Predicate<Vehicle> indexed){
+        if(indexed instanceof BrandCriterion brandCriterion){
+            return this.index.withBrand(brandCriterion.getBrand());
+        }
+        return this.index.withMaxPrice(((MaxPriceCriterion) indexed).getMaxPrice());
+    }
+
     /**
     * Prints the vehicles (one by line) of this agency that satisfy the specified criterion
     * @param criterion the criterion that the selected cars must satisfy
     */
     public void printSelectedVehicles (Predicate<Vehicle> criterion) {
-        for(Vehicle vehicle : this.select(criterion)){
-            System.out.println(vehicle);
+        Writer out = new BufferedWriter(new OutputStreamWriter(System.out, Charset.defaultCharset()), LISTING_BUFFER_SIZE);
+        try {
+            this.writeSelectedVehicles(criterion, out);
+            out.flush();
+        } catch(IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Write the vehicles of this agency that satisfy a criterion, one per line.
+     * Vehicles are {@link Vehicle#appendTo(StringBuilder) appended} to a reused builder and written in chunks,
+     * so no string is created per vehicle.
+     * @param criterion The criterion that the written vehicles must satisfy.
+     * @param out The writer, which is neither flushed nor closed.
+     * @throws IOException if the vehicles cannot be written.
+     */
+    public void writeSelectedVehicles(Predicate<Vehicle> criterion, Writer out) throws IOException {
+        StringBuilder lines = new StringBuilder(LISTING_BUFFER_SIZE + 256);
+        char[] chunk = new char[LISTING_BUFFER_SIZE + 256];
+        String separator = System.lineSeparator();
+        Iterator<Vehicle> selected = this.selectStream(criterion).iterator();
+        while(selected.hasNext()){
+            selected.next().appendTo(lines).append(separator);
+            if(lines.length() >= LISTING_BUFFER_SIZE){
+                chunk = writeChunk(lines, chunk, out);
+            }
         }
+        writeChunk(lines, chunk, out);
+    }
+
+    /**
+     * Get the maximum number of vehicles a client can rent at the same time.
+     * @return The rental limit, 1 by default.
+     */
+    public int getRentalLimit(){
+        return this.policy.getRentalLimit();
+    }
+
+    /**
+     * Set the maximum number of vehicles a client can rent at the same time.
+     * Clients already renting more vehicles keep them, but cannot rent another one.
+     * @param rentalLimit The rental limit.
+     * @throws IllegalArgumentException if the limit is less than 1.
+     */
+    public void setRentalLimit(int rentalLimit) throws IllegalArgumentException {
+        this.policy.setRentalLimit(rentalLimit);
     }
 
     /**
@@ -95,13 +537,32 @@ public class RentalAgency {
         return this.rentedVehicles.containsKey(client);
     }
 
+    /**
+     * Get the vehicles rented by a client.
+     * @param client The client.
+     * @return A read-only view of the vehicles rented by the client, in rental order.
+     */
+    public Set<Vehicle> vehiclesRentedBy(Client client){
+        Set<Vehicle> rented = this.rentedVehicles.get(client);
+        return rented == null ? Collections.emptySet() : Collections.unmodifiableSet(rented);
+    }
+
     /**
      * Test if a vehicle is rented.
      * @param vehicle The vehicle to test.
      * @return true if the vehicle is rented, false otherwise.
      */
     public boolean vehicleIsRented(Vehicle vehicle){
-        return this.rentedVehicles.containsValue(vehicle);
+        return this.renters.containsKey(vehicle);
+    }
+
+    /**
+     * Get the client renting a vehicle.
+     * @param vehicle The rented vehicle.
+     * @return The client renting the vehicle, or null if the vehicle is not rented.
+     */
+    public Client renterOf(Vehicle vehicle){
+        return this.renters.get(vehicle);
     }
 
     /**
@@ -110,36 +571,284 @@ public class RentalAgency {
      * @param vehicle The vehicle to rent.
      * @return The daily rental price of the vehicle.
      * @throws UnknownVehicleException if the vehicle is not in the list.
-     * @throws IllegalStateException if the client already has a rented vehicle or if the vehicle is already rented.
+     * @throws RentalConflictException if the client already rents as many vehicles as the {@link #getRentalLimit() limit}
+     * or if the vehicle is already rented.
      */
-    public double rentVehicle(Client client, Vehicle vehicle) throws UnknownVehicleException, IllegalStateException {
-        if(!this.vehicles.contains(vehicle)){
-            throw new UnknownVehicleException(vehicle);
+    public double rentVehicle(Client client, Vehicle vehicle) throws UnknownVehicleException, RentalConflictException {
+        RentalOutcome outcome = this.tryRentVehicle(client, vehicle);
+        if(outcome != RentalOutcome.RENTED){
+            RentalPolicy.throwIfRefused(outcome, client, vehicle, this.vehiclesRentedBy(client).size());
         }
-        if(this.aVehicleIsRentedBy(client)){
-            throw new IllegalStateException("Client " + client + " already has a rented vehicle.");
+        return vehicle.dailyRentalPrice();
+    }
+
+    /**
+     * Rent a vehicle to a client, without throwing if it cannot be rented.
+     * A rejected rental costs about as much as an accepted one, since no exception or message is built.
+     * @param client The client who wants to rent a vehicle.
+     * @param vehicle The vehicle to rent.
+     * @return {@link RentalOutcome#RENTED} if the vehicle is rented, or the reason why it cannot be rented.
+     */
+    public RentalOutcome tryRentVehicle(Client client, Vehicle vehicle){
+        RentalOutcome outcome = this.checkRental(client, vehicle);
+        if(outcome == RentalOutcome.RENTED){
+            this.recordRental(client, vehicle);
         }
-        if(this.vehicleIsRented(vehicle)){
-            throw new IllegalStateException("Vehicle " + vehicle + " is already rented.");
+        return outcome;
+    }
+
+    /**
+     * Return every vehicle rented by a client.
+     * @param client The client who wants to return the vehicles.
+     */
+    public void returnVehicle(Client client){
+        Set<Vehicle> rented = this.rentedVehicles.remove(client);
+        if(rented != null){
+            for(Vehicle vehicle : rented){
+                this.renters.remove(vehicle);
+                if(this.statistics != null){
+                    this.statistics.returned(vehicle);
+                }
+            }
         }
+    }
 
-        this.rentedVehicles.put(client, vehicle);
-        return vehicle.dailyRentalPrice();
+    /**
+     * Return one of the vehicles rented by a client.
+     * @param client The client who wants to return the vehicle.
+     * @param vehicle The vehicle to return.
+     * @return true if the vehicle was rented by the client and is returned, false otherwise.
+     */
+    public boolean returnVehicle(Client client, Vehicle vehicle){
+        if(!this.renters.remove(vehicle, client)){
+            return false;
+        }
+        Set<Vehicle> rented = this.rentedVehicles.get(client);
+        rented.remove(vehicle);
+        if(rented.isEmpty()){
+            this.rentedVehicles.remove(client);
+        }
+        if(this.statistics != null){
+            this.statistics.returned(vehicle);
+        }
+        return true;
     }
 
     /**
-     * Return a vehicle from a client.
-     * @param client The client who wants to return a vehicle.
+     * Rent a batch of vehicles, all together or not at all.
+     * Requests are recorded as they are checked, which costs no more than renting them one by one.
+     * If one fails, the recorded ones are undone and the whole batch is checked in one pass over the indexes,
+     * so that every failed request is reported.
+     * @param requests The vehicles to rent and their clients.
+     * @return The total daily price of the rented vehicles, or the reason why each failed request cannot be applied.
      */
-    public void returnVehicle(Client client){
-        this.rentedVehicles.remove(client);
+    public BatchRentalResult rentAll(List<RentalRequest> requests){
+        BatchRentalResult result = new BatchRentalResult();
+        double total = 0;
+        int recorded = 0;
+        Client client = null;
+        Set<Vehicle> rented = null;
+        for(RentalRequest request : requests){
+            Vehicle vehicle = request.vehicle();
+            // Consecutive requests of a group booking share their client, whose rentals are only looked up once.
+            if(request.client() != client){
+                client = request.client();
+                rented = this.rentedVehicles.get(client);
+            }
+            if(!this.inventory.containsKey(vehicle) || (rented != null && !this.policy.allows(rented.size()))
+                    || this.renters.putIfAbsent(vehicle, client) != null){
+                break;
+            }
+            if(rented == null){
+                rented = new LinkedHashSet<>();
+                this.rentedVehicles.put(client, rented);
+            }
+            rented.add(vehicle);
+            if(this.statistics != null){
+                this.statistics.rented(vehicle);
+            }
+            total += vehicle.dailyRentalPrice();
+            recorded++;
+        }
+        if(recorded == requests.size()){
+            result.setTotalDailyPrice(total);
+            return result;
+        }
+
+        for(int i = 0; i < recorded; i++){
+            this.returnVehicle(requests.get(i).client(), requests.get(i).vehicle());
+        }
+        Set<Vehicle> batchVehicles = new HashSet<>();
+        Map<Client, Integer> batchCounts = new HashMap<>();
+        for(int i = 0; i < requests.size(); i++){
+            RentalRequest request = requests.get(i);
+            RentalOutcome outcome = this.checkRental(request.client(), request.vehicle());
+            if(outcome != RentalOutcome.RENTED){
+                result.fail(i, outcome);
+            } else if(!batchVehicles.add(request.vehicle())){
+                result.fail(i, RentalOutcome.DUPLICATE_IN_BATCH);
+            } else if(!this.policy.allows(this.vehiclesRentedBy(request.client()).size() + batchCounts.merge(request.client(), 1, Integer::sum) - 1)){
+                result.fail(i, RentalOutcome.RENTAL_LIMIT_REACHED);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Return a batch of vehicles, all together or not at all.
+     * @param requests The vehicles to return and the clients renting them.
+     * @return The total daily price of the returned vehicles, or the reason why each failed request cannot be applied.
+     */
+    public BatchRentalResult returnAll(List<RentalRequest> requests){
+        BatchRentalResult result = new BatchRentalResult();
+        Set<Vehicle> batchVehicles = new HashSet<>((int) (requests.size() / .75f) + 1);
+        double total = 0;
+        for(int i = 0; i < requests.size(); i++){
+            RentalRequest request = requests.get(i);
+            Vehicle vehicle = request.vehicle();
+            if(!batchVehicles.add(vehicle)){
+                result.fail(i, RentalOutcome.DUPLICATE_IN_BATCH);
+            } else if(!request.client().equals(this.renters.get(vehicle))){
+                result.fail(i, RentalOutcome.NOT_RENTED_BY_CLIENT);
+            } else {
+                total += vehicle.dailyRentalPrice();
+            }
+        }
+        if(!result.isApplied()){
+            return result;
+        }
+
+        for(RentalRequest request : requests){
+            this.returnVehicle(request.client(), request.vehicle());
+        }
+        result.setTotalDailyPrice(total);
+        return result;
     }
 
     /**
      * Get the list of rented vehicles.
-     * @return The list of rented vehicles.
+     * @return A read-only view of the rented vehicles.
      */
     public Collection<Vehicle> allRentedVehicles(){
-        return this.rentedVehicles.values();
+        return Collections.unmodifiableCollection(this.renters.keySet());
+    }
+
+    /**
+     * Get the current rentals.
+     * @return A read-only view of the client renting each rented vehicle.
+     */
+    public Map<Vehicle, Client> getRentals(){
+        return Collections.unmodifiableMap(this.renters);
+    }
+
+    /**
+     * Book a vehicle for a client over a range of days.
+     * The booking is only recorded if no other booking of the vehicle overlaps it.
+     * @param client The client who wants to book the vehicle.
+     * @param vehicle The vehicle to book.
+     * @param start The first day of the booking.
+     * @param end The day after the last day of the booking.
+     * @return The booking, with its price.
+     * @throws UnknownVehicleException if the vehicle is not in the list.
+     * @throws IllegalArgumentException if the end is not after the start.
+     * @throws IllegalStateException if the vehicle is already booked on one of the days.
+     */
+    public Reservation reserve(Client client, Vehicle vehicle, LocalDate start, LocalDate end) throws UnknownVehicleException, IllegalArgumentException, IllegalStateException {
+        if(!this.contains(vehicle)){
+            throw new UnknownVehicleException(vehicle);
+        }
+        checkRange(start, end);
+        Reservation conflict = this.reservations.conflict(vehicle, start, end);
+        if(conflict != null){
+            throw new IllegalStateException("Vehicle " + vehicle + " is already booked from " + conflict.start() + " to " + conflict.end() + ".");
+        }
+
+        Reservation reservation = new Reservation(client, vehicle, start, end);
+        this.reservations.add(reservation);
+        return reservation;
+    }
+
+    /**
+     * Cancel a booking.
+     * @param reservation The booking to cancel.
+     * @return true if the booking was cancelled, false if it was not recorded.
+     */
+    public boolean cancel(Reservation reservation){
+        return this.reservations.remove(reservation);
+    }
+
+    /**
+     * Test if a vehicle is free over a range of days.
+     * Bookings are independent of the vehicles currently rented with {@link #rentVehicle(Client, Vehicle)}.
+     * @param vehicle The vehicle to test.
+     * @param start The first day of the range.
+     * @param end The day after the last day of the range.
+     * @return true if no booking of the vehicle overlaps the range, false otherwise.
+     * @throws IllegalArgumentException if the end is not after the start.
+     */
+    public boolean isFree(Vehicle vehicle, LocalDate start, LocalDate end) throws IllegalArgumentException {
+        checkRange(start, end);
+        return this.reservations.isFree(vehicle, start, end);
+    }
+
+    /**
+     * Get the vehicles satisfying a criterion which are free over a range of days.
+     * The criterion is {@link #select(Predicate) selected} first, so brand and selective price criteria
+     * are answered from the indexes, and only the k selected vehicles are checked in the reservation book.
+     * The cost is the one of the selection plus O(k log r), r being the number of reservations of a vehicle,
+     * instead of O(n log r) for the whole fleet. Nothing is checked while no vehicle is reserved.
+     * @param criterion The criterion that the vehicles must satisfy.
+     * @param start The first day of the range.
+     * @param end The day after the last day of the range.
+     * @return The free vehicles, in insertion order.
+     * @throws IllegalArgumentException if the end is not after the start.
+     */
+    public List<Vehicle> freeVehicles(Predicate<Vehicle> criterion, LocalDate start, LocalDate end) throws IllegalArgumentException {
+        checkRange(start, end);
+        List<Vehicle> candidates = this.select(criterion);
+        if(!this.reservations.isEmpty()){
+            candidates.removeIf(vehicle -> !this.reservations.isFree(vehicle, start, end));
+        }
+        return candidates;
+    }
+
+    /**
+     * Get the bookings of a vehicle.
+     * @param vehicle The booked vehicle.
+     * @return The bookings of the vehicle, sorted by start day.
+     */
+    public List<Reservation> reservationsOf(Vehicle vehicle){
+        return this.reservations.of(vehicle);
+    }
+
+    private static char[] writeChunk(StringBuilder lines, char[] chunk, Writer out) throws IOException {
+        int length = lines.length();
+        if(length > chunk.length){
+            chunk = new char[length];
+        }
+        lines.getChars(0, length, chunk, 0);
+        out.write(chunk, 0, length);
+        lines.setLength(0);
+        return chunk;
+    }
+
+    private RentalOutcome checkRental(Client client, Vehicle vehicle){
+        Set<Vehicle> rented = this.rentedVehicles.get(client);
+        return this.policy.check(this.inventory.containsKey(vehicle), rented == null ? 0 : rented.size(),
+                this.renters.containsKey(vehicle));
+    }
+
+    private void recordRental(Client client, Vehicle vehicle){
+        this.rentedVehicles.computeIfAbsent(client, key -> new LinkedHashSet<>(2)).add(vehicle);
+        this.renters.put(vehicle, client);
+        if(this.statistics != null){
+            this.statistics.rented(vehicle);
+        }
+    }
+
+    private static void checkRange(LocalDate start, LocalDate end) throws IllegalArgumentException {
+        if(!start.isBefore(end)){
+            throw new IllegalArgumentException("A booking must end after it starts. " + start + " to " + end + " is invalid.");
+        }
     }
 }
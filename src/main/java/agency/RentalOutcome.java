@@ -0,0 +1,14 @@
+package agency;
+
+/**
+ * The outcome of a rental or a return.
+ */
+public enum RentalOutcome {
+    RENTED,
+    RETURNED,
+    UNKNOWN_VEHICLE,
+    VEHICLE_ALREADY_RENTED,
+    RENTAL_LIMIT_REACHED,
+    NOT_RENTED_BY_CLIENT,
+    DUPLICATE_IN_BATCH
+}
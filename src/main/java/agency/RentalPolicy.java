@@ -0,0 +1,88 @@
+package agency;
+
+import agency.exceptions.RentalConflictException;
+import agency.exceptions.UnknownVehicleException;
+
+/**
+ * The rules deciding whether a client can rent a vehicle, shared by the rental agencies,
+ * so that they all refuse the same rentals with the same outcomes and exceptions.
+ * A vehicle is rented by a single client, and a client rents at most {@link #getRentalLimit()} vehicles at the same time.
+ */
+public final class RentalPolicy {
+    private volatile int rentalLimit;
+
+    /**
+     * Create a policy allowing a single rental per client.
+     */
+    public RentalPolicy() {
+        this.rentalLimit = 1;
+    }
+
+    /**
+     * Get the maximum number of vehicles a client can rent at the same time.
+     * @return The rental limit, 1 by default.
+     */
+    public int getRentalLimit() {
+        return this.rentalLimit;
+    }
+
+    /**
+     * Set the maximum number of vehicles a client can rent at the same time.
+     * @param rentalLimit The rental limit.
+     * @throws IllegalArgumentException if the limit is less than 1.
+     */
+    public void setRentalLimit(int rentalLimit) throws IllegalArgumentException {
+        if(rentalLimit < 1) {
+            throw new IllegalArgumentException("Rental limit must be at least 1. " + rentalLimit + " is invalid.");
+        }
+        this.rentalLimit = rentalLimit;
+    }
+
+    /**
+     * Test if a client renting some vehicles can rent one more.
+     * @param rentedCount The number of vehicles rented by the client.
+     * @return true if the client is below the rental limit, false otherwise.
+     */
+    public boolean allows(int rentedCount) {
+        return rentedCount < this.rentalLimit;
+    }
+
+    /**
+     * Decide if a vehicle can be rented. The reasons are checked in the same order by every agency.
+     * @param knownVehicle true if the vehicle belongs to the agency.
+     * @param rentedCount The number of vehicles rented by the client.
+     * @param vehicleRented true if the vehicle is already rented.
+     * @return {@link RentalOutcome#RENTED} if the vehicle can be rented, or the reason why it cannot be rented.
+     */
+    public RentalOutcome check(boolean knownVehicle, int rentedCount, boolean vehicleRented) {
+        if(!knownVehicle) {
+            return RentalOutcome.UNKNOWN_VEHICLE;
+        }
+        if(!this.allows(rentedCount)) {
+            return RentalOutcome.RENTAL_LIMIT_REACHED;
+        }
+        if(vehicleRented) {
+            return RentalOutcome.VEHICLE_ALREADY_RENTED;
+        }
+        return RentalOutcome.RENTED;
+    }
+
+    /**
+     * Throw the exception matching a refused rental.
+     * @param outcome The outcome of the rental.
+     * @param client The client who wants to rent the vehicle.
+     * @param vehicle The vehicle to rent.
+     * @param rentedCount The number of vehicles rented by the client.
+     * @throws UnknownVehicleException if the vehicle is not in the agency.
+     * @throws RentalConflictException if the client reached the rental limit or if the vehicle is already rented.
+     */
+    public static void throwIfRefused(RentalOutcome outcome, Client client, Vehicle vehicle, int rentedCount)
+            throws UnknownVehicleException, RentalConflictException {
+        switch(outcome) {
+            case UNKNOWN_VEHICLE -> throw new UnknownVehicleException(vehicle);
+            case RENTAL_LIMIT_REACHED, VEHICLE_ALREADY_RENTED -> throw new RentalConflictException(outcome, client, vehicle, rentedCount);
+            default -> {
+            }
+        }
+    }
+}
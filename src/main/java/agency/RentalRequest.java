@@ -0,0 +1,9 @@
+package agency;
+
+/**
+ * A vehicle to rent to, or return from, a client as part of a batch.
+ * @param client The client.
+ * @param vehicle The vehicle.
+ */
+public record RentalRequest(Client client, Vehicle vehicle) {
+}
@@ -0,0 +1,40 @@
+package agency;
+
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+
+/**
+ * A booking of a vehicle by a client for a range of days.
+ * @param client The client who booked the vehicle.
+ * @param vehicle The booked vehicle.
+ * @param start The first day of the booking.
+ * @param end The day after the last day of the booking.
+ */
+public record Reservation(Client client, Vehicle vehicle, LocalDate start, LocalDate end) {
+
+    /**
+     * Get the number of booked days.
+     * @return The number of days between the start and the end of the booking.
+     */
+    public long days() {
+        return ChronoUnit.DAYS.between(this.start, this.end);
+    }
+
+    /**
+     * Get the price of the booking.
+     * @return The daily rental price of the vehicle multiplied by the number of booked days.
+     */
+    public double price() {
+        return this.vehicle.dailyRentalPrice() * this.days();
+    }
+
+    /**
+     * Test if the booking overlaps a range of days.
+     * @param start The first day of the range.
+     * @param end The day after the last day of the range.
+     * @return true if at least one day is in both the booking and the range, false otherwise.
+     */
+    public boolean overlaps(LocalDate start, LocalDate end) {
+        return this.start.isBefore(end) && start.isBefore(this.end);
+    }
+}
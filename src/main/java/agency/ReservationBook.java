@@ -0,0 +1,62 @@
+package agency;
+
+import java.time.LocalDate;
+import java.util.*;
+
+/**
+ * The reservations of each vehicle, sorted by start day.
+ * Reservations of a vehicle never overlap, so the only one which can overlap a range is the last one
+ * starting before the end of the range, and every query is a single lookup in a sorted map.
+ */
+class ReservationBook {
+    private final Map<Vehicle, TreeMap<LocalDate, Reservation>> byVehicle;
+
+    ReservationBook() {
+        this.byVehicle = new HashMap<>();
+    }
+
+    boolean isEmpty() {
+        return this.byVehicle.isEmpty();
+    }
+
+    boolean isFree(Vehicle vehicle, LocalDate start, LocalDate end) {
+        return this.conflict(vehicle, start, end) == null;
+    }
+
+    Reservation conflict(Vehicle vehicle, LocalDate start, LocalDate end) {
+        TreeMap<LocalDate, Reservation> reservations = this.byVehicle.get(vehicle);
+        if(reservations == null) {
+            return null;
+        }
+        Map.Entry<LocalDate, Reservation> previous = reservations.lowerEntry(end);
+        if(previous == null || !previous.getValue().overlaps(start, end)) {
+            return null;
+        }
+        return previous.getValue();
+    }
+
+    void add(Reservation reservation) {
+        this.byVehicle.computeIfAbsent(reservation.vehicle(), vehicle -> new TreeMap<>())
+                .put(reservation.start(), reservation);
+    }
+
+    boolean remove(Reservation reservation) {
+        TreeMap<LocalDate, Reservation> reservations = this.byVehicle.get(reservation.vehicle());
+        if(reservations == null || !reservations.remove(reservation.start(), reservation)) {
+            return false;
+        }
+        if(reservations.isEmpty()) {
+            this.byVehicle.remove(reservation.vehicle());
+        }
+        return true;
+    }
+
+    void removeAll(Vehicle vehicle) {
+        this.byVehicle.remove(vehicle);
+    }
+
+    List<Reservation> of(Vehicle vehicle) {
+        TreeMap<LocalDate, Reservation> reservations = this.byVehicle.get(vehicle);
+        return reservations == null ? List.of() : List.copyOf(reservations.values());
+    }
+}
@@ -0,0 +1,61 @@
+package agency;
+
+import java.util.*;
+import java.util.function.Consumer;
+
+/**
+ * The first vehicles of a selection in some order, kept in a heap bounded by the number of wanted vehicles,
+ * so that selecting the first k of n vehicles costs O(n log k) instead of sorting them all.
+ * Vehicles must be offered in insertion order: vehicles with the same key then keep it.
+ */
+class TopVehicles implements Consumer<Vehicle> {
+    private final Comparator<? super Vehicle> order;
+    private final Comparator<Ranked> ranking;
+    private final int capacity;
+    private final PriorityQueue<Ranked> heap;
+    private long offered;
+
+    private record Ranked(Vehicle vehicle, long rank) {
+    }
+
+    /**
+     * Create an empty selection.
+     * @param order The order of the vehicles.
+     * @param capacity The number of vehicles to keep, at least 1.
+     */
+    TopVehicles(Comparator<? super Vehicle> order, int capacity) {
+        this.order = order;
+        this.ranking = Comparator.<Ranked, Vehicle>comparing(Ranked::vehicle, order).thenComparingLong(Ranked::rank);
+        this.capacity = capacity;
+        // The root of the heap is the last vehicle kept, the first one to drop.
+        this.heap = new PriorityQueue<>(Math.min(capacity, 1024), this.ranking.reversed());
+    }
+
+    @Override
+    public void accept(Vehicle vehicle) {
+        long rank = this.offered++;
+        if(this.heap.size() < this.capacity) {
+            this.heap.add(new Ranked(vehicle, rank));
+            return;
+        }
+        // Offered after every kept vehicle, a vehicle with the same key as the last one comes after it.
+        if(this.order.compare(vehicle, this.heap.peek().vehicle()) < 0) {
+            this.heap.poll();
+            this.heap.add(new Ranked(vehicle, rank));
+        }
+    }
+
+    /**
+     * Get the kept vehicles.
+     * @return A new list of the kept vehicles, in order.
+     */
+    List<Vehicle> toList() {
+        Ranked[] ranked = this.heap.toArray(new Ranked[0]);
+        Arrays.sort(ranked, this.ranking);
+        List<Vehicle> vehicles = new ArrayList<>(ranked.length);
+        for(Ranked vehicle : ranked) {
+            vehicles.add(vehicle.vehicle());
+        }
+        return vehicles;
+    }
+}
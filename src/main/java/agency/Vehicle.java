@@ -26,6 +26,15 @@ public interface Vehicle {
      */
     double dailyRentalPrice();
 
+    /**
+     * Append the string representation of the vehicle to a builder, without creating an intermediate string.
+     * @param builder The builder to append to.
+     * @return The builder.
+     */
+    default StringBuilder appendTo(StringBuilder builder) {
+        return builder.append(this.toString());
+    }
+
     /**
      * Get a string representation of the vehicle.
      * @return [type of vehicle] [brand] [model] [production year] ([vehicle specific details]) : [rental price]€
@@ -0,0 +1,39 @@
+package agency;
+
+import java.util.Comparator;
+
+/**
+ * The orders of ordered selections. Vehicles with the same key are listed in insertion order.
+ */
+public enum VehicleOrder implements Comparator<Vehicle> {
+    CHEAPEST {
+        @Override
+        public int compare(Vehicle first, Vehicle second) {
+            return Double.compare(first.dailyRentalPrice(), second.dailyRentalPrice());
+        }
+    },
+    MOST_EXPENSIVE {
+        @Override
+        public int compare(Vehicle first, Vehicle second) {
+            return Double.compare(second.dailyRentalPrice(), first.dailyRentalPrice());
+        }
+    },
+    NEWEST {
+        @Override
+        public int compare(Vehicle first, Vehicle second) {
+            return Integer.compare(second.getProductionYear(), first.getProductionYear());
+        }
+    },
+    OLDEST {
+        @Override
+        public int compare(Vehicle first, Vehicle second) {
+            return Integer.compare(first.getProductionYear(), second.getProductionYear());
+        }
+    },
+    BRAND {
+        @Override
+        public int compare(Vehicle first, Vehicle second) {
+            return first.getBrand().compareTo(second.getBrand());
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package agency;
+
+/**
+ * The raw description of a vehicle, validated without throwing before the vehicle is created.
+ * @param type The type of the vehicle.
+ * @param brand The brand of the vehicle.
+ * @param model The model of the vehicle.
+ * @param productionYear The production year of the vehicle.
+ * @param capacity The number of seats of a car, or the cylinder capacity of a motorbike.
+ */
+public record VehicleSpec(VehicleType type, String brand, String model, int productionYear, int capacity) {
+
+    /**
+     * Describe an existing vehicle.
+     * @param vehicle The vehicle to describe.
+     * @return The description of the vehicle.
+     * @throws IllegalArgumentException if the vehicle is neither a car nor a motorbike.
+     */
+    public static VehicleSpec of(Vehicle vehicle) throws IllegalArgumentException {
+        VehicleType type = VehicleType.of(vehicle);
+        int capacity = type == VehicleType.CAR ? ((Car) vehicle).getNumberOfSeats() : ((Motorbike) vehicle).getCylinderCapacity();
+        return new VehicleSpec(type, vehicle.getBrand(), vehicle.getModel(), vehicle.getProductionYear(), capacity);
+    }
+
+    /**
+     * Check the description.
+     * @param currentYear The current year.
+     * @return The reason why no vehicle can be created from this description, or null if it is valid.
+     */
+    public ImportReport.Reason validate(int currentYear) {
+        if(this.type == null || this.brand == null || this.model == null) {
+            return ImportReport.Reason.MISSING_FIELD;
+        }
+        if(this.productionYear < AbstractVehicle.MIN_PRODUCTION_YEAR || this.productionYear > currentYear) {
+            return ImportReport.Reason.INVALID_PRODUCTION_YEAR;
+        }
+        if(this.type == VehicleType.CAR && this.capacity < Car.MIN_NUMBER_OF_SEATS) {
+            return ImportReport.Reason.INVALID_NUMBER_OF_SEATS;
+        }
+        if(this.type == VehicleType.MOTORBIKE && this.capacity < Motorbike.MIN_CYLINDER_CAPACITY) {
+            return ImportReport.Reason.INVALID_CYLINDER_CAPACITY;
+        }
+        return null;
+    }
+
+    /**
+     * Create the described vehicle.
+     * @param currentYear The current year.
+     * @return The described vehicle.
+     * @throws IllegalArgumentException if the description is not valid.
+     */
+    public Vehicle toVehicle(int currentYear) throws IllegalArgumentException {
+        if(this.type == VehicleType.CAR) {
+            return new Car(this.brand, this.model, this.productionYear, this.capacity, currentYear);
+        }
+        return new Motorbike(this.brand, this.model, this.productionYear, this.capacity, currentYear);
+    }
+}
@@ -0,0 +1,25 @@
+package agency;
+
+/**
+ * The kinds of vehicles an agency can rent.
+ */
+public enum VehicleType {
+    CAR,
+    MOTORBIKE;
+
+    /**
+     * Get the type of a vehicle.
+     * @param vehicle The vehicle.
+     * @return The type of the vehicle.
+     * @throws IllegalArgumentException if the vehicle is neither a car nor a motorbike.
+     */
+    public static VehicleType of(Vehicle vehicle) throws IllegalArgumentException {
+        if(vehicle instanceof Car) {
+            return CAR;
+        }
+        if(vehicle instanceof Motorbike) {
+            return MOTORBIKE;
+        }
+        throw new IllegalArgumentException("Unsupported vehicle type: " + vehicle.getClass().getName());
+    }
+}
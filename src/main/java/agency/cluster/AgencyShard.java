@@ -0,0 +1,99 @@
+package agency.cluster;
+
+import agency.Client;
+import agency.RentalOutcome;
+import agency.Vehicle;
+import agency.VehicleOrder;
+import agency.criteria.Criterion;
+
+import java.util.List;
+
+/**
+ * A part of the fleet of a {@link ShardedRentalAgency}, which owns the vehicles routed to it and their rentals.
+ * <p>
+ * Every method is a single request: arguments and results are plain values, never views on the shard,
+ * and refused operations are reported as results instead of exceptions. A shard can then run in the same process,
+ * or behind a transport to another process, which reports its I/O failures as unchecked exceptions.
+ * Implementations must be thread-safe.
+ */
+public interface AgencyShard extends AutoCloseable {
+
+    /**
+     * Add a vehicle to the shard if it is not already in it.
+     * @param vehicle The vehicle to add.
+     * @return true if the vehicle was added, false otherwise.
+     */
+    boolean add(Vehicle vehicle);
+
+    /**
+     * Add a batch of vehicles in one request.
+     * @param vehicles The vehicles to add.
+     * @return The number of added vehicles.
+     */
+    int addAll(List<Vehicle> vehicles);
+
+    /**
+     * Remove a vehicle from the shard.
+     * @param vehicle The vehicle to remove.
+     * @return true if the vehicle was removed, false if it is not in the shard.
+     */
+    boolean remove(Vehicle vehicle);
+
+    /**
+     * Test if a vehicle belongs to the shard.
+     * @param vehicle The vehicle to test.
+     * @return true if the vehicle is in the shard, false otherwise.
+     */
+    boolean contains(Vehicle vehicle);
+
+    /**
+     * Get the number of vehicles of the shard.
+     * @return The number of vehicles.
+     */
+    int size();
+
+    /**
+     * Rent a vehicle of the shard to a client.
+     * @param client The client who wants to rent a vehicle.
+     * @param vehicle The vehicle to rent.
+     * @return {@link RentalOutcome#RENTED} if the vehicle is rented, or the reason why it cannot be rented.
+     */
+    RentalOutcome tryRentVehicle(Client client, Vehicle vehicle);
+
+    /**
+     * Return the vehicles rented by a client in this shard, if any.
+     * @param client The client who wants to return the vehicles.
+     */
+    void returnVehicle(Client client);
+
+    /**
+     * Test if a vehicle of the shard is rented.
+     * @param vehicle The vehicle to test.
+     * @return true if the vehicle is rented, false otherwise.
+     */
+    boolean vehicleIsRented(Vehicle vehicle);
+
+    /**
+     * Get the rented vehicles of the shard.
+     * @return A new list of the rented vehicles.
+     */
+    List<Vehicle> rentedVehicles();
+
+    /**
+     * Returns the first vehicles of the shard that satisfy a criterion.
+     * The criterion only combines the built-in criteria of {@code agency.criteria}, and the order is one of
+     * the {@link VehicleOrder named orders}, so that both can be encoded by a transport, unlike arbitrary code.
+     * @param criterion the criterion that the selected vehicles must satisfy
+     * @param order the order of the selected vehicles, or null for the insertion order
+     * @param limit the maximum number of selected vehicles
+     * @return a new list of at most {@code limit} vehicles, sorted by {@code order}
+     */
+    List<Vehicle> select(Criterion criterion, VehicleOrder order, int limit);
+
+    /**
+     * Release the resources of the shard. Local shards have none.
+     */
+    @Override
+    default void close() {
+    }
+}
@@ -0,0 +1,68 @@
+package agency.cluster;
+
+import agency.Client;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * The shard renting a vehicle to each client, so that a client rents a single vehicle across the whole cluster.
+ * A client's entry only changes while its stripe is locked, and the lock is held for the whole rental or return
+ * on the shard, so the directory and the shards always agree.
+ */
+final class ClientDirectory {
+    private final ConcurrentMap<Client, Integer> owners;
+    private final ReentrantLock[] stripes;
+
+    /**
+     * Create an empty directory.
+     * @param concurrencyLevel The expected number of threads renting at the same time.
+     */
+    ClientDirectory(int concurrencyLevel) {
+        int size = Integer.highestOneBit(Math.max(1, concurrencyLevel * 4 - 1)) << 1;
+        this.stripes = new ReentrantLock[size];
+        for(int i = 0; i < size; i++) {
+            this.stripes[i] = new ReentrantLock();
+        }
+        this.owners = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Get the lock guarding the entry of a client.
+     * @param client The client.
+     * @return The lock of the stripe of the client.
+     */
+    ReentrantLock lockOf(Client client) {
+        int hash = client.hashCode();
+        hash ^= hash >>> 16;
+        return this.stripes[hash & (this.stripes.length - 1)];
+    }
+
+    /**
+     * Get the shard renting a vehicle to a client.
+     * @param client The client.
+     * @return The index of the shard, or null if the client does not rent any vehicle.
+     */
+    Integer ownerOf(Client client) {
+        return this.owners.get(client);
+    }
+
+    /**
+     * Record that a shard rents a vehicle to a client. The stripe of the client must be locked.
+     * @param client The client.
+     * @param shard The index of the shard.
+     */
+    void assign(Client client, int shard) {
+        this.owners.put(client, shard);
+    }
+
+    /**
+     * Forget the rental of a client. The stripe of the client must be locked.
+     * @param client The client.
+     * @return The index of the shard which was renting a vehicle to the client, or null if there was none.
+     */
+    Integer release(Client client) {
+        return this.owners.remove(client);
+    }
+}
@@ -0,0 +1,85 @@
+package agency.cluster;
+
+import agency.Client;
+import agency.RentalAgency;
+import agency.RentalOutcome;
+import agency.Vehicle;
+import agency.VehicleOrder;
+import agency.criteria.Criterion;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A shard running in the same process, backed by its own {@link RentalAgency}.
+ * Each shard has its own lock, so requests on different shards never wait for each other.
+ */
+public class LocalAgencyShard implements AgencyShard {
+    private final RentalAgency agency;
+
+    /**
+     * Create a shard without any vehicle.
+     */
+    public LocalAgencyShard() {
+        this(new RentalAgency());
+    }
+
+    /**
+     * Create a shard backed by an agency. The agency must not be used directly afterwards.
+     * @param agency The agency holding the vehicles of the shard.
+     */
+    public LocalAgencyShard(RentalAgency agency) {
+        this.agency = agency;
+    }
+
+    @Override
+    public synchronized boolean add(Vehicle vehicle) {
+        return this.agency.add(vehicle);
+    }
+
+    @Override
+    public synchronized int addAll(List<Vehicle> vehicles) {
+        return this.agency.addAll(vehicles).getAddedCount();
+    }
+
+    @Override
+    public synchronized boolean remove(Vehicle vehicle) {
+        return this.agency.tryRemove(vehicle);
+    }
+
+    @Override
+    public synchronized boolean contains(Vehicle vehicle) {
+        return this.agency.contains(vehicle);
+    }
+
+    @Override
+    public int size() {
+        // The fleet snapshot is published safely, it can be read without the lock.
+        return this.agency.getVehicles().size();
+    }
+
+    @Override
+    public synchronized RentalOutcome tryRentVehicle(Client client, Vehicle vehicle) {
+        return this.agency.tryRentVehicle(client, vehicle);
+    }
+
+    @Override
+    public synchronized void returnVehicle(Client client) {
+        this.agency.returnVehicle(client);
+    }
+
+    @Override
+    public synchronized boolean vehicleIsRented(Vehicle vehicle) {
+        return this.agency.vehicleIsRented(vehicle);
+    }
+
+    @Override
+    public synchronized List<Vehicle> rentedVehicles() {
+        return new ArrayList<>(this.agency.allRentedVehicles());
+    }
+
+    @Override
+    public synchronized List<Vehicle> select(Criterion criterion, VehicleOrder order, int limit) {
+        return this.agency.select(criterion, order, limit);
+    }
+}
@@ -0,0 +1,384 @@
+package agency.cluster;
+
+import agency.Client;
+import agency.RentalOutcome;
+import agency.RentalPolicy;
+import agency.Vehicle;
+import agency.VehicleOrder;
+import agency.criteria.Criterion;
+import agency.criteria.CriterionPlanner;
+import agency.exceptions.RentalConflictException;
+import agency.exceptions.UnknownVehicleException;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.IntFunction;
+
+/**
+ * A rental agency whose fleet is split across several {@link AgencyShard shards}.
+ * <p>
+ * Each vehicle belongs to the shard chosen by its hash code, so rentals, returns and fleet changes are routed
+ * to a single shard, and shards work in parallel. A client still rents a single vehicle across the whole agency:
+ * a directory records which shard rents a vehicle to each client, and refusals follow the same {@link RentalPolicy}
+ * as a single agency. Selections are sent to every shard in parallel, and their results are merged,
+ * optionally sorted and truncated.
+ */
+public class ShardedRentalAgency implements AutoCloseable {
+    private final List<AgencyShard> shards;
+    private final ClientDirectory directory;
+    private final ExecutorService executor;
+    private final RentalPolicy policy;
+
+    /**
+     * Create an agency over some shards, which are closed with the agency.
+     * @param shards The shards of the agency.
+     * @throws IllegalArgumentException if there is no shard.
+     */
+    public ShardedRentalAgency(List<? extends AgencyShard> shards) throws IllegalArgumentException {
+        if(shards.isEmpty()) {
+            throw new IllegalArgumentException("A sharded agency needs at least one shard.");
+        }
+        this.shards = List.copyOf(shards);
+        this.directory = new ClientDirectory(Runtime.getRuntime().availableProcessors());
+        // The directory records a single shard per client, so the default limit of one rental is kept.
+        this.policy = new RentalPolicy();
+        AtomicInteger threads = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(this.shards.size(), task -> {
+            Thread thread = new Thread(task, "agency-shard-" + threads.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Create an agency over shards running in this process.
+     * @param shardCount The number of shards.
+     * @return The new agency, without any vehicle.
+     * @throws IllegalArgumentException if the number of shards is less than 1.
+     */
+    public static ShardedRentalAgency local(int shardCount) throws IllegalArgumentException {
+        if(shardCount < 1) {
+            throw new IllegalArgumentException("Shard count must be at least 1. " + shardCount + " is invalid.");
+        }
+        List<AgencyShard> shards = new ArrayList<>(shardCount);
+        for(int i = 0; i < shardCount; i++) {
+            shards.add(new LocalAgencyShard());
+        }
+        return new ShardedRentalAgency(shards);
+    }
+
+    /**
+     * Get the number of shards.
+     * @return The number of shards.
+     */
+    public int getShardCount() {
+        return this.shards.size();
+    }
+
+    /**
+     * Get the maximum number of vehicles a client can rent at the same time across the shards.
+     * @return The rental limit, always 1.
+     */
+    public int getRentalLimit() {
+        return this.policy.getRentalLimit();
+    }
+
+    /**
+     * Get the shard owning a vehicle. It only depends on the vehicle, so it is the same in every process.
+     * @param vehicle The vehicle.
+     * @return The index of the shard.
+     */
+    public int shardOf(Vehicle vehicle) {
+        int hash = vehicle.hashCode();
+        hash ^= hash >>> 16;
+        return Math.floorMod(hash, this.shards.size());
+    }
+
+    /**
+     * Add a vehicle to the agency if it is not already in it.
+     * @param vehicle The vehicle to add.
+     * @return true if the vehicle was added, false otherwise.
+     */
+    public boolean add(Vehicle vehicle) {
+        return this.shards.get(this.shardOf(vehicle)).add(vehicle);
+    }
+
+    /**
+     * Add a batch of vehicles, with a single request to each shard.
+     * @param vehicles The vehicles to add.
+     * @return The number of added vehicles.
+     */
+    public int addAll(Collection<? extends Vehicle> vehicles) {
+        List<List<Vehicle>> batches = new ArrayList<>(this.shards.size());
+        for(int i = 0; i < this.shards.size(); i++) {
+            batches.add(new ArrayList<>());
+        }
+        for(Vehicle vehicle : vehicles) {
+            batches.get(this.shardOf(vehicle)).add(vehicle);
+        }
+        int added = 0;
+        for(int count : this.scatter(shard -> batches.get(shard).isEmpty() ? 0 : this.shards.get(shard).addAll(batches.get(shard)))) {
+            added += count;
+        }
+        return added;
+    }
+
+    /**
+     * Remove a vehicle from the agency.
+     * @param vehicle The vehicle to remove.
+     * @throws UnknownVehicleException if the vehicle is not in the agency.
+     */
+    public void remove(Vehicle vehicle) throws UnknownVehicleException {
+        if(!this.tryRemove(vehicle)) {
+            throw new UnknownVehicleException(vehicle);
+        }
+    }
+
+    /**
+     * Remove a vehicle from the agency, without throwing if it is unknown.
+     * @param vehicle The vehicle to remove.
+     * @return true if the vehicle was removed, false if it is not in the agency.
+     */
+    public boolean tryRemove(Vehicle vehicle) {
+        return this.shards.get(this.shardOf(vehicle)).remove(vehicle);
+    }
+
+    /**
+     * Test if a vehicle belongs to the agency.
+     * @param vehicle The vehicle to test.
+     * @return true if the vehicle is in the agency, false otherwise.
+     */
+    public boolean contains(Vehicle vehicle) {
+        return this.shards.get(this.shardOf(vehicle)).contains(vehicle);
+    }
+
+    /**
+     * Get the number of vehicles of the agency.
+     * @return The number of vehicles of all the shards.
+     */
+    public int size() {
+        int size = 0;
+        for(AgencyShard shard : this.shards) {
+            size += shard.size();
+        }
+        return size;
+    }
+
+    /**
+     * Rent a vehicle to a client.
+     * @param client The client who wants to rent a vehicle.
+     * @param vehicle The vehicle to rent.
+     * @return The daily rental price of the vehicle.
+     * @throws UnknownVehicleException if the vehicle is not in the agency.
+     * @throws RentalConflictException if the client already has a rented vehicle or if the vehicle is already rented.
+     */
+    public double rentVehicle(Client client, Vehicle vehicle) throws UnknownVehicleException, RentalConflictException {
+        RentalOutcome outcome = this.tryRentVehicle(client, vehicle);
+        if(outcome != RentalOutcome.RENTED) {
+            RentalPolicy.throwIfRefused(outcome, client, vehicle, this.rentedCount(client));
+        }
+        return vehicle.dailyRentalPrice();
+    }
+
+    /**
+     * Rent a vehicle to a client, without throwing if it cannot be rented.
+     * @param client The client who wants to rent a vehicle.
+     * @param vehicle The vehicle to rent.
+     * @return {@link RentalOutcome#RENTED} if the vehicle is rented, or the reason why it cannot be rented.
+     */
+    public RentalOutcome tryRentVehicle(Client client, Vehicle vehicle) {
+        int shardIndex = this.shardOf(vehicle);
+        AgencyShard shard = this.shards.get(shardIndex);
+        ReentrantLock lock = this.directory.lockOf(client);
+        lock.lock();
+        try {
+            int rentedCount = this.rentedCount(client);
+            if(!this.policy.allows(rentedCount)) {
+                // The shard does not know the rentals of the other shards, the policy decides with the directory.
+                return this.policy.check(shard.contains(vehicle), rentedCount, false);
+            }
+            RentalOutcome outcome = shard.tryRentVehicle(client, vehicle);
+            if(outcome == RentalOutcome.RENTED) {
+                this.directory.assign(client, shardIndex);
+            }
+            return outcome;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Return the vehicle rented by a client, if any.
+     * @param client The client who wants to return a vehicle.
+     */
+    public void returnVehicle(Client client) {
+        ReentrantLock lock = this.directory.lockOf(client);
+        lock.lock();
+        try {
+            Integer shard = this.directory.release(client);
+            if(shard != null) {
+                this.shards.get(shard).returnVehicle(client);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private int rentedCount(Client client) {
+        return this.directory.ownerOf(client) == null ? 0 : 1;
+    }
+
+    /**
+     * Test if a client rents a vehicle.
+     * @param client The client to test.
+     * @return true if the client rents a vehicle in any shard, false otherwise.
+     */
+    public boolean aVehicleIsRentedBy(Client client) {
+        return this.directory.ownerOf(client) != null;
+    }
+
+    /**
+     * Test if a vehicle is rented.
+     * @param vehicle The vehicle to test.
+     * @return true if the vehicle is rented, false otherwise.
+     */
+    public boolean vehicleIsRented(Vehicle vehicle) {
+        return this.shards.get(this.shardOf(vehicle)).vehicleIsRented(vehicle);
+    }
+
+    /**
+     * Get the rented vehicles of all the shards.
+     * @return A new list of the rented vehicles, shard by shard.
+     */
+    public List<Vehicle> allRentedVehicles() {
+        List<Vehicle> rented = new ArrayList<>();
+        for(List<Vehicle> part : this.scatter(shard -> this.shards.get(shard).rentedVehicles())) {
+            rented.addAll(part);
+        }
+        return rented;
+    }
+
+    /**
+     * Returns the vehicles of this agency that satisfy the specified criterion, shard by shard.
+     * @param criterion the criterion that the selected vehicles must satisfy, only made of built-in criteria
+     * @return the list of vehicles of this agency that satisfy the given criterion
+     * @throws IllegalArgumentException if the criterion contains an opaque predicate, which cannot be sent to a shard.
+     */
+    public List<Vehicle> select(Criterion criterion) throws IllegalArgumentException {
+        return this.select(criterion, null, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Returns the first vehicles of this agency that satisfy the specified criterion.
+     * Every shard selects, sorts and truncates its own vehicles in parallel, then the sorted parts are merged.
+     * Vehicles with the same key are listed shard by shard, in insertion order.
+     * @param criterion the criterion that the selected vehicles must satisfy, only made of built-in criteria
+     * @param order the order of the selected vehicles, or null to list them shard by shard, in insertion order
+     * @param limit the maximum number of selected vehicles
+     * @return the list of at most {@code limit} vehicles of this agency that satisfy the given criterion
+     * @throws IllegalArgumentException if the limit is negative, or if the criterion contains an opaque predicate,
+     * which cannot be sent to a shard.
+     */
+    public List<Vehicle> select(Criterion criterion, VehicleOrder order, int limit) throws IllegalArgumentException {
+        if(limit < 0) {
+            throw new IllegalArgumentException("Limit must not be negative. " + limit + " is invalid.");
+        }
+        if(!CriterionPlanner.isBuiltIn(criterion)) {
+            throw new IllegalArgumentException("Only built-in criteria can be sent to shards.");
+        }
+        if(limit == 0) {
+            return new ArrayList<>();
+        }
+        List<List<Vehicle>> parts = this.scatter(shard -> this.shards.get(shard).select(criterion, order, limit));
+        return order == null ? concat(parts, limit) : merge(parts, order, limit);
+    }
+
+    /**
+     * Stop the threads of the agency and close the shards.
+     */
+    @Override
+    public void close() {
+        this.executor.shutdown();
+        for(AgencyShard shard : this.shards) {
+            shard.close();
+        }
+    }
+
+    /**
+     * Send a request to every shard in parallel and wait for all the results.
+     * @param request The request, given the index of a shard.
+     * @return The results, by shard index.
+     */
+    private <T> List<T> scatter(IntFunction<T> request) {
+        if(this.shards.size() == 1) {
+            return List.of(request.apply(0));
+        }
+        List<CompletableFuture<T>> futures = new ArrayList<>(this.shards.size());
+        for(int i = 0; i < this.shards.size(); i++) {
+            int shard = i;
+            futures.add(CompletableFuture.supplyAsync(() -> request.apply(shard), this.executor));
+        }
+        List<T> results = new ArrayList<>(futures.size());
+        for(CompletableFuture<T> future : futures) {
+            try {
+                results.add(future.join());
+            } catch(CompletionException e) {
+                // Report the failure of the shard itself, as a local call would.
+                if(e.getCause() instanceof RuntimeException cause) {
+                    throw cause;
+                }
+                throw e;
+            }
+        }
+        return results;
+    }
+
+    private static List<Vehicle> concat(List<List<Vehicle>> parts, int limit) {
+        List<Vehicle> selectedVehicles = new ArrayList<>();
+        for(List<Vehicle> part : parts) {
+            for(Vehicle vehicle : part) {
+                if(selectedVehicles.size() == limit) {
+                    return selectedVehicles;
+                }
+                selectedVehicles.add(vehicle);
+            }
+        }
+        return selectedVehicles;
+    }
+
+    private static List<Vehicle> merge(List<List<Vehicle>> parts, VehicleOrder order, int limit) {
+        // Each part is sorted, so the next vehicle is always the smallest head. Ties keep the shard order.
+        PriorityQueue<Head> heads = new PriorityQueue<>(parts.size(),
+                Comparator.<Head, Vehicle>comparing(head -> head.vehicle, order).thenComparingInt(head -> head.shard));
+        for(int i = 0; i < parts.size(); i++) {
+            Iterator<Vehicle> part = parts.get(i).iterator();
+            if(part.hasNext()) {
+                heads.add(new Head(i, part));
+            }
+        }
+        List<Vehicle> selectedVehicles = new ArrayList<>();
+        while(!heads.isEmpty() && selectedVehicles.size() < limit) {
+            Head head = heads.poll();
+            selectedVehicles.add(head.vehicle);
+            if(head.rest.hasNext()) {
+                head.vehicle = head.rest.next();
+                heads.add(head);
+            }
+        }
+        return selectedVehicles;
+    }
+
+    private static final class Head {
+        private final int shard;
+        private final Iterator<Vehicle> rest;
+        private Vehicle vehicle;
+
+        Head(int shard, Iterator<Vehicle> rest) {
+            this.shard = shard;
+            this.rest = rest;
+            this.vehicle = rest.next();
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package agency.criteria;
+
+import agency.Vehicle;
+
+import java.util.List;
+
+/**
+ * A criterion satisfied when all its operands are satisfied. Operands are evaluated in order.
+ */
+public class AndCriterion implements Criterion {
+    private final List<Criterion> operands;
+
+    public AndCriterion(List<Criterion> operands) {
+        this.operands = List.copyOf(operands);
+    }
+
+    /**
+     * Get the operands of the criterion.
+     * @return The operands, in evaluation order.
+     */
+    public List<Criterion> getOperands() {
+        return this.operands;
+    }
+
+    @Override
+    public boolean test(Vehicle vehicle) {
+        for(Criterion operand : this.operands) {
+            if(!operand.test(vehicle)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public int cost() {
+        int cost = 0;
+        for(Criterion operand : this.operands) {
+            cost += operand.cost();
+        }
+        return cost;
+    }
+
+    @Override
+    public double selectivity() {
+        double selectivity = 1;
+        for(Criterion operand : this.operands) {
+            selectivity *= operand.selectivity();
+        }
+        return selectivity;
+    }
+}
@@ -1,18 +1,38 @@
 package agency.criteria;
 
+import agency.AbstractVehicle;
 import agency.Vehicle;
+import util.Interner;
 
-import java.util.function.Predicate;
-
-public class BrandCriterion implements Predicate<Vehicle> {
+public class BrandCriterion implements Criterion {
     private String brand;
 
     public BrandCriterion(String brand) {
-        this.brand = brand;
+        this.brand = Interner.intern(brand);
+    }
+
+    /**
+     * Get the brand the vehicles must have.
+     * @return The brand the vehicles must have.
+     */
+    public String getBrand() {
+        return this.brand;
     }
 
     @Override
     public boolean test(Vehicle vehicle) {
-        return vehicle.getBrand().equals(this.brand);
+        String brand = vehicle.getBrand();
+        // Brands of AbstractVehicle are interned like this one, so they only match by identity.
+        return brand == this.brand || (!(vehicle instanceof AbstractVehicle) && brand.equals(this.brand));
+    }
+
+    @Override
+    public int cost() {
+        return 3;
+    }
+
+    @Override
+    public double selectivity() {
+        return 0.1;
     }
 }
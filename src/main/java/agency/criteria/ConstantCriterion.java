@@ -0,0 +1,32 @@
+package agency.criteria;
+
+import agency.Vehicle;
+
+/**
+ * Criteria that do not depend on the vehicle, produced by the {@link CriterionPlanner}.
+ */
+public enum ConstantCriterion implements Criterion {
+    ALWAYS(true),
+    NEVER(false);
+
+    private final boolean value;
+
+    ConstantCriterion(boolean value) {
+        this.value = value;
+    }
+
+    @Override
+    public boolean test(Vehicle vehicle) {
+        return this.value;
+    }
+
+    @Override
+    public int cost() {
+        return 0;
+    }
+
+    @Override
+    public double selectivity() {
+        return this.value ? 1 : 0;
+    }
+}
@@ -0,0 +1,65 @@
+package agency.criteria;
+
+import agency.Vehicle;
+
+import java.util.List;
+import java.util.function.Predicate;
+
+/**
+ * A vehicle criterion that can be inspected, combined and reordered by a {@link CriterionPlanner}.
+ */
+public interface Criterion extends Predicate<Vehicle> {
+
+    /**
+     * Get the relative cost of evaluating the criterion on one vehicle.
+     * @return The relative cost, 1 being a field comparison.
+     */
+    int cost();
+
+    /**
+     * Get the estimated fraction of vehicles that satisfy the criterion.
+     * @return A selectivity between 0 and 1.
+     */
+    default double selectivity() {
+        return 0.5;
+    }
+
+    /**
+     * Combine this criterion with another one, both must be satisfied.
+     * @param other The other criterion.
+     * @return A criterion satisfied when both criteria are satisfied.
+     */
+    default Criterion and(Criterion other) {
+        return new AndCriterion(List.of(this, other));
+    }
+
+    /**
+     * Combine this criterion with another one, at least one must be satisfied.
+     * @param other The other criterion.
+     * @return A criterion satisfied when at least one of the criteria is satisfied.
+     */
+    default Criterion or(Criterion other) {
+        return new OrCriterion(List.of(this, other));
+    }
+
+    /**
+     * Get the opposite of this criterion.
+     * @return A criterion satisfied when this criterion is not.
+     */
+    @Override
+    default Criterion negate() {
+        return new NotCriterion(this);
+    }
+
+    /**
+     * Wrap a predicate into a criterion.
+     * @param predicate The predicate to wrap.
+     * @return The predicate itself if it already is a criterion, an opaque criterion otherwise.
+     */
+    static Criterion of(Predicate<Vehicle> predicate) {
+        if(predicate instanceof Criterion criterion) {
+            return criterion;
+        }
+        return new PredicateCriterion(predicate);
+    }
+}
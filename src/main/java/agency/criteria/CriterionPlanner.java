@@ -0,0 +1,243 @@
+package agency.criteria;
+
+import agency.Car;
+import agency.Motorbike;
+import agency.Vehicle;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Objects;
+import java.util.function.Predicate;
+
+/**
+ * Rewrites criteria so that they need fewer evaluations per vehicle:
+ * nested operators are flattened, redundant leaves are merged, contradictions become {@link ConstantCriterion#NEVER},
+ * and operands are reordered so that the cheapest and most decisive ones are evaluated first.
+ */
+public final class CriterionPlanner {
+
+    private CriterionPlanner() {
+    }
+
+    /**
+     * Optimize a criterion. The optimized criterion is satisfied by exactly the same vehicles.
+     * @param criterion The criterion to optimize.
+     * @return The optimized criterion.
+     */
+    public static Criterion optimize(Criterion criterion) {
+        if(criterion instanceof AndCriterion and) {
+            return optimizeAnd(and);
+        }
+        if(criterion instanceof OrCriterion or) {
+            return optimizeOr(or);
+        }
+        if(criterion instanceof NotCriterion not) {
+            return optimizeNot(not);
+        }
+        return criterion;
+    }
+
+    /**
+     * Test if a predicate only combines the criteria of this package.
+     * Such criteria are stateless, so they can be evaluated from several threads at once.
+     * @param predicate The predicate to inspect.
+     * @return true if the predicate is made of built-in criteria only, false otherwise.
+     */
+    public static boolean isBuiltIn(Predicate<Vehicle> predicate) {
+        if(predicate.getClass() == AndCriterion.class) {
+            return ((AndCriterion) predicate).getOperands().stream().allMatch(CriterionPlanner::isBuiltIn);
+        }
+        if(predicate.getClass() == OrCriterion.class) {
+            return ((OrCriterion) predicate).getOperands().stream().allMatch(CriterionPlanner::isBuiltIn);
+        }
+        if(predicate.getClass() == NotCriterion.class) {
+            return isBuiltIn(((NotCriterion) predicate).getOperand());
+        }
+        Class<?> kind = predicate.getClass();
+        return kind == BrandCriterion.class || kind == MaxPriceCriterion.class || kind == ProductionYearCriterion.class
+                || kind == VehicleTypeCriterion.class || kind == MinSeatsCriterion.class
+                || kind == MinCylinderCapacityCriterion.class || kind == ConstantCriterion.class;
+    }
+
+    private static Criterion optimizeNot(NotCriterion not) {
+        Criterion operand = optimize(not.getOperand());
+        if(operand == ConstantCriterion.ALWAYS) {
+            return ConstantCriterion.NEVER;
+        }
+        if(operand == ConstantCriterion.NEVER) {
+            return ConstantCriterion.ALWAYS;
+        }
+        if(operand instanceof NotCriterion doubleNot) {
+            return doubleNot.getOperand();
+        }
+        return new NotCriterion(operand);
+    }
+
+    private static Criterion optimizeOr(OrCriterion or) {
+        List<Criterion> operands = new ArrayList<>();
+        for(Criterion operand : or.getOperands()) {
+            Criterion optimized = optimize(operand);
+            if(optimized == ConstantCriterion.ALWAYS) {
+                return ConstantCriterion.ALWAYS;
+            }
+            if(optimized instanceof OrCriterion nested) {
+                operands.addAll(nested.getOperands());
+            } else if(optimized != ConstantCriterion.NEVER) {
+                operands.add(optimized);
+            }
+        }
+        // The first operands should be cheap and likely to accept the vehicle.
+        operands.sort(Comparator.comparingDouble(operand -> operand.cost() / Math.max(operand.selectivity(), 1e-3)));
+        return combine(operands, ConstantCriterion.NEVER, false);
+    }
+
+    private static Criterion optimizeAnd(AndCriterion and) {
+        List<Criterion> operands = new ArrayList<>();
+        for(Criterion operand : and.getOperands()) {
+            Criterion optimized = optimize(operand);
+            if(optimized == ConstantCriterion.NEVER) {
+                return ConstantCriterion.NEVER;
+            }
+            if(optimized instanceof AndCriterion nested) {
+                operands.addAll(nested.getOperands());
+            } else if(optimized != ConstantCriterion.ALWAYS) {
+                operands.add(optimized);
+            }
+        }
+
+        Conjunction conjunction = new Conjunction();
+        List<Criterion> others = new ArrayList<>();
+        for(Criterion operand : operands) {
+            if(!conjunction.merge(operand)) {
+                others.add(operand);
+            }
+        }
+        if(conjunction.isContradiction()) {
+            return ConstantCriterion.NEVER;
+        }
+        conjunction.appendTo(others);
+
+        // The first operands should be cheap and likely to reject the vehicle.
+        others.sort(Comparator.comparingDouble(operand -> operand.cost() / Math.max(1 - operand.selectivity(), 1e-3)));
+        return combine(others, ConstantCriterion.ALWAYS, true);
+    }
+
+    private static Criterion combine(List<Criterion> operands, Criterion empty, boolean and) {
+        if(operands.isEmpty()) {
+            return empty;
+        }
+        if(operands.size() == 1) {
+            return operands.get(0);
+        }
+        return and ? new AndCriterion(operands) : new OrCriterion(operands);
+    }
+
+    private static boolean compatible(Class<? extends Vehicle> type, Class<? extends Vehicle> other) {
+        // An object may implement two unrelated interfaces, but cannot be an instance of two unrelated classes.
+        return type.isInterface() || other.isInterface() || type.isAssignableFrom(other) || other.isAssignableFrom(type);
+    }
+
+    /**
+     * The known leaves of a conjunction, merged into the tightest equivalent leaves.
+     * Only the exact criteria classes are merged, subclasses may redefine {@code test}.
+     */
+    private static class Conjunction {
+        private boolean contradiction;
+        private BrandCriterion brand;
+        private MaxPriceCriterion maxPrice;
+        private ProductionYearCriterion productionYear;
+        private final List<VehicleTypeCriterion> types = new ArrayList<>();
+        private MinSeatsCriterion minSeats;
+        private MinCylinderCapacityCriterion minCylinderCapacity;
+
+        boolean merge(Criterion operand) {
+            Class<?> kind = operand.getClass();
+            if(kind == BrandCriterion.class) {
+                BrandCriterion other = (BrandCriterion) operand;
+                if(this.brand != null && !Objects.equals(this.brand.getBrand(), other.getBrand())) {
+                    this.contradiction = true;
+                }
+                this.brand = other;
+            } else if(kind == MaxPriceCriterion.class) {
+                MaxPriceCriterion other = (MaxPriceCriterion) operand;
+                if(Double.isNaN(other.getMaxPrice())) {
+                    this.contradiction = true;
+                }
+                if(this.maxPrice == null || other.getMaxPrice() < this.maxPrice.getMaxPrice()) {
+                    this.maxPrice = other;
+                }
+            } else if(kind == ProductionYearCriterion.class) {
+                ProductionYearCriterion other = (ProductionYearCriterion) operand;
+                this.productionYear = this.productionYear == null ? other : new ProductionYearCriterion(
+                        Math.max(this.productionYear.getMinYear(), other.getMinYear()),
+                        Math.min(this.productionYear.getMaxYear(), other.getMaxYear()));
+            } else if(kind == VehicleTypeCriterion.class) {
+                this.types.add((VehicleTypeCriterion) operand);
+            } else if(kind == MinSeatsCriterion.class) {
+                MinSeatsCriterion other = (MinSeatsCriterion) operand;
+                if(this.minSeats == null || other.getMinSeats() > this.minSeats.getMinSeats()) {
+                    this.minSeats = other;
+                }
+            } else if(kind == MinCylinderCapacityCriterion.class) {
+                MinCylinderCapacityCriterion other = (MinCylinderCapacityCriterion) operand;
+                if(this.minCylinderCapacity == null || other.getMinCylinderCapacity() > this.minCylinderCapacity.getMinCylinderCapacity()) {
+                    this.minCylinderCapacity = other;
+                }
+            } else {
+                return false;
+            }
+            return true;
+        }
+
+        boolean isContradiction() {
+            if(this.contradiction) {
+                return true;
+            }
+            if(this.productionYear != null && this.productionYear.getMinYear() > this.productionYear.getMaxYear()) {
+                return true;
+            }
+            // Only cars have seats and only motorbikes have a cylinder capacity.
+            List<Class<? extends Vehicle>> required = new ArrayList<>();
+            for(VehicleTypeCriterion type : this.types) {
+                required.add(type.getType());
+            }
+            if(this.minSeats != null) {
+                required.add(Car.class);
+            }
+            if(this.minCylinderCapacity != null) {
+                required.add(Motorbike.class);
+            }
+            for(int i = 0; i < required.size(); i++) {
+                for(int j = i + 1; j < required.size(); j++) {
+                    if(!compatible(required.get(i), required.get(j))) {
+                        return true;
+                    }
+                }
+            }
+            return false;
+        }
+
+        void appendTo(List<Criterion> operands) {
+            for(Criterion leaf : new Criterion[]{this.brand, this.maxPrice, this.productionYear, this.minSeats, this.minCylinderCapacity}) {
+                if(leaf != null) {
+                    operands.add(leaf);
+                }
+            }
+            // A type implied by a more specific type is redundant.
+            for(VehicleTypeCriterion type : this.types) {
+                boolean redundant = false;
+                for(VehicleTypeCriterion other : this.types) {
+                    if(other != type && type.getType().isAssignableFrom(other.getType())
+                            && (type.getType() != other.getType() || this.types.indexOf(other) < this.types.indexOf(type))) {
+                        redundant = true;
+                        break;
+                    }
+                }
+                if(!redundant) {
+                    operands.add(type);
+                }
+            }
+        }
+    }
+}
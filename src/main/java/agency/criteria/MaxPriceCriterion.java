@@ -2,17 +2,28 @@ package agency.criteria;
 
 import agency.Vehicle;
 
-import java.util.function.Predicate;
-
-public class MaxPriceCriterion implements Predicate<Vehicle> {
+public class MaxPriceCriterion implements Criterion {
     private double maxPrice;
 
     public MaxPriceCriterion(double maxPrice) {
         this.maxPrice = maxPrice;
     }
 
+    /**
+     * Get the maximum daily rental price of the vehicles.
+     * @return The maximum daily rental price of the vehicles.
+     */
+    public double getMaxPrice() {
+        return this.maxPrice;
+    }
+
     @Override
     public boolean test(Vehicle vehicle) {
         return vehicle.dailyRentalPrice() <= this.maxPrice;
     }
+
+    @Override
+    public int cost() {
+        return 4;
+    }
 }
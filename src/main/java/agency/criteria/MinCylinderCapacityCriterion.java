@@ -0,0 +1,30 @@
+package agency.criteria;
+
+import agency.Motorbike;
+import agency.Vehicle;
+
+public class MinCylinderCapacityCriterion implements Criterion {
+    private final int minCylinderCapacity;
+
+    /**
+     * Create a criterion selecting the motorbikes with a large enough engine. Other vehicles never satisfy it.
+     * @param minCylinderCapacity The minimum cylinder capacity, in cm3.
+     */
+    public MinCylinderCapacityCriterion(int minCylinderCapacity) {
+        this.minCylinderCapacity = minCylinderCapacity;
+    }
+
+    public int getMinCylinderCapacity() {
+        return this.minCylinderCapacity;
+    }
+
+    @Override
+    public boolean test(Vehicle vehicle) {
+        return vehicle instanceof Motorbike motorbike && motorbike.getCylinderCapacity() >= this.minCylinderCapacity;
+    }
+
+    @Override
+    public int cost() {
+        return 2;
+    }
+}
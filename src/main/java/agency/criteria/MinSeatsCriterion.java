@@ -0,0 +1,30 @@
+package agency.criteria;
+
+import agency.Car;
+import agency.Vehicle;
+
+public class MinSeatsCriterion implements Criterion {
+    private final int minSeats;
+
+    /**
+     * Create a criterion selecting the cars with enough seats. Other vehicles never satisfy it.
+     * @param minSeats The minimum number of seats.
+     */
+    public MinSeatsCriterion(int minSeats) {
+        this.minSeats = minSeats;
+    }
+
+    public int getMinSeats() {
+        return this.minSeats;
+    }
+
+    @Override
+    public boolean test(Vehicle vehicle) {
+        return vehicle instanceof Car car && car.getNumberOfSeats() >= this.minSeats;
+    }
+
+    @Override
+    public int cost() {
+        return 2;
+    }
+}
@@ -0,0 +1,37 @@
+package agency.criteria;
+
+import agency.Vehicle;
+
+/**
+ * A criterion satisfied when its operand is not.
+ */
+public class NotCriterion implements Criterion {
+    private final Criterion operand;
+
+    public NotCriterion(Criterion operand) {
+        this.operand = operand;
+    }
+
+    /**
+     * Get the negated criterion.
+     * @return The negated criterion.
+     */
+    public Criterion getOperand() {
+        return this.operand;
+    }
+
+    @Override
+    public boolean test(Vehicle vehicle) {
+        return !this.operand.test(vehicle);
+    }
+
+    @Override
+    public int cost() {
+        return this.operand.cost();
+    }
+
+    @Override
+    public double selectivity() {
+        return 1 - this.operand.selectivity();
+    }
+}
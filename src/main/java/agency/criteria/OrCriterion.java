@@ -0,0 +1,52 @@
+package agency.criteria;
+
+import agency.Vehicle;
+
+import java.util.List;
+
+/**
+ * A criterion satisfied when at least one of its operands is satisfied. Operands are evaluated in order.
+ */
+public class OrCriterion implements Criterion {
+    private final List<Criterion> operands;
+
+    public OrCriterion(List<Criterion> operands) {
+        this.operands = List.copyOf(operands);
+    }
+
+    /**
+     * Get the operands of the criterion.
+     * @return The operands, in evaluation order.
+     */
+    public List<Criterion> getOperands() {
+        return this.operands;
+    }
+
+    @Override
+    public boolean test(Vehicle vehicle) {
+        for(Criterion operand : this.operands) {
+            if(operand.test(vehicle)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public int cost() {
+        int cost = 0;
+        for(Criterion operand : this.operands) {
+            cost += operand.cost();
+        }
+        return cost;
+    }
+
+    @Override
+    public double selectivity() {
+        double rejected = 1;
+        for(Criterion operand : this.operands) {
+            rejected *= 1 - operand.selectivity();
+        }
+        return 1 - rejected;
+    }
+}
@@ -0,0 +1,26 @@
+package agency.criteria;
+
+import agency.Vehicle;
+
+import java.util.function.Predicate;
+
+/**
+ * An opaque predicate used as a criterion. It is always evaluated last.
+ */
+public class PredicateCriterion implements Criterion {
+    private final Predicate<Vehicle> predicate;
+
+    public PredicateCriterion(Predicate<Vehicle> predicate) {
+        this.predicate = predicate;
+    }
+
+    @Override
+    public boolean test(Vehicle vehicle) {
+        return this.predicate.test(vehicle);
+    }
+
+    @Override
+    public int cost() {
+        return 10;
+    }
+}
@@ -0,0 +1,37 @@
+package agency.criteria;
+
+import agency.Vehicle;
+
+public class ProductionYearCriterion implements Criterion {
+    private final int minYear;
+    private final int maxYear;
+
+    /**
+     * Create a criterion on the production year of the vehicles.
+     * @param minYear The minimum production year, inclusive.
+     * @param maxYear The maximum production year, inclusive.
+     */
+    public ProductionYearCriterion(int minYear, int maxYear) {
+        this.minYear = minYear;
+        this.maxYear = maxYear;
+    }
+
+    public int getMinYear() {
+        return this.minYear;
+    }
+
+    public int getMaxYear() {
+        return this.maxYear;
+    }
+
+    @Override
+    public boolean test(Vehicle vehicle) {
+        int productionYear = vehicle.getProductionYear();
+        return productionYear >= this.minYear && productionYear <= this.maxYear;
+    }
+
+    @Override
+    public int cost() {
+        return 1;
+    }
+}
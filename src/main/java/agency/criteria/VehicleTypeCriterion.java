@@ -0,0 +1,29 @@
+package agency.criteria;
+
+import agency.Vehicle;
+
+public class VehicleTypeCriterion implements Criterion {
+    private final Class<? extends Vehicle> type;
+
+    /**
+     * Create a criterion on the type of the vehicles.
+     * @param type The type the vehicles must be an instance of.
+     */
+    public VehicleTypeCriterion(Class<? extends Vehicle> type) {
+        this.type = type;
+    }
+
+    public Class<? extends Vehicle> getType() {
+        return this.type;
+    }
+
+    @Override
+    public boolean test(Vehicle vehicle) {
+        return this.type.isInstance(vehicle);
+    }
+
+    @Override
+    public int cost() {
+        return 1;
+    }
+}
@@ -0,0 +1,96 @@
+package agency.exceptions;
+
+import agency.Client;
+import agency.RentalOutcome;
+import agency.Vehicle;
+
+/**
+ * Thrown when a vehicle cannot be rented because the vehicle is already rented
+ * or the client reached their rental limit.
+ */
+public class RentalConflictException extends IllegalStateException {
+    private static final long serialVersionUID = 1L;
+
+    private final RentalOutcome reason;
+    private final Client client;
+    private final Vehicle vehicle;
+    private final int rentedCount;
+
+    /**
+     * Create a new RentalConflictException.
+     * @param reason Either {@link RentalOutcome#VEHICLE_ALREADY_RENTED} or {@link RentalOutcome#RENTAL_LIMIT_REACHED}.
+     * @param client The client who wants to rent the vehicle.
+     * @param vehicle The vehicle to rent.
+     * @param rentedCount The number of vehicles already rented by the client.
+     */
+    public RentalConflictException(RentalOutcome reason, Client client, Vehicle vehicle, int rentedCount) {
+        this(reason, client, vehicle, rentedCount, true);
+    }
+
+    /**
+     * Create a new RentalConflictException, optionally without a stack trace.
+     * @param reason Either {@link RentalOutcome#VEHICLE_ALREADY_RENTED} or {@link RentalOutcome#RENTAL_LIMIT_REACHED}.
+     * @param client The client who wants to rent the vehicle.
+     * @param vehicle The vehicle to rent.
+     * @param rentedCount The number of vehicles already rented by the client.
+     * @param writableStackTrace false to skip the stack trace.
+     */
+    public RentalConflictException(RentalOutcome reason, Client client, Vehicle vehicle, int rentedCount, boolean writableStackTrace) {
+        this.reason = reason;
+        this.client = client;
+        this.vehicle = vehicle;
+        this.rentedCount = rentedCount;
+        if(writableStackTrace) {
+            super.fillInStackTrace();
+        }
+    }
+
+    /**
+     * The stack trace is filled by the constructor, once it knows whether it is wanted.
+     * Unlike {@link RuntimeException}, {@link IllegalStateException} has no constructor taking writableStackTrace.
+     * @return This exception.
+     */
+    @Override
+    public synchronized Throwable fillInStackTrace() {
+        return this;
+    }
+
+    /**
+     * Get the reason why the vehicle cannot be rented.
+     * @return The reason of the conflict.
+     */
+    public RentalOutcome getReason() {
+        return this.reason;
+    }
+
+    /**
+     * Get the client who wants to rent the vehicle.
+     * @return The client.
+     */
+    public Client getClient() {
+        return this.client;
+    }
+
+    /**
+     * Get the vehicle to rent.
+     * @return The vehicle.
+     */
+    public Vehicle getVehicle() {
+        return this.vehicle;
+    }
+
+    /**
+     * The message is only formatted when it is read.
+     * @return The message of the exception.
+     */
+    @Override
+    public String getMessage() {
+        if(this.reason == RentalOutcome.VEHICLE_ALREADY_RENTED) {
+            return "Vehicle " + this.vehicle + " is already rented.";
+        }
+        if(this.rentedCount == 1) {
+            return "Client " + this.client + " already has a rented vehicle.";
+        }
+        return "Client " + this.client + " already has " + this.rentedCount + " rented vehicles.";
+    }
+}
@@ -3,12 +3,43 @@ package agency.exceptions;
 import agency.Vehicle;
 
 public class UnknownVehicleException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    private final Vehicle vehicle;
 
     /**
      * Create a new UnknownVehicleException when an unknown vehicle is being removed from an agency.
      * @param vehicle The vehicle that is unknown.
      */
     public UnknownVehicleException(Vehicle vehicle) {
-        super("Unknown vehicle: " + vehicle.toString());
+        this.vehicle = vehicle;
+    }
+
+    /**
+     * Create a new UnknownVehicleException, optionally without a stack trace.
+     * Filling the stack trace is the main cost of an exception, and is not needed when it is only used as a result.
+     * @param vehicle The vehicle that is unknown.
+     * @param writableStackTrace false to skip the stack trace.
+     */
+    public UnknownVehicleException(Vehicle vehicle, boolean writableStackTrace) {
+        super(null, null, false, writableStackTrace);
+        this.vehicle = vehicle;
+    }
+
+    /**
+     * Get the vehicle that is unknown.
+     * @return The unknown vehicle.
+     */
+    public Vehicle getVehicle() {
+        return this.vehicle;
+    }
+
+    /**
+     * The message is only formatted when it is read, since formatting the vehicle computes its price.
+     * @return The message of the exception.
+     */
+    @Override
+    public String getMessage() {
+        return "Unknown vehicle: " + this.vehicle;
     }
 }
@@ -0,0 +1,305 @@
+package agency.io;
+
+import agency.ImportReport;
+import agency.RentalAgency;
+import agency.Vehicle;
+import agency.VehicleSpec;
+import agency.VehicleType;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Saves and loads fleets, as CSV or in a compact binary format.
+ * <p>
+ * The binary format is a header ({@code FLT1} magic and vehicle count), the brand and model dictionaries
+ * (count, then length-prefixed UTF-8 strings), and one fixed-width record per vehicle:
+ * brand id (int), model id (int), production year (short), type (byte) and capacity (int).
+ * It is read through a memory-mapped buffer, and the records are decoded only when they are read.
+ */
+public final class FleetSerializer {
+    private static final String CSV_HEADER = "type,brand,model,productionYear,capacity";
+    private static final int MAGIC = 0x464C5431;
+    private static final int RECORD_SIZE = Integer.BYTES * 3 + Short.BYTES + Byte.BYTES;
+    private static final VehicleType[] TYPES = VehicleType.values();
+
+    private FleetSerializer() {
+    }
+
+    /**
+     * Write vehicles as CSV, one line per vehicle after a header line.
+     * @param vehicles The vehicles to write.
+     * @param out The destination.
+     * @throws IOException if the destination cannot be written.
+     * @throws IllegalArgumentException if a vehicle is neither a car nor a motorbike, or if a text field contains a line break.
+     */
+    public static void writeCsv(Collection<? extends Vehicle> vehicles, Writer out) throws IOException, IllegalArgumentException {
+        BufferedWriter writer = out instanceof BufferedWriter buffered ? buffered : new BufferedWriter(out);
+        writer.write(CSV_HEADER);
+        writer.newLine();
+        for(Vehicle vehicle : vehicles) {
+            VehicleSpec spec = VehicleSpec.of(vehicle);
+            writer.write(spec.type().name());
+            writer.write(',');
+            writeCsvField(writer, spec.brand());
+            writer.write(',');
+            writeCsvField(writer, spec.model());
+            writer.write(',');
+            writer.write(Integer.toString(spec.productionYear()));
+            writer.write(',');
+            writer.write(Integer.toString(spec.capacity()));
+            writer.newLine();
+        }
+        writer.flush();
+    }
+
+    /**
+     * Lazily read vehicle descriptions from CSV written by {@link #writeCsv(Collection, Writer)}.
+     * Lines are parsed one at a time while the stream is consumed; closing the stream closes the reader.
+     * @param in The source.
+     * @return The vehicle descriptions, in file order.
+     * @throws UncheckedIOException if the source cannot be read.
+     * @throws IllegalArgumentException if a line is malformed.
+     */
+    public static Stream<VehicleSpec> readCsv(BufferedReader in) {
+        return in.lines()
+                .skip(1)
+                .filter(line -> !line.isEmpty())
+                .map(FleetSerializer::parseCsvLine)
+                .onClose(() -> {
+                    try {
+                        in.close();
+                    } catch(IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+    }
+
+    /**
+     * Load a CSV file into an agency.
+     * @param file The CSV file.
+     * @param agency The agency to fill.
+     * @return The outcome of the import.
+     * @throws IOException if the file cannot be read.
+     * @throws IllegalArgumentException if a line is malformed.
+     */
+    public static ImportReport importCsv(Path file, RentalAgency agency) throws IOException, IllegalArgumentException {
+        try(Stream<VehicleSpec> specs = readCsv(Files.newBufferedReader(file, StandardCharsets.UTF_8))) {
+            return agency.importFleet(specs.collect(Collectors.toList()));
+        } catch(UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Write vehicles in the binary format.
+     * @param vehicles The vehicles to write.
+     * @param file The destination file, replaced if it exists.
+     * @throws IOException if the file cannot be written.
+     * @throws IllegalArgumentException if a vehicle is neither a car nor a motorbike.
+     */
+    public static void writeBinary(Collection<? extends Vehicle> vehicles, Path file) throws IOException, IllegalArgumentException {
+        Map<String, Integer> brands = new LinkedHashMap<>();
+        Map<String, Integer> models = new LinkedHashMap<>();
+        List<VehicleSpec> specs = new ArrayList<>(vehicles.size());
+        for(Vehicle vehicle : vehicles) {
+            VehicleSpec spec = VehicleSpec.of(vehicle);
+            brands.putIfAbsent(spec.brand(), brands.size());
+            models.putIfAbsent(spec.model(), models.size());
+            specs.add(spec);
+        }
+
+        try(DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file), 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeInt(specs.size());
+            writeDictionary(out, brands.keySet());
+            writeDictionary(out, models.keySet());
+            for(VehicleSpec spec : specs) {
+                out.writeInt(brands.get(spec.brand()));
+                out.writeInt(models.get(spec.model()));
+                out.writeShort(spec.productionYear());
+                out.writeByte(spec.type().ordinal());
+                out.writeInt(spec.capacity());
+            }
+        }
+    }
+
+    /**
+     * Read vehicle descriptions from a file written by {@link #writeBinary(Collection, Path)}.
+     * The whole file is checked first, then each record is decoded from the mapped file when it is read,
+     * so the descriptions are never all in memory at once.
+     * @param file The binary file.
+     * @return A read-only list of the vehicle descriptions, in file order.
+     * @throws IOException if the file cannot be read, is not a fleet file or is corrupted.
+     */
+    public static List<VehicleSpec> readBinary(Path file) throws IOException {
+        try(FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            // The mapping stays valid once the channel is closed.
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            try {
+                if(buffer.getInt() != MAGIC) {
+                    throw new IOException("Not a fleet file: " + file);
+                }
+                int count = buffer.getInt();
+                String[] brands = readDictionary(buffer, file);
+                String[] models = readDictionary(buffer, file);
+                if(count < 0 || buffer.remaining() != (long) count * RECORD_SIZE) {
+                    throw new IOException("Truncated fleet file: " + file);
+                }
+                Records records = new Records(buffer.slice(), count, brands, models);
+                records.check(file);
+                return records;
+            } catch(RuntimeException e) {
+                throw new IOException("Corrupted fleet file: " + file, e);
+            }
+        }
+    }
+
+    /**
+     * Load a binary fleet file into an agency.
+     * The records are decoded one at a time while the agency adds them.
+     * @param file The binary file.
+     * @param agency The agency to fill.
+     * @return The outcome of the import.
+     * @throws IOException if the file cannot be read, is not a fleet file or is corrupted.
+     */
+    public static ImportReport importBinary(Path file, RentalAgency agency) throws IOException {
+        return agency.importFleet(readBinary(file));
+    }
+
+    private static void writeCsvField(Writer writer, String value) throws IOException {
+        if(value.indexOf('\n') >= 0 || value.indexOf('\r') >= 0) {
+            throw new IllegalArgumentException("Line breaks are not supported in CSV fields: " + value);
+        }
+        if(value.indexOf(',') < 0 && value.indexOf('"') < 0) {
+            writer.write(value);
+            return;
+        }
+        writer.write('"');
+        writer.write(value.replace("\"", "\"\""));
+        writer.write('"');
+    }
+
+    private static VehicleSpec parseCsvLine(String line) {
+        List<String> fields = new ArrayList<>(5);
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        for(int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if(quoted) {
+                if(c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    field.append('"');
+                    i++;
+                } else if(c == '"') {
+                    quoted = false;
+                } else {
+                    field.append(c);
+                }
+            } else if(c == '"') {
+                quoted = true;
+            } else if(c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        fields.add(field.toString());
+        if(fields.size() != 5 || quoted) {
+            throw new IllegalArgumentException("Malformed CSV line: " + line);
+        }
+        try {
+            return new VehicleSpec(VehicleType.valueOf(fields.get(0)), fields.get(1), fields.get(2),
+                    Integer.parseInt(fields.get(3)), Integer.parseInt(fields.get(4)));
+        } catch(IllegalArgumentException e) {
+            throw new IllegalArgumentException("Malformed CSV line: " + line, e);
+        }
+    }
+
+    private static void writeDictionary(DataOutputStream out, Collection<String> values) throws IOException {
+        out.writeInt(values.size());
+        for(String value : values) {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+    }
+
+    private static String[] readDictionary(ByteBuffer buffer, Path file) throws IOException {
+        int count = buffer.getInt();
+        // Each value takes at least its length, so a larger count is corrupted and must not be allocated.
+        if(count < 0 || count > buffer.remaining() / Integer.BYTES) {
+            throw new IOException("Corrupted fleet file: " + file);
+        }
+        String[] values = new String[count];
+        for(int i = 0; i < values.length; i++) {
+            int length = buffer.getInt();
+            if(length < 0 || length > buffer.remaining()) {
+                throw new IOException("Corrupted fleet file: " + file);
+            }
+            byte[] bytes = new byte[length];
+            buffer.get(bytes);
+            values[i] = new String(bytes, StandardCharsets.UTF_8);
+        }
+        return values;
+    }
+
+    /**
+     * The fixed-width records of a fleet file, decoded on access from the mapped buffer.
+     */
+    private static final class Records extends AbstractList<VehicleSpec> implements RandomAccess {
+        private final ByteBuffer buffer;
+        private final int count;
+        private final String[] brands;
+        private final String[] models;
+
+        Records(ByteBuffer buffer, int count, String[] brands, String[] models) {
+            this.buffer = buffer;
+            this.count = count;
+            this.brands = brands;
+            this.models = models;
+        }
+
+        /**
+         * Check every dictionary id and type, so that decoding a record never fails afterwards.
+         */
+        void check(Path file) throws IOException {
+            for(int i = 0; i < this.count; i++) {
+                int offset = i * RECORD_SIZE;
+                int brand = this.buffer.getInt(offset);
+                int model = this.buffer.getInt(offset + Integer.BYTES);
+                int type = this.buffer.get(offset + Integer.BYTES * 2 + Short.BYTES);
+                if(brand < 0 || brand >= this.brands.length || model < 0 || model >= this.models.length
+                        || type < 0 || type >= TYPES.length) {
+                    throw new IOException("Corrupted fleet file: " + file);
+                }
+            }
+        }
+
+        @Override
+        public int size() {
+            return this.count;
+        }
+
+        @Override
+        public VehicleSpec get(int index) {
+            Objects.checkIndex(index, this.count);
+            int offset = index * RECORD_SIZE;
+            // Absolute reads do not move the buffer, so the list can be read from several threads.
+            String brand = this.brands[this.buffer.getInt(offset)];
+            String model = this.models[this.buffer.getInt(offset + Integer.BYTES)];
+            int productionYear = this.buffer.getShort(offset + Integer.BYTES * 2);
+            VehicleType type = TYPES[this.buffer.get(offset + Integer.BYTES * 2 + Short.BYTES)];
+            return new VehicleSpec(type, brand, model, productionYear, this.buffer.getInt(offset + Integer.BYTES * 2 + Short.BYTES + Byte.BYTES));
+        }
+    }
+}
@@ -0,0 +1,312 @@
+package agency.journal;
+
+import agency.Client;
+import agency.RentalAgency;
+import agency.Vehicle;
+import agency.exceptions.UnknownVehicleException;
+import util.TimeProvider;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * A rental agency whose rentals survive a crash.
+ * <p>
+ * Every rental and return is applied to the agency and appended to a {@link RentalJournal} under one lock, so the
+ * journal order matches the order of the operations. The caller then waits for the record to be on disk outside
+ * the lock, which lets concurrent bookings share one fsync. The journal is compacted by a snapshot every
+ * {@code snapshotInterval} records, so recovery only replays a short log.
+ * <p>
+ * An operation is only applied while the journal can still be written. If its record then fails to reach the disk,
+ * the operations which are not on disk are undone in reverse order, so the agency keeps matching what a restart
+ * would replay.
+ */
+public class DurableRentalAgency implements Closeable {
+    private static final int DEFAULT_SNAPSHOT_INTERVAL = 10_000;
+
+    private final RentalAgency agency;
+    private final RentalJournal journal;
+    private final int snapshotInterval;
+    private final Object lock;
+    private final Deque<Unsynced> unsynced;
+    private IOException compactionFailure;
+
+    /**
+     * An operation applied to the agency whose record may not be on disk yet.
+     * @param durable The future completed once the record is on disk.
+     * @param undo The action reverting the operation.
+     */
+    private record Unsynced(CompletableFuture<Void> durable, Runnable undo) {
+    }
+
+    private DurableRentalAgency(RentalAgency agency, RentalJournal journal, int snapshotInterval) {
+        this.agency = agency;
+        this.journal = journal;
+        this.snapshotInterval = snapshotInterval;
+        this.lock = new Object();
+        this.unsynced = new ArrayDeque<>();
+    }
+
+    /**
+     * Open the journal of a directory and restore its rentals into an agency.
+     * @param directory The directory of the journal, created if needed.
+     * @param agency The agency holding the fleet, without any rental.
+     * @return The durable agency.
+     * @throws IOException if the journal cannot be read or opened.
+     */
+    public static DurableRentalAgency open(Path directory, RentalAgency agency) throws IOException {
+        return open(directory, agency, DEFAULT_SNAPSHOT_INTERVAL);
+    }
+
+    /**
+     * Open the journal of a directory and restore its rentals into an agency.
+     * Rentals of vehicles which are no longer in the fleet are dropped.
+     * @param directory The directory of the journal, created if needed.
+     * @param agency The agency holding the fleet, without any rental, and configured with its rental limit.
+     * @param snapshotInterval The number of records after which the journal is compacted.
+     * @return The durable agency.
+     * @throws IOException if the journal cannot be read or opened.
+     * @throws IllegalArgumentException if the snapshot interval is less than 1.
+     */
+    public static DurableRentalAgency open(Path directory, RentalAgency agency, int snapshotInterval) throws IOException, IllegalArgumentException {
+        if(snapshotInterval < 1) {
+            throw new IllegalArgumentException("Snapshot interval must be at least 1. " + snapshotInterval + " is invalid.");
+        }
+        RentalJournal journal = RentalJournal.open(directory);
+        RentalJournal.Recovery recovery = journal.getRecovery();
+        int currentYear = TimeProvider.currentYearValue();
+        for(JournalEntry rental : recovery.snapshot()) {
+            replay(agency, rental, currentYear);
+        }
+        for(JournalEntry entry : recovery.entries()) {
+            replay(agency, entry, currentYear);
+        }
+        return new DurableRentalAgency(agency, journal, snapshotInterval);
+    }
+
+    /**
+     * Rent a vehicle to a client. The rental is on disk when this method returns.
+     * @param client The client who wants to rent a vehicle.
+     * @param vehicle The vehicle to rent.
+     * @return The daily rental price of the vehicle.
+     * @throws UnknownVehicleException if the vehicle is not in the list.
+     * @throws IllegalStateException if the client already rents as many vehicles as the limit of the agency
+     * or if the vehicle is already rented.
+     * @throws IOException if the rental cannot be written to the journal.
+     */
+    public double rentVehicle(Client client, Vehicle vehicle) throws UnknownVehicleException, IllegalStateException, IOException {
+        double price;
+        CompletableFuture<Void> durable;
+        synchronized(this.lock) {
+            this.journal.checkWritable();
+            price = this.agency.rentVehicle(client, vehicle);
+            durable = this.journal.appendRent(client, vehicle);
+            this.track(durable, () -> this.agency.returnVehicle(client, vehicle));
+            this.compactIfNeeded();
+        }
+        this.awaitDurable(durable);
+        return price;
+    }
+
+    /**
+     * Return every vehicle rented by a client. The return is on disk when this method returns.
+     * @param client The client who wants to return the vehicles.
+     * @throws IOException if the return cannot be written to the journal.
+     */
+    public void returnVehicle(Client client) throws IOException {
+        CompletableFuture<Void> durable;
+        synchronized(this.lock) {
+            if(!this.agency.aVehicleIsRentedBy(client)) {
+                return;
+            }
+            this.journal.checkWritable();
+            List<Vehicle> returned = new ArrayList<>(this.agency.vehiclesRentedBy(client));
+            this.agency.returnVehicle(client);
+            durable = this.journal.appendReturn(client, null);
+            this.track(durable, () -> {
+                for(Vehicle vehicle : returned) {
+                    this.agency.tryRentVehicle(client, vehicle);
+                }
+            });
+            this.compactIfNeeded();
+        }
+        this.awaitDurable(durable);
+    }
+
+    /**
+     * Return one of the vehicles rented by a client. The return is on disk when this method returns.
+     * @param client The client who wants to return the vehicle.
+     * @param vehicle The vehicle to return.
+     * @return true if the vehicle was rented by the client and is returned, false otherwise.
+     * @throws IOException if the return cannot be written to the journal.
+     */
+    public boolean returnVehicle(Client client, Vehicle vehicle) throws IOException {
+        CompletableFuture<Void> durable;
+        synchronized(this.lock) {
+            if(!client.equals(this.agency.renterOf(vehicle))) {
+                return false;
+            }
+            this.journal.checkWritable();
+            this.agency.returnVehicle(client, vehicle);
+            durable = this.journal.appendReturn(client, vehicle);
+            this.track(durable, () -> this.agency.tryRentVehicle(client, vehicle));
+            this.compactIfNeeded();
+        }
+        this.awaitDurable(durable);
+        return true;
+    }
+
+    /**
+     * Test if a vehicle is rented by a client.
+     * @param client The client to test.
+     * @return true if the client has a rented vehicle, false otherwise.
+     */
+    public boolean aVehicleIsRentedBy(Client client) {
+        synchronized(this.lock) {
+            return this.agency.aVehicleIsRentedBy(client);
+        }
+    }
+
+    /**
+     * Get the vehicles rented by a client.
+     * @param client The client.
+     * @return A copy of the vehicles rented by the client, in rental order.
+     */
+    public Set<Vehicle> vehiclesRentedBy(Client client) {
+        synchronized(this.lock) {
+            return new LinkedHashSet<>(this.agency.vehiclesRentedBy(client));
+        }
+    }
+
+    /**
+     * Test if a vehicle is rented.
+     * @param vehicle The vehicle to test.
+     * @return true if the vehicle is rented, false otherwise.
+     */
+    public boolean vehicleIsRented(Vehicle vehicle) {
+        synchronized(this.lock) {
+            return this.agency.vehicleIsRented(vehicle);
+        }
+    }
+
+    /**
+     * Get the list of rented vehicles.
+     * @return A copy of the rented vehicles.
+     */
+    public Collection<Vehicle> allRentedVehicles() {
+        synchronized(this.lock) {
+            return List.copyOf(this.agency.allRentedVehicles());
+        }
+    }
+
+    /**
+     * Get the underlying agency, to manage the fleet.
+     * Rentals must go through this class, or they will not be journaled.
+     * @return The underlying agency.
+     */
+    public RentalAgency getAgency() {
+        return this.agency;
+    }
+
+    /**
+     * Write a snapshot of the rentals and empty the journal.
+     * @throws IOException if the snapshot cannot be written.
+     */
+    public void snapshot() throws IOException {
+        synchronized(this.lock) {
+            this.journal.snapshot(this.agency.getRentals());
+        }
+    }
+
+    /**
+     * Get the failure of the latest automatic compaction of the journal.
+     * A failed compaction loses nothing, since the log still holds every record, and it is retried at the next operation.
+     * @return The failure, or null if the latest compaction succeeded or none was needed yet.
+     */
+    public IOException getCompactionFailure() {
+        synchronized(this.lock) {
+            return this.compactionFailure;
+        }
+    }
+
+    /**
+     * Wait for the pending records and close the journal.
+     * @throws IOException if the pending records cannot be written.
+     */
+    @Override
+    public void close() throws IOException {
+        synchronized(this.lock) {
+            this.journal.close();
+        }
+    }
+
+    private void compactIfNeeded() {
+        if(this.journal.recordsSinceSnapshot() < this.snapshotInterval) {
+            return;
+        }
+        try {
+            this.journal.snapshot(this.agency.getRentals());
+            this.compactionFailure = null;
+        } catch(IOException e) {
+            // The log still holds every record, so the snapshot is retried at the next operation.
+            this.compactionFailure = e;
+        }
+    }
+
+    private void track(CompletableFuture<Void> durable, Runnable undo) {
+        // Records reach the disk in order, so the synced operations are at the head of the queue.
+        while(!this.unsynced.isEmpty() && isSynced(this.unsynced.peekFirst().durable())) {
+            this.unsynced.pollFirst();
+        }
+        this.unsynced.addLast(new Unsynced(durable, undo));
+    }
+
+    private static boolean isSynced(CompletableFuture<Void> durable) {
+        return durable.isDone() && !durable.isCompletedExceptionally();
+    }
+
+    private void awaitDurable(CompletableFuture<Void> durable) throws IOException {
+        try {
+            RentalJournal.awaitDurable(durable);
+        } catch(IOException | RuntimeException e) {
+            this.rollBack();
+            throw e;
+        }
+    }
+
+    /**
+     * Undo the operations whose record failed, latest first.
+     * Once a record fails, the journal fails every later one, so the failed operations are the tail of the queue.
+     */
+    private void rollBack() {
+        synchronized(this.lock) {
+            while(!this.unsynced.isEmpty()) {
+                Unsynced last = this.unsynced.peekLast();
+                // The writer fails the records queued after a failure without any I/O, so this wait is short.
+                last.durable().handle((value, error) -> null).join();
+                if(!last.durable().isCompletedExceptionally()) {
+                    return;
+                }
+                this.unsynced.pollLast();
+                last.undo().run();
+            }
+        }
+    }
+
+    private static void replay(RentalAgency agency, JournalEntry entry, int currentYear) {
+        try {
+            if(entry.operation() == JournalEntry.Operation.RENT) {
+                agency.rentVehicle(entry.client(), entry.vehicle().toVehicle(currentYear));
+            } else if(entry.vehicle() == null) {
+                agency.returnVehicle(entry.client());
+            } else {
+                agency.returnVehicle(entry.client(), entry.vehicle().toVehicle(currentYear));
+            }
+        } catch(UnknownVehicleException | IllegalArgumentException | IllegalStateException e) {
+            // The vehicle was removed from the fleet since the rental was journaled.
+        }
+    }
+}
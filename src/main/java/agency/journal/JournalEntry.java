@@ -0,0 +1,22 @@
+package agency.journal;
+
+import agency.Client;
+import agency.VehicleSpec;
+
+/**
+ * A rental operation read back from a {@link RentalJournal}.
+ * @param sequence The position of the operation in the journal.
+ * @param operation The kind of operation.
+ * @param client The client who rented or returned vehicles.
+ * @param vehicle The rented or returned vehicle, or null when every vehicle of the client is returned.
+ */
+public record JournalEntry(long sequence, Operation operation, Client client, VehicleSpec vehicle) {
+
+    /**
+     * The kinds of journaled operations.
+     */
+    public enum Operation {
+        RENT,
+        RETURN
+    }
+}
@@ -0,0 +1,432 @@
+package agency.journal;
+
+import agency.Client;
+import agency.Vehicle;
+import agency.VehicleSpec;
+import agency.VehicleType;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.zip.CRC32;
+
+/**
+ * An append-only journal of rentals, compacted by snapshots.
+ * <p>
+ * Records are appended by a single writer thread. Every pass of the writer writes all the records queued
+ * since the previous pass and forces them to disk with one fsync (group commit), so concurrent bookings share
+ * the cost of syncing. Each record is {@code length, CRC32, payload}, so a record torn by a crash is detected
+ * and dropped on recovery.
+ */
+public class RentalJournal implements Closeable {
+    static final String LOG_FILE = "rentals.log";
+    static final String SNAPSHOT_FILE = "rentals.snapshot";
+    private static final int SNAPSHOT_MAGIC = 0x524E5331;
+    private static final byte RENT = 1;
+    private static final byte RETURN = 2;
+
+    private final Path directory;
+    private final FileChannel log;
+    private final Recovery recovery;
+    private final Thread writer;
+    private final List<Pending> pending;
+    private CompletableFuture<Void> lastAppend;
+    private long nextSequence;
+    private long recordsSinceSnapshot;
+    private IOException failure;
+    private boolean closed;
+
+    private record Pending(ByteBuffer record, CompletableFuture<Void> durable) {
+    }
+
+    /**
+     * The state found on disk when a journal is opened.
+     * @param snapshot The rentals of the latest snapshot.
+     * @param entries The operations logged after the snapshot, in order.
+     */
+    public record Recovery(List<JournalEntry> snapshot, List<JournalEntry> entries) {
+    }
+
+    private RentalJournal(Path directory, Recovery recovery, long nextSequence) throws IOException {
+        this.directory = directory;
+        this.recovery = recovery;
+        this.log = FileChannel.open(directory.resolve(LOG_FILE), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        this.pending = new ArrayList<>();
+        this.lastAppend = CompletableFuture.completedFuture(null);
+        this.nextSequence = nextSequence;
+        this.recordsSinceSnapshot = recovery.entries().size();
+        this.writer = new Thread(this::writeLoop, "rental-journal-writer");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    /**
+     * Read the journal of a directory, dropping a record torn by a crash, then open it for appending.
+     * The state found on disk is available from {@link #getRecovery()}.
+     * @param directory The directory of the journal, created if needed.
+     * @return The journal, ready for appending.
+     * @throws IOException if the journal cannot be read or opened.
+     */
+    public static RentalJournal open(Path directory) throws IOException {
+        Files.createDirectories(directory);
+        List<JournalEntry> snapshot = new ArrayList<>();
+        long snapshotSequence = readSnapshot(directory.resolve(SNAPSHOT_FILE), snapshot);
+        List<JournalEntry> entries = new ArrayList<>();
+        long lastSequence = readLog(directory.resolve(LOG_FILE), snapshotSequence, entries);
+        return new RentalJournal(directory, new Recovery(snapshot, entries), lastSequence + 1);
+    }
+
+    /**
+     * Get the state found on disk when the journal was opened, to be replayed by the caller.
+     * @return The recovered snapshot and log entries.
+     */
+    public Recovery getRecovery() {
+        return this.recovery;
+    }
+
+    /**
+     * Queue a rental.
+     * @param client The client renting the vehicle.
+     * @param vehicle The rented vehicle.
+     * @return A future completed once the rental is on disk.
+     */
+    public synchronized CompletableFuture<Void> appendRent(Client client, Vehicle vehicle) {
+        return this.append(RENT, client, VehicleSpec.of(vehicle));
+    }
+
+    /**
+     * Queue a return.
+     * @param client The client returning vehicles.
+     * @param vehicle The returned vehicle, or null if every vehicle of the client is returned.
+     * @return A future completed once the return is on disk.
+     */
+    public synchronized CompletableFuture<Void> appendReturn(Client client, Vehicle vehicle) {
+        return this.append(RETURN, client, vehicle == null ? null : VehicleSpec.of(vehicle));
+    }
+
+    /**
+     * Check that records can still be appended, before applying an operation that must be journaled.
+     * Once a record failed to be written, every later record fails too, since the log may have lost it.
+     * @throws IOException if a previous record could not be written.
+     * @throws IllegalStateException if the journal is closed.
+     */
+    public synchronized void checkWritable() throws IOException, IllegalStateException {
+        if(this.closed) {
+            throw new IllegalStateException("The journal is closed.");
+        }
+        if(this.failure != null) {
+            throw this.failure;
+        }
+    }
+
+    /**
+     * Get the number of records logged since the latest snapshot.
+     * @return The number of records in the log.
+     */
+    public synchronized long recordsSinceSnapshot() {
+        return this.recordsSinceSnapshot;
+    }
+
+    /**
+     * Write a snapshot of the rentals and empty the log.
+     * No record may be appended until this method returns.
+     * @param rentals The current rentals, which must include every appended record.
+     * @throws IOException if the snapshot cannot be written.
+     */
+    public void snapshot(Map<Vehicle, Client> rentals) throws IOException {
+        CompletableFuture<Void> flushed;
+        long lastSequence;
+        synchronized(this) {
+            flushed = this.lastAppend;
+            lastSequence = this.nextSequence - 1;
+        }
+        awaitDurable(flushed);
+
+        Path snapshot = this.directory.resolve(SNAPSHOT_FILE);
+        Path temporary = this.directory.resolve(SNAPSHOT_FILE + ".tmp");
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(SNAPSHOT_MAGIC);
+        out.writeLong(lastSequence);
+        out.writeInt(rentals.size());
+        for(Map.Entry<Vehicle, Client> rental : rentals.entrySet()) {
+            writeClient(out, rental.getValue());
+            writeVehicle(out, VehicleSpec.of(rental.getKey()));
+        }
+        CRC32 crc = new CRC32();
+        crc.update(bytes.toByteArray());
+        out.writeLong(crc.getValue());
+        try(FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            writeFully(channel, ByteBuffer.wrap(bytes.toByteArray()));
+            channel.force(true);
+        }
+        Files.move(temporary, snapshot, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        // Records covered by the snapshot are skipped on recovery, so a crash before the truncation is harmless.
+        synchronized(this) {
+            this.log.truncate(0);
+            this.log.force(true);
+            this.recordsSinceSnapshot = 0;
+        }
+    }
+
+    /**
+     * Wait for the queued records and stop the writer thread.
+     * @throws IOException if the queued records cannot be written.
+     */
+    @Override
+    public void close() throws IOException {
+        CompletableFuture<Void> flushed;
+        synchronized(this) {
+            if(this.closed) {
+                return;
+            }
+            this.closed = true;
+            flushed = this.lastAppend;
+            this.notifyAll();
+        }
+        try {
+            awaitDurable(flushed);
+            this.writer.join();
+        } catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            this.log.close();
+        }
+    }
+
+    /**
+     * Wait until a queued record is on disk.
+     * @param durable The future returned when the record was queued.
+     * @throws IOException if the record could not be written.
+     */
+    public static void awaitDurable(CompletableFuture<Void> durable) throws IOException {
+        try {
+            durable.join();
+        } catch(CompletionException e) {
+            if(e.getCause() instanceof IOException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    private CompletableFuture<Void> append(byte operation, Client client, VehicleSpec vehicle) {
+        if(this.closed) {
+            throw new IllegalStateException("The journal is closed.");
+        }
+        CompletableFuture<Void> durable = new CompletableFuture<>();
+        if(this.failure != null) {
+            durable.completeExceptionally(this.failure);
+            return durable;
+        }
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeByte(operation);
+            out.writeLong(this.nextSequence++);
+            writeClient(out, client);
+            out.writeBoolean(vehicle != null);
+            if(vehicle != null) {
+                writeVehicle(out, vehicle);
+            }
+            byte[] payload = bytes.toByteArray();
+            CRC32 crc = new CRC32();
+            crc.update(payload);
+            ByteBuffer record = ByteBuffer.allocate(Integer.BYTES * 2 + payload.length);
+            record.putInt(payload.length).putInt((int) crc.getValue()).put(payload).flip();
+            this.pending.add(new Pending(record, durable));
+        } catch(IOException e) {
+            durable.completeExceptionally(e);
+            return durable;
+        }
+        this.recordsSinceSnapshot++;
+        this.lastAppend = durable;
+        this.notifyAll();
+        return durable;
+    }
+
+    private void writeLoop() {
+        List<Pending> batch = new ArrayList<>();
+        while(true) {
+            IOException failure;
+            synchronized(this) {
+                while(this.pending.isEmpty() && !this.closed) {
+                    try {
+                        this.wait();
+                    } catch(InterruptedException e) {
+                        // Nothing will write the queued records any more, so they and the next ones fail.
+                        this.failure = new InterruptedIOException("The journal writer was interrupted.");
+                        this.failAll(this.pending, this.failure);
+                        return;
+                    }
+                }
+                if(this.pending.isEmpty()) {
+                    return;
+                }
+                batch.addAll(this.pending);
+                this.pending.clear();
+                failure = this.failure;
+            }
+            // Records queued after a failure are not written, the log may have lost the ones before them.
+            if(failure == null) {
+                // Bookings keep queueing while this batch is synced, and the next pass syncs them all at once.
+                long syncedSize = -1;
+                try {
+                    syncedSize = this.log.size();
+                    for(Pending record : batch) {
+                        writeFully(this.log, record.record());
+                    }
+                    this.log.force(false);
+                } catch(IOException e) {
+                    if(syncedSize >= 0) {
+                        this.discardFrom(syncedSize);
+                    }
+                    synchronized(this) {
+                        this.failure = e;
+                    }
+                    failure = e;
+                }
+            }
+            if(failure != null) {
+                this.failAll(batch, failure);
+                continue;
+            }
+            for(Pending record : batch) {
+                record.durable().complete(null);
+            }
+            batch.clear();
+        }
+    }
+
+    /**
+     * Cut off a batch which failed but may have partly reached the disk,
+     * so that a restart does not replay operations reported as failed.
+     * @param syncedSize The size of the log before the batch.
+     */
+    private void discardFrom(long syncedSize) {
+        // An interrupt closes the channel, and would close the repair channel too.
+        Thread.interrupted();
+        try(FileChannel channel = FileChannel.open(this.directory.resolve(LOG_FILE), StandardOpenOption.WRITE)) {
+            channel.truncate(syncedSize);
+            channel.force(true);
+        } catch(IOException e) {
+            // The disk is failing, a restart may replay part of the failed batch.
+        }
+    }
+
+    private void failAll(List<Pending> records, IOException failure) {
+        for(Pending record : records) {
+            record.durable().completeExceptionally(failure);
+        }
+        records.clear();
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while(buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    private static long readSnapshot(Path file, List<JournalEntry> rentals) throws IOException {
+        if(!Files.exists(file)) {
+            return 0;
+        }
+        byte[] bytes = Files.readAllBytes(file);
+        if(bytes.length < Long.BYTES) {
+            throw new IOException("Corrupted snapshot: " + file);
+        }
+        CRC32 crc = new CRC32();
+        crc.update(bytes, 0, bytes.length - Long.BYTES);
+        if(ByteBuffer.wrap(bytes, bytes.length - Long.BYTES, Long.BYTES).getLong() != crc.getValue()) {
+            throw new IOException("Corrupted snapshot: " + file);
+        }
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+        if(in.readInt() != SNAPSHOT_MAGIC) {
+            throw new IOException("Not a rental snapshot: " + file);
+        }
+        long lastSequence = in.readLong();
+        int count = in.readInt();
+        for(int i = 0; i < count; i++) {
+            rentals.add(new JournalEntry(lastSequence, JournalEntry.Operation.RENT, readClient(in), readVehicle(in)));
+        }
+        return lastSequence;
+    }
+
+    private static long readLog(Path file, long snapshotSequence, List<JournalEntry> entries) throws IOException {
+        if(!Files.exists(file)) {
+            return snapshotSequence;
+        }
+        long lastSequence = snapshotSequence;
+        try(FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            long valid = 0;
+            while(buffer.remaining() >= Integer.BYTES * 2) {
+                int length = buffer.getInt();
+                int expectedCrc = buffer.getInt();
+                if(length <= 0 || length > buffer.remaining()) {
+                    break;
+                }
+                byte[] payload = new byte[length];
+                buffer.get(payload);
+                CRC32 crc = new CRC32();
+                crc.update(payload);
+                if((int) crc.getValue() != expectedCrc) {
+                    break;
+                }
+                JournalEntry entry = readEntry(payload);
+                if(entry.sequence() > snapshotSequence) {
+                    entries.add(entry);
+                }
+                lastSequence = Math.max(lastSequence, entry.sequence());
+                valid = buffer.position();
+            }
+            // Anything after the last valid record was torn by a crash and was never acknowledged.
+            if(valid < channel.size()) {
+                channel.truncate(valid);
+                channel.force(true);
+            }
+        }
+        return lastSequence;
+    }
+
+    private static JournalEntry readEntry(byte[] payload) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+        byte operation = in.readByte();
+        long sequence = in.readLong();
+        Client client = readClient(in);
+        VehicleSpec vehicle = in.readBoolean() ? readVehicle(in) : null;
+        return new JournalEntry(sequence, operation == RENT ? JournalEntry.Operation.RENT : JournalEntry.Operation.RETURN, client, vehicle);
+    }
+
+    private static void writeClient(DataOutputStream out, Client client) throws IOException {
+        out.writeLong(client.getId());
+        out.writeUTF(client.getFirstName());
+        out.writeUTF(client.getLastName());
+        out.writeInt(client.getBirthYear());
+    }
+
+    private static Client readClient(DataInputStream in) throws IOException {
+        return new Client(in.readLong(), in.readUTF(), in.readUTF(), in.readInt());
+    }
+
+    private static void writeVehicle(DataOutputStream out, VehicleSpec vehicle) throws IOException {
+        out.writeByte(vehicle.type().ordinal());
+        out.writeUTF(vehicle.brand());
+        out.writeUTF(vehicle.model());
+        out.writeInt(vehicle.productionYear());
+        out.writeInt(vehicle.capacity());
+    }
+
+    private static VehicleSpec readVehicle(DataInputStream in) throws IOException {
+        VehicleType type = VehicleType.values()[in.readByte()];
+        return new VehicleSpec(type, in.readUTF(), in.readUTF(), in.readInt(), in.readInt());
+    }
+}
@@ -0,0 +1,180 @@
+package agency.service;
+
+import agency.Client;
+import agency.ConcurrentRentalAgency;
+import agency.RentalOutcome;
+import agency.Vehicle;
+
+import java.lang.reflect.Method;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+/**
+ * An asynchronous front-end of a {@link ConcurrentRentalAgency}, which runs every request on its own thread.
+ * <p>
+ * Requests on the same client or the same vehicle are queued behind each other and applied in submission order,
+ * while unrelated requests run in parallel. Each key only keeps the future of its last request, and a request
+ * starts once the previous requests of all its keys are done.
+ * <p>
+ * By default requests run on virtual threads, so that a request blocked on I/O does not hold a platform thread.
+ * Virtual threads need Java 21; on older runtimes requests run on a cached pool of platform threads instead.
+ */
+public class BookingService implements AutoCloseable {
+    private final ConcurrentRentalAgency agency;
+    private final ExecutorService executor;
+    private final Map<Object, CompletableFuture<?>> tails;
+    private final Map<Client, List<Vehicle>> queuedRentals;
+
+    /**
+     * Create a booking service running every request on its own virtual thread.
+     * @param agency The agency handling the requests.
+     */
+    public BookingService(ConcurrentRentalAgency agency) {
+        this(agency, newThreadPerTaskExecutor());
+    }
+
+    /**
+     * Create a booking service running requests on an executor, for instance a fixed pool of platform threads.
+     * @param agency The agency handling the requests.
+     * @param executor The executor running the requests, shut down by {@link #close()}.
+     */
+    public BookingService(ConcurrentRentalAgency agency, ExecutorService executor) {
+        this.agency = agency;
+        this.executor = executor;
+        this.tails = new ConcurrentHashMap<>();
+        this.queuedRentals = new HashMap<>();
+    }
+
+    /**
+     * Test if virtual threads are available on this runtime.
+     * @return true if the default executor runs requests on virtual threads, false otherwise.
+     */
+    public static boolean virtualThreadsAvailable() {
+        ExecutorService virtual = virtualThreadExecutor();
+        if(virtual == null) {
+            return false;
+        }
+        virtual.shutdown();
+        return true;
+    }
+
+    /**
+     * Rent a vehicle to a client, after the pending requests of the client and of the vehicle.
+     * @param client The client who wants to rent a vehicle.
+     * @param vehicle The vehicle to rent.
+     * @return A future of {@link RentalOutcome#RENTED} if the vehicle is rented, or of the reason why it cannot be rented.
+     */
+    public CompletableFuture<RentalOutcome> rent(Client client, Vehicle vehicle) {
+        CompletableFuture<RentalOutcome> result;
+        synchronized(this.tails) {
+            result = this.submit(() -> this.agency.tryRentVehicle(client, vehicle), client, vehicle);
+            this.queuedRentals.computeIfAbsent(client, key -> new ArrayList<>()).add(vehicle);
+        }
+        result.whenComplete((value, error) -> {
+            synchronized(this.tails) {
+                List<Vehicle> queued = this.queuedRentals.get(client);
+                queued.remove(vehicle);
+                if(queued.isEmpty()) {
+                    this.queuedRentals.remove(client);
+                }
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Return the vehicle rented by a client, after the pending requests of the client and of the vehicles it frees.
+     * Later requests on these vehicles wait for the return.
+     * @param client The client who wants to return a vehicle.
+     * @return A future completed once the vehicle is returned.
+     */
+    public CompletableFuture<Void> returnVehicle(Client client) {
+        synchronized(this.tails) {
+            // Queued rentals are only forgotten under this lock once applied, so every vehicle of the client is found.
+            Set<Object> keys = new LinkedHashSet<>();
+            keys.add(client);
+            keys.addAll(this.agency.vehiclesRentedBy(client));
+            keys.addAll(this.queuedRentals.getOrDefault(client, List.of()));
+            return this.submit(() -> {
+                this.agency.returnVehicle(client);
+                return null;
+            }, keys.toArray());
+        }
+    }
+
+    /**
+     * Select the vehicles satisfying a criterion. Selections are not queued behind other requests.
+     * @param criterion The criterion that the selected vehicles must satisfy.
+     * @return A future of the selected vehicles.
+     */
+    public CompletableFuture<List<Vehicle>> select(Predicate<Vehicle> criterion) {
+        return CompletableFuture.supplyAsync(() -> this.agency.select(criterion), this.executor);
+    }
+
+    /**
+     * Stop accepting requests, and wait for the submitted ones.
+     */
+    @Override
+    public void close() {
+        this.executor.shutdown();
+        try {
+            while(!this.executor.awaitTermination(1, TimeUnit.MINUTES)) {
+                // Keep waiting, the submitted requests must all complete.
+            }
+        } catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private <T> CompletableFuture<T> submit(Supplier<T> request, Object... keys) {
+        CompletableFuture<T> result;
+        // Keys are chained under one short lock, so two requests can never wait for each other.
+        synchronized(this.tails) {
+            CompletableFuture<?>[] previous = new CompletableFuture<?>[keys.length];
+            for(int i = 0; i < keys.length; i++) {
+                previous[i] = this.tails.get(keys[i]);
+            }
+            // A failed request does not prevent the next ones on the same keys from running.
+            result = CompletableFuture.allOf(nonNull(previous))
+                    .handle((value, error) -> null)
+                    .thenApplyAsync(ignored -> request.get(), this.executor);
+            for(Object key : keys) {
+                this.tails.put(key, result);
+            }
+        }
+        // Once a request is done, its keys are forgotten unless another request was queued behind it.
+        result.whenComplete((value, error) -> {
+            for(Object key : keys) {
+                this.tails.remove(key, result);
+            }
+        });
+        return result;
+    }
+
+    private static CompletableFuture<?>[] nonNull(CompletableFuture<?>[] futures) {
+        int count = 0;
+        for(CompletableFuture<?> future : futures) {
+            if(future != null) {
+                futures[count++] = future;
+            }
+        }
+        return count == futures.length ? futures : Arrays.copyOf(futures, count);
+    }
+
+    private static ExecutorService newThreadPerTaskExecutor() {
+        ExecutorService virtual = virtualThreadExecutor();
+        return virtual != null ? virtual : Executors.newCachedThreadPool();
+    }
+
+    // Looked up by reflection so that the code still compiles and runs on Java 17.
+    private static ExecutorService virtualThreadExecutor() {
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch(ReflectiveOperationException e) {
+            return null;
+        }
+    }
+}
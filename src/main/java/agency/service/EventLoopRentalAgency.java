@@ -0,0 +1,317 @@
+package agency.service;
+
+import agency.Client;
+import agency.RentalAgency;
+import agency.RentalOutcome;
+import agency.Vehicle;
+import util.PersistentHashMap;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * A rental agency owned by a single writer thread.
+ * <p>
+ * Rentals, returns and fleet changes are queued as commands in a bounded buffer. The writer drains the buffer
+ * in batches and applies them to a plain {@link RentalAgency} without any lock. After a batch which changed
+ * the agency it publishes an immutable snapshot of the fleet and of the rentals, then completes the futures
+ * of the batch, so a caller reading after its future completed sees its own change. The rentals are kept in
+ * a persistent map updated by each applied command, so a snapshot costs no copy. Reads only use the latest
+ * snapshot and never wait for the writer. When the buffer is full, callers wait for room, which bounds the queueing delay.
+ */
+public class EventLoopRentalAgency implements AutoCloseable {
+    private static final int DEFAULT_CAPACITY = 4096;
+
+    /**
+     * An immutable view of the agency, published by the writer after each batch.
+     * @param vehicles The vehicles of the agency, in insertion order.
+     * @param rentals The client renting each rented vehicle.
+     */
+    public record Snapshot(List<Vehicle> vehicles, Map<Vehicle, Client> rentals) {
+    }
+
+    private static final class Command<T> {
+        private final Function<RentalAgency, T> action;
+        private final BiFunction<T, PersistentHashMap<Vehicle, Client>, PersistentHashMap<Vehicle, Client>> rentals;
+        private final CompletableFuture<T> result;
+        private T value;
+        private Throwable error;
+
+        // The rentals function applies the result of the action to the rentals, and returns the same map if they did not change.
+        Command(Function<RentalAgency, T> action,
+                BiFunction<T, PersistentHashMap<Vehicle, Client>, PersistentHashMap<Vehicle, Client>> rentals,
+                CompletableFuture<T> result) {
+            this.action = action;
+            this.rentals = rentals;
+            this.result = result;
+        }
+
+        void apply(RentalAgency agency) {
+            try {
+                this.value = this.action.apply(agency);
+            } catch(Throwable e) {
+                // Errors too, the writer must keep serving the other commands.
+                this.error = e;
+            }
+        }
+
+        void complete() {
+            if(this.error != null) {
+                this.result.completeExceptionally(this.error);
+            } else {
+                this.result.complete(this.value);
+            }
+        }
+    }
+
+    private static final Command<Void> STOP = new Command<>(agency -> null, (value, rentals) -> rentals, new CompletableFuture<>());
+
+    private final RentalAgency agency;
+    private final BlockingQueue<Command<?>> commands;
+    private final int batchSize;
+    private final Thread writer;
+    private volatile Snapshot snapshot;
+    // Only used by the writer.
+    private PersistentHashMap<Vehicle, Client> rentals;
+    private volatile boolean closed;
+    private volatile boolean stopped;
+
+    /**
+     * Create an event loop agency with a list of vehicles.
+     * @param vehicles The list of vehicles.
+     */
+    public EventLoopRentalAgency(List<Vehicle> vehicles) {
+        this(new RentalAgency(vehicles), DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Take ownership of a rental agency. It must not be used by any other thread afterwards.
+     * @param agency The agency to own.
+     * @param capacity The number of commands which can wait in the buffer.
+     * @throws IllegalArgumentException if the capacity is less than 1.
+     */
+    public EventLoopRentalAgency(RentalAgency agency, int capacity) throws IllegalArgumentException {
+        if(capacity < 1) {
+            throw new IllegalArgumentException("Capacity must be at least 1. " + capacity + " is invalid.");
+        }
+        this.agency = agency;
+        this.commands = new ArrayBlockingQueue<>(capacity);
+        this.batchSize = capacity;
+        this.rentals = PersistentHashMap.copyOf(agency.getRentals());
+        this.snapshot = new Snapshot(agency.getVehicles(), this.rentals);
+        this.writer = new Thread(this::writeLoop, "rental-agency-writer");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    /**
+     * Rent a vehicle to a client.
+     * @param client The client who wants to rent a vehicle.
+     * @param vehicle The vehicle to rent.
+     * @return A future of {@link RentalOutcome#RENTED} if the vehicle is rented, or of the reason why it cannot be rented.
+     */
+    public CompletableFuture<RentalOutcome> rent(Client client, Vehicle vehicle) {
+        return this.submit(agency -> agency.tryRentVehicle(client, vehicle),
+                (outcome, rentals) -> outcome == RentalOutcome.RENTED ? rentals.plus(vehicle, client) : rentals);
+    }
+
+    /**
+     * Return every vehicle rented by a client.
+     * @param client The client who wants to return the vehicles.
+     * @return A future completed once the vehicles are returned.
+     */
+    public CompletableFuture<Void> returnVehicle(Client client) {
+        return this.submit(agency -> {
+            List<Vehicle> returned = List.copyOf(agency.vehiclesRentedBy(client));
+            agency.returnVehicle(client);
+            return returned;
+        }, (returned, rentals) -> {
+            for(Vehicle vehicle : returned) {
+                rentals = rentals.minus(vehicle);
+            }
+            return rentals;
+        }).thenApply(returned -> null);
+    }
+
+    /**
+     * Add a vehicle to the agency if it is not already in the list.
+     * @param vehicle The vehicle to add.
+     * @return A future of true if the vehicle was added, false otherwise.
+     */
+    public CompletableFuture<Boolean> add(Vehicle vehicle) {
+        return this.submit(agency -> agency.add(vehicle), (added, rentals) -> rentals);
+    }
+
+    /**
+     * Remove a vehicle from the agency.
+     * @param vehicle The vehicle to remove.
+     * @return A future of true if the vehicle was removed, false if it is not in the list.
+     */
+    public CompletableFuture<Boolean> remove(Vehicle vehicle) {
+        return this.submit(agency -> agency.tryRemove(vehicle), (removed, rentals) -> rentals);
+    }
+
+    /**
+     * Get the latest published state of the agency.
+     * @return The latest snapshot.
+     */
+    public Snapshot snapshot() {
+        return this.snapshot;
+    }
+
+    /**
+     * Returns the vehicles of the latest snapshot that satisfy a criterion.
+     * @param criterion the criterion that the selected vehicles must satisfy
+     * @return the selected vehicles, in insertion order
+     */
+    public List<Vehicle> select(Predicate<Vehicle> criterion) {
+        List<Vehicle> selectedVehicles = new ArrayList<>();
+        for(Vehicle vehicle : this.snapshot.vehicles()) {
+            if(criterion.test(vehicle)) {
+                selectedVehicles.add(vehicle);
+            }
+        }
+        return selectedVehicles;
+    }
+
+    /**
+     * Get the rented vehicles of the latest snapshot.
+     * @return The rented vehicles.
+     */
+    public Collection<Vehicle> allRentedVehicles() {
+        return this.snapshot.rentals().keySet();
+    }
+
+    /**
+     * Test if a vehicle is rented in the latest snapshot.
+     * @param vehicle The vehicle to test.
+     * @return true if the vehicle is rented, false otherwise.
+     */
+    public boolean vehicleIsRented(Vehicle vehicle) {
+        return this.snapshot.rentals().containsKey(vehicle);
+    }
+
+    /**
+     * Stop accepting commands, and wait for the writer to apply the queued ones.
+     */
+    @Override
+    public void close() {
+        synchronized(this) {
+            if(this.closed) {
+                return;
+            }
+            this.closed = true;
+            // Submitters enqueue under the same lock, so STOP is the last command of the buffer.
+            this.enqueue(STOP);
+        }
+        try {
+            this.writer.join();
+        } catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private <T> CompletableFuture<T> submit(Function<RentalAgency, T> action,
+            BiFunction<T, PersistentHashMap<Vehicle, Client>, PersistentHashMap<Vehicle, Client>> rentals) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        synchronized(this) {
+            if(this.closed || this.stopped) {
+                throw new IllegalStateException("The agency is closed.");
+            }
+            this.enqueue(new Command<>(action, rentals, result));
+        }
+        return result;
+    }
+
+    /**
+     * Put a command in the buffer, waiting for room. The writer never takes the lock of the agency,
+     * so it keeps draining the buffer while a submitter waits with the lock held.
+     */
+    private void enqueue(Command<?> command) {
+        try {
+            this.commands.put(command);
+        } catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+            command.result.completeExceptionally(e);
+            return;
+        }
+        // The writer drains the buffer after it stopped, a command enqueued after that drain is failed here.
+        if(this.stopped) {
+            this.rejectPending();
+        }
+    }
+
+    private void rejectPending() {
+        List<Command<?>> rejected = new ArrayList<>();
+        this.commands.drainTo(rejected);
+        for(Command<?> command : rejected) {
+            command.result.completeExceptionally(new IllegalStateException("The agency is closed."));
+        }
+    }
+
+    private void writeLoop() {
+        try {
+            this.applyCommands();
+        } finally {
+            // The writer only stops on close or when interrupted, nothing applies the remaining commands.
+            this.stopped = true;
+            this.rejectPending();
+        }
+    }
+
+    private <T> PersistentHashMap<Vehicle, Client> updateRentals(Command<T> command) {
+        return command.rentals.apply(command.value, this.rentals);
+    }
+
+    private void applyCommands() {
+        List<Command<?>> batch = new ArrayList<>(this.batchSize);
+        boolean running = true;
+        while(running) {
+            try {
+                batch.add(this.commands.take());
+            } catch(InterruptedException e) {
+                return;
+            }
+            this.commands.drainTo(batch, this.batchSize - 1);
+
+            boolean failed = false;
+            for(Command<?> command : batch) {
+                if(command == STOP) {
+                    running = false;
+                    continue;
+                }
+                command.apply(this.agency);
+                if(command.error == null) {
+                    this.rentals = this.updateRentals(command);
+                } else {
+                    failed = true;
+                }
+            }
+
+            try {
+                if(failed) {
+                    // A failed command may have changed the agency half way, the rentals are read again.
+                    this.rentals = PersistentHashMap.copyOf(this.agency.getRentals());
+                }
+                // Both the fleet and the rentals are immutable, and refused or failed commands keep the same instances.
+                Snapshot previous = this.snapshot;
+                if(this.agency.getVehicles() != previous.vehicles() || this.rentals != previous.rentals()) {
+                    this.snapshot = new Snapshot(this.agency.getVehicles(), this.rentals);
+                }
+            } finally {
+                for(Command<?> command : batch) {
+                    command.complete();
+                }
+            }
+            batch.clear();
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package util;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * A registry of canonical strings.
+ * Equal strings interned here are the same instance, so they are stored once and can be compared by identity.
+ * Interned strings are never released, so it is meant for values repeated across many objects, like vehicle brands and models.
+ */
+public class Interner {
+    private static final ConcurrentMap<String, String> CANONICAL = new ConcurrentHashMap<>();
+
+    private Interner() {
+    }
+
+    /**
+     * Get the canonical instance of a string.
+     * @param value The string.
+     * @return The canonical instance equal to the string, or null if the string is null.
+     */
+    public static String intern(String value) {
+        if(value == null) {
+            return null;
+        }
+        // A plain lookup does not lock, unlike putIfAbsent on a present key.
+        String canonical = CANONICAL.get(value);
+        if(canonical != null) {
+            return canonical;
+        }
+        canonical = CANONICAL.putIfAbsent(value, value);
+        return canonical == null ? value : canonical;
+    }
+}
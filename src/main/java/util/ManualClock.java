@@ -0,0 +1,60 @@
+package util;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+
+/**
+ * A clock that only moves when told to, for deterministic tests and simulations.
+ */
+public class ManualClock extends Clock {
+    private final ZoneId zone;
+    private volatile long millis;
+
+    /**
+     * Create a manual clock.
+     * @param instant The initial instant of the clock.
+     * @param zone The time zone of the clock.
+     */
+    public ManualClock(Instant instant, ZoneId zone) {
+        this.zone = zone;
+        this.millis = instant.toEpochMilli();
+    }
+
+    /**
+     * Move the clock to an instant.
+     * @param instant The new instant of the clock.
+     */
+    public void setInstant(Instant instant) {
+        this.millis = instant.toEpochMilli();
+    }
+
+    /**
+     * Move the clock forward.
+     * @param duration The duration to add to the clock.
+     */
+    public synchronized void advance(Duration duration) {
+        this.millis += duration.toMillis();
+    }
+
+    @Override
+    public long millis() {
+        return this.millis;
+    }
+
+    @Override
+    public Instant instant() {
+        return Instant.ofEpochMilli(this.millis);
+    }
+
+    @Override
+    public ZoneId getZone() {
+        return this.zone;
+    }
+
+    @Override
+    public Clock withZone(ZoneId zone) {
+        return new ManualClock(this.instant(), zone);
+    }
+}
@@ -0,0 +1,276 @@
+package util;
+
+import java.util.*;
+import java.util.function.BiConsumer;
+
+/**
+ * An immutable hash map, whose new versions share most of their structure with the previous one.
+ * The entries are kept in a hash array mapped trie: a node has up to 32 children, chosen by 5 bits of the hash,
+ * so adding or removing a key only copies the few nodes on its path, O(log32 n), instead of the whole map.
+ * @param <K> The type of the keys.
+ * @param <V> The type of the values.
+ */
+public final class PersistentHashMap<K, V> extends AbstractMap<K, V> {
+    private static final PersistentHashMap<?, ?> EMPTY = new PersistentHashMap<>(null, 0);
+    private static final int BITS = 5;
+    private static final int MASK = (1 << BITS) - 1;
+
+    private final Node root;
+    private final int size;
+
+    private PersistentHashMap(Node root, int size) {
+        this.root = root;
+        this.size = size;
+    }
+
+    /**
+     * Get the empty map.
+     * @param <K> The type of the keys.
+     * @param <V> The type of the values.
+     * @return The empty map.
+     */
+    @SuppressWarnings("unchecked")
+    public static <K, V> PersistentHashMap<K, V> empty() {
+        return (PersistentHashMap<K, V>) EMPTY;
+    }
+
+    /**
+     * Create a map with the entries of another one.
+     * @param map The entries to copy.
+     * @param <K> The type of the keys.
+     * @param <V> The type of the values.
+     * @return The new map.
+     */
+    public static <K, V> PersistentHashMap<K, V> copyOf(Map<? extends K, ? extends V> map) {
+        PersistentHashMap<K, V> copy = empty();
+        for(Map.Entry<? extends K, ? extends V> entry : map.entrySet()) {
+            copy = copy.plus(entry.getKey(), entry.getValue());
+        }
+        return copy;
+    }
+
+    @Override
+    public int size() {
+        return this.size;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return this.find(key) != null;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public V get(Object key) {
+        Leaf leaf = this.find(key);
+        return leaf == null ? null : (V) leaf.values[leaf.indexOf(key)];
+    }
+
+    /**
+     * Create the next version with a key mapped to a value.
+     * @param key The key.
+     * @param value The value.
+     * @return The new map, or this one if the key is already mapped to this value.
+     */
+    public PersistentHashMap<K, V> plus(K key, V value) {
+        if(this.containsKey(key)) {
+            if(this.get(key) == value) {
+                return this;
+            }
+            return new PersistentHashMap<>(Node.plus(this.root, 0, hash(key), key, value), this.size);
+        }
+        return new PersistentHashMap<>(Node.plus(this.root, 0, hash(key), key, value), this.size + 1);
+    }
+
+    /**
+     * Create the next version without a key.
+     * @param key The key.
+     * @return The new map, or this one if the key is not mapped.
+     */
+    public PersistentHashMap<K, V> minus(Object key) {
+        if(!this.containsKey(key)) {
+            return this;
+        }
+        return new PersistentHashMap<>(Node.minus(this.root, 0, hash(key), key), this.size - 1);
+    }
+
+    @Override
+    public Set<Map.Entry<K, V>> entrySet() {
+        return new AbstractSet<>() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public Iterator<Map.Entry<K, V>> iterator() {
+                List<Map.Entry<K, V>> entries = new ArrayList<>(PersistentHashMap.this.size);
+                Node.forEach(PersistentHashMap.this.root,
+                        (key, value) -> entries.add(new AbstractMap.SimpleImmutableEntry<>((K) key, (V) value)));
+                return Collections.unmodifiableList(entries).iterator();
+            }
+
+            @Override
+            public int size() {
+                return PersistentHashMap.this.size;
+            }
+        };
+    }
+
+    private Leaf find(Object key) {
+        int hash = hash(key);
+        Node node = this.root;
+        for(int shift = 0; node != null; shift += BITS) {
+            int bit = 1 << ((hash >>> shift) & MASK);
+            if((node.bitmap & bit) == 0) {
+                return null;
+            }
+            Object slot = node.slots[Integer.bitCount(node.bitmap & (bit - 1))];
+            if(slot instanceof Leaf leaf) {
+                return leaf.hash == hash && leaf.indexOf(key) >= 0 ? leaf : null;
+            }
+            node = (Node) slot;
+        }
+        return null;
+    }
+
+    private static int hash(Object key) {
+        int hash = Objects.hashCode(key);
+        return hash ^ (hash >>> 16);
+    }
+
+    /**
+     * The keys sharing a whole hash, with their values. There is more than one key only on hash collisions.
+     */
+    private static final class Leaf {
+        final int hash;
+        final Object[] keys;
+        final Object[] values;
+
+        Leaf(int hash, Object[] keys, Object[] values) {
+            this.hash = hash;
+            this.keys = keys;
+            this.values = values;
+        }
+
+        int indexOf(Object key) {
+            for(int i = 0; i < this.keys.length; i++) {
+                if(Objects.equals(this.keys[i], key)) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        Leaf plus(Object key, Object value) {
+            int index = this.indexOf(key);
+            if(index < 0) {
+                Object[] keys = Arrays.copyOf(this.keys, this.keys.length + 1);
+                Object[] values = Arrays.copyOf(this.values, this.values.length + 1);
+                keys[this.keys.length] = key;
+                values[this.values.length] = value;
+                return new Leaf(this.hash, keys, values);
+            }
+            Object[] values = this.values.clone();
+            values[index] = value;
+            return new Leaf(this.hash, this.keys, values);
+        }
+
+        Leaf minus(Object key) {
+            int index = this.indexOf(key);
+            if(this.keys.length == 1) {
+                return null;
+            }
+            return new Leaf(this.hash, remove(this.keys, index), remove(this.values, index));
+        }
+    }
+
+    /**
+     * A node of the trie. Each slot is a leaf or a child node, and the bitmap tells which of the 32 slots exist.
+     * Nodes are never modified, changes create new ones.
+     */
+    private static final class Node {
+        final int bitmap;
+        final Object[] slots;
+
+        Node(int bitmap, Object[] slots) {
+            this.bitmap = bitmap;
+            this.slots = slots;
+        }
+
+        static Node plus(Node node, int shift, int hash, Object key, Object value) {
+            int bit = 1 << ((hash >>> shift) & MASK);
+            if(node == null) {
+                return new Node(bit, new Object[] {new Leaf(hash, new Object[] {key}, new Object[] {value})});
+            }
+            int position = Integer.bitCount(node.bitmap & (bit - 1));
+            if((node.bitmap & bit) == 0) {
+                Object[] slots = new Object[node.slots.length + 1];
+                System.arraycopy(node.slots, 0, slots, 0, position);
+                slots[position] = new Leaf(hash, new Object[] {key}, new Object[] {value});
+                System.arraycopy(node.slots, position, slots, position + 1, node.slots.length - position);
+                return new Node(node.bitmap | bit, slots);
+            }
+            Object slot = node.slots[position];
+            Object replaced;
+            if(slot instanceof Leaf leaf) {
+                if(leaf.hash == hash) {
+                    replaced = leaf.plus(key, value);
+                } else {
+                    replaced = split(leaf, new Leaf(hash, new Object[] {key}, new Object[] {value}), shift + BITS);
+                }
+            } else {
+                replaced = plus((Node) slot, shift + BITS, hash, key, value);
+            }
+            Object[] slots = node.slots.clone();
+            slots[position] = replaced;
+            return new Node(node.bitmap, slots);
+        }
+
+        // Two leaves of different hashes share a slot, they are pushed down until their hash bits differ.
+        private static Node split(Leaf first, Leaf second, int shift) {
+            int firstIndex = (first.hash >>> shift) & MASK;
+            int secondIndex = (second.hash >>> shift) & MASK;
+            if(firstIndex == secondIndex) {
+                return new Node(1 << firstIndex, new Object[] {split(first, second, shift + BITS)});
+            }
+            Object[] slots = firstIndex < secondIndex ? new Object[] {first, second} : new Object[] {second, first};
+            return new Node((1 << firstIndex) | (1 << secondIndex), slots);
+        }
+
+        // The key must be in the subtree.
+        static Node minus(Node node, int shift, int hash, Object key) {
+            int bit = 1 << ((hash >>> shift) & MASK);
+            int position = Integer.bitCount(node.bitmap & (bit - 1));
+            Object slot = node.slots[position];
+            Object replaced = slot instanceof Leaf leaf ? leaf.minus(key) : minus((Node) slot, shift + BITS, hash, key);
+            if(replaced != null) {
+                Object[] slots = node.slots.clone();
+                slots[position] = replaced;
+                return new Node(node.bitmap, slots);
+            }
+            if(node.slots.length == 1) {
+                return null;
+            }
+            return new Node(node.bitmap & ~bit, remove(node.slots, position));
+        }
+
+        static void forEach(Node node, BiConsumer<Object, Object> action) {
+            if(node == null) {
+                return;
+            }
+            for(Object slot : node.slots) {
+                if(slot instanceof Leaf leaf) {
+                    for(int i = 0; i < leaf.keys.length; i++) {
+                        action.accept(leaf.keys[i], leaf.values[i]);
+                    }
+                } else {
+                    forEach((Node) slot, action);
+                }
+            }
+        }
+    }
+
+    private static Object[] remove(Object[] array, int index) {
+        Object[] copy = new Object[array.length - 1];
+        System.arraycopy(array, 0, copy, 0, index);
+        System.arraycopy(array, index + 1, copy, index, copy.length - index);
+        return copy;
+    }
+}
@@ -1,14 +1,79 @@
 package util;
 
-import java.util.Date;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
 
 public class TimeProvider {
 
+    private static volatile Clock clock = Clock.systemDefaultZone();
+    private static volatile CachedYear cachedYear = CachedYear.at(clock);
+
     /**
      * Get the current year.
+     * The year is cached and only recomputed when the clock leaves it, so this method does not allocate.
      * @return the current year value
      */
     public static int currentYearValue() {
-        return new Date().getYear() + 1900;
+        CachedYear year = cachedYear;
+        if(!year.contains(year.clock.millis())) {
+            year = CachedYear.at(year.clock);
+            cachedYear = year;
+        }
+        return year.value;
+    }
+
+    /**
+     * Get the clock used to tell the current year.
+     * @return the clock in use
+     */
+    public static Clock getClock() {
+        return clock;
+    }
+
+    /**
+     * Use another clock to tell the current year, e.g. a fixed clock or a {@link ManualClock} in tests and simulations.
+     * @param newClock the clock to use
+     */
+    public static synchronized void setClock(Clock newClock) {
+        clock = newClock;
+        cachedYear = CachedYear.at(newClock);
+    }
+
+    /**
+     * Go back to the system clock in the default time zone.
+     */
+    public static void resetClock() {
+        setClock(Clock.systemDefaultZone());
+    }
+
+    /**
+     * A year and the time window during which it is the current year of a clock.
+     */
+    private static final class CachedYear {
+        private final Clock clock;
+        private final int value;
+        private final long start;
+        private final long end;
+
+        private CachedYear(Clock clock, int value, long start, long end) {
+            this.clock = clock;
+            this.value = value;
+            this.start = start;
+            this.end = end;
+        }
+
+        static CachedYear at(Clock clock) {
+            ZoneId zone = clock.getZone();
+            int year = Instant.ofEpochMilli(clock.millis()).atZone(zone).getYear();
+            long start = LocalDate.of(year, 1, 1).atStartOfDay(zone).toInstant().toEpochMilli();
+            long end = LocalDate.of(year + 1, 1, 1).atStartOfDay(zone).toInstant().toEpochMilli();
+            return new CachedYear(clock, year, start, end);
+        }
+
+        boolean contains(long millis) {
+            return millis >= this.start && millis < this.end;
+        }
     }
 }
@@ -1,14 +1,44 @@
 package agency;
 
-import agency.criteria.BrandCriterion;
-import agency.criteria.MaxPriceCriterion;
+import agency.cluster.ShardedRentalAgency;
+import agency.criteria.*;
+import agency.exceptions.RentalConflictException;
 import agency.exceptions.UnknownVehicleException;
+import agency.io.FleetSerializer;
+import agency.journal.DurableRentalAgency;
+import agency.service.BookingService;
+import agency.service.EventLoopRentalAgency;
 import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.io.TempDir;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.CsvSource;
+import util.ManualClock;
 import util.TimeProvider;
 
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
 import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.junit.jupiter.api.Assertions.*;
@@ -60,6 +90,18 @@ public class AgencyTests {
             assertEquals(4*40, car.dailyRentalPrice());
         }
 
+        @Test
+        @DisplayName("Car age limit price test")
+        public void carAgeLimitPriceTest() {
+            int currentYear = TimeProvider.currentYearValue();
+            Car lastNewCar = new Car("Toyota", "Corolla", currentYear - 5, 4);
+            Car firstUsedCar = new Car("Toyota", "Corolla", currentYear - 6, 4);
+            assertTrue(lastNewCar.isNew());
+            assertEquals(4*40, lastNewCar.dailyRentalPrice());
+            assertFalse(firstUsedCar.isNew());
+            assertEquals(4*20, firstUsedCar.dailyRentalPrice());
+        }
+
         @ParameterizedTest
         @DisplayName("Car toString test")
         @CsvSource({
@@ -144,6 +186,106 @@ public class AgencyTests {
             assertEquals("Smith", client.getLastName());
             assertEquals(2000, client.getBirthYear());
         }
+
+        @Test
+        @DisplayName("Client identity test")
+        public void clientIdentityTest() {
+            Client homonym = new Client("John", "Doe", 1998);
+            int hashCode = client.hashCode();
+            client.setLastName("Smith");
+
+            assertNotEquals(client, homonym);
+            assertEquals(client, new Client(client.getId(), "John", "Doe", 1998));
+            assertEquals(hashCode, client.hashCode());
+            assertTrue(new Client("Jane", "Doe", 2000).getId() > client.getId());
+        }
+    }
+
+    @DisplayName("Criterion tests")
+    @Nested
+    class CriterionTests {
+        Car car;
+        Motorbike motorbike;
+
+        @BeforeEach
+        public void createVehicles() {
+            car = new Car("Toyota", "Corolla", 2019, 4);
+            motorbike = new Motorbike("Honda", "CBR", 2020, 500);
+        }
+
+        @Test
+        @DisplayName("Leaf criteria test")
+        public void leafCriteriaTest() {
+            assertTrue(new ProductionYearCriterion(2019, 2019).test(car));
+            assertFalse(new ProductionYearCriterion(2020, 2024).test(car));
+            assertTrue(new VehicleTypeCriterion(Car.class).test(car));
+            assertFalse(new VehicleTypeCriterion(Car.class).test(motorbike));
+            assertTrue(new MinSeatsCriterion(4).test(car));
+            assertFalse(new MinSeatsCriterion(5).test(car));
+            assertFalse(new MinSeatsCriterion(1).test(motorbike));
+            assertTrue(new MinCylinderCapacityCriterion(500).test(motorbike));
+            assertFalse(new MinCylinderCapacityCriterion(50).test(car));
+        }
+
+        @Test
+        @DisplayName("Criterion combination test")
+        public void criterionCombinationTest() {
+            Criterion toyotaOrHonda = new BrandCriterion("Toyota").or(new BrandCriterion("Honda"));
+            assertTrue(toyotaOrHonda.test(car));
+            assertTrue(toyotaOrHonda.test(motorbike));
+            assertFalse(toyotaOrHonda.negate().test(car));
+            assertTrue(toyotaOrHonda.and(new MaxPriceCriterion(100)).test(car));
+            assertFalse(toyotaOrHonda.and(new MaxPriceCriterion(100)).test(motorbike));
+            assertTrue(new BrandCriterion("Toyota").and(Criterion.of(vehicle -> vehicle.getModel().startsWith("C"))).test(car));
+        }
+
+        @Test
+        @DisplayName("Planner detects contradictions test")
+        public void plannerContradictionsTest() {
+            assertEquals(ConstantCriterion.NEVER, CriterionPlanner.optimize(new BrandCriterion("Toyota").and(new BrandCriterion("Ford"))));
+            assertEquals(ConstantCriterion.NEVER, CriterionPlanner.optimize(new ProductionYearCriterion(2000, 2010).and(new ProductionYearCriterion(2011, 2020))));
+            assertEquals(ConstantCriterion.NEVER, CriterionPlanner.optimize(new MinSeatsCriterion(2).and(new MinCylinderCapacityCriterion(50))));
+            assertEquals(ConstantCriterion.NEVER, CriterionPlanner.optimize(new VehicleTypeCriterion(Motorbike.class).and(new MinSeatsCriterion(2))));
+            assertEquals(ConstantCriterion.ALWAYS, CriterionPlanner.optimize(new BrandCriterion("Toyota").or(new BrandCriterion("Toyota").negate())
+                    .or(ConstantCriterion.NEVER.negate())));
+        }
+
+        @Test
+        @DisplayName("Planner merges and reorders leaves test")
+        public void plannerMergesAndReordersTest() {
+            Criterion criterion = new MaxPriceCriterion(300)
+                    .and(Criterion.of(vehicle -> true))
+                    .and(new BrandCriterion("Toyota").and(new MaxPriceCriterion(100)))
+                    .and(new ProductionYearCriterion(2000, 2020).and(new ProductionYearCriterion(2010, 2030)));
+            Criterion optimized = CriterionPlanner.optimize(criterion);
+
+            assertInstanceOf(AndCriterion.class, optimized);
+            List<Criterion> operands = ((AndCriterion) optimized).getOperands();
+            assertEquals(4, operands.size());
+            assertInstanceOf(ProductionYearCriterion.class, operands.get(0));
+            assertEquals(2010, ((ProductionYearCriterion) operands.get(0)).getMinYear());
+            assertEquals(2020, ((ProductionYearCriterion) operands.get(0)).getMaxYear());
+            assertInstanceOf(BrandCriterion.class, operands.get(1));
+            assertEquals(100, ((MaxPriceCriterion) operands.get(2)).getMaxPrice());
+            assertInstanceOf(PredicateCriterion.class, operands.get(3));
+        }
+
+        @Test
+        @DisplayName("Agency selection with criteria matches scan test")
+        public void agencySelectionMatchesScanTest() {
+            RentalAgency agency = new RentalAgency(List.of(car, motorbike,
+                    new Car("Toyota", "Yaris", 2015, 2), new Car("Ford", "Fiesta", 2018, 7),
+                    new Motorbike("Toyota", "Bike", 2021, 125), new Motorbike("Yamaha", "R1", 2021, 1000)));
+            List<Criterion> criteria = List.of(
+                    new BrandCriterion("Toyota").and(new MaxPriceCriterion(100)),
+                    new BrandCriterion("Toyota").or(new MinCylinderCapacityCriterion(600)),
+                    new MaxPriceCriterion(100).and(new VehicleTypeCriterion(Car.class)),
+                    new MinSeatsCriterion(3).and(new ProductionYearCriterion(2016, 2020)).negate(),
+                    new BrandCriterion("Toyota").and(new BrandCriterion("Ford")));
+            for(Criterion criterion : criteria) {
+                assertEquals(agency.select(criterion::test), agency.select(criterion));
+            }
+        }
     }
 
     @DisplayName("Vehicle equal test")
@@ -165,6 +307,18 @@ public class AgencyTests {
         assertNotEquals(car1, motorbike1);
     }
 
+    @DisplayName("Vehicle hash code test")
+    @Test
+    public void vehicleHashCodeTest() {
+        Car car1 = new Car("Toyota", "Corolla", 2019, 4);
+        Car car2 = new Car("Toyota", "Corolla", 2019, 5);
+        Motorbike motorbike1 = new Motorbike("Honda", "CBR", 2020, 500);
+        Motorbike motorbike2 = new Motorbike("Honda", "CBR", 2020, 600);
+
+        assertEquals(car1.hashCode(), car2.hashCode());
+        assertEquals(motorbike1.hashCode(), motorbike2.hashCode());
+    }
+
     @DisplayName("Rental agency tests")
     @Nested
     class RentalAgencyTests {
@@ -208,6 +362,24 @@ public class AgencyTests {
             assertTrue(agency2.getVehicles().contains(motorbike2));
         }
 
+        @Test
+        @DisplayName("Create agency with duplicated vehicles test")
+        public void createAgencyWithDuplicatedVehiclesTest() {
+            List<Vehicle> listOfVehicles = List.of(car1, car2, new Car("Toyota", "Corolla", 2019, 5), motorbike1);
+            RentalAgency agency2 = new RentalAgency(listOfVehicles);
+            assertEquals(List.of(car1, car2, motorbike1), agency2.getVehicles());
+        }
+
+        @Test
+        @DisplayName("Contains vehicle test")
+        public void containsVehicleTest() {
+            assertTrue(agency.contains(car1));
+            assertTrue(agency.contains(new Car("Toyota", "Corolla", 2019, 5)));
+            assertFalse(agency.contains(new Car("Renault", "Zoe", 2019, 4)));
+            agency.remove(car1);
+            assertFalse(agency.contains(car1));
+        }
+
         @Test
         @DisplayName("Add vehicle test")
         public void addVehicleTest() {
@@ -221,6 +393,45 @@ public class AgencyTests {
             assertTrue(agency.getVehicles().contains(motorbike2));
         }
 
+        @Test
+        @DisplayName("Add all vehicles test")
+        public void addAllVehiclesTest() {
+            Car tempCar = new Car("Ford", "Ka", 2005, 2);
+            ImportReport report = agency.addAll(List.of(tempCar, car1, new Car("Ford", "Ka", 2005, 4)));
+
+            assertEquals(1, report.getAddedCount());
+            assertEquals(List.of(new ImportReport.Rejection(1, ImportReport.Reason.DUPLICATE),
+                    new ImportReport.Rejection(2, ImportReport.Reason.DUPLICATE)), report.getRejections());
+            assertEquals(6, agency.getVehicles().size());
+            assertThat(agency.select(new BrandCriterion("Ford"))).containsExactly(car3, tempCar);
+        }
+
+        @Test
+        @DisplayName("Import fleet test")
+        public void importFleetTest() {
+            int nextYear = TimeProvider.currentYearValue() + 1;
+            ImportReport report = agency.importFleet(List.of(
+                    new VehicleSpec(VehicleType.CAR, "Renault", "Zoe", 2019, 4),
+                    new VehicleSpec(VehicleType.CAR, "Renault", "Clio", nextYear, 4),
+                    new VehicleSpec(VehicleType.CAR, "Renault", "Twingo", 2010, 0),
+                    new VehicleSpec(VehicleType.MOTORBIKE, "Honda", "PCX", 2018, 49),
+                    new VehicleSpec(null, "Honda", "PCX", 2018, 125),
+                    new VehicleSpec(VehicleType.MOTORBIKE, "Honda", "CBR", 2020, 600),
+                    new VehicleSpec(VehicleType.MOTORBIKE, "Honda", "PCX", 2018, 125)));
+
+            assertEquals(2, report.getAddedCount());
+            assertFalse(report.isComplete());
+            assertEquals(List.of(
+                    new ImportReport.Rejection(1, ImportReport.Reason.INVALID_PRODUCTION_YEAR),
+                    new ImportReport.Rejection(2, ImportReport.Reason.INVALID_NUMBER_OF_SEATS),
+                    new ImportReport.Rejection(3, ImportReport.Reason.INVALID_CYLINDER_CAPACITY),
+                    new ImportReport.Rejection(4, ImportReport.Reason.MISSING_FIELD),
+                    new ImportReport.Rejection(5, ImportReport.Reason.DUPLICATE)), report.getRejections());
+            assertTrue(agency.contains(new Car("Renault", "Zoe", 2019, 4)));
+            assertThat(agency.select(new BrandCriterion("Honda"))).containsExactly(motorbike1, new Motorbike("Honda", "PCX", 2018, 125));
+            assertEquals(VehicleSpec.of(motorbike1), new VehicleSpec(VehicleType.MOTORBIKE, "Honda", "CBR", 2020, 500));
+        }
+
         @Test
         @DisplayName("Select vehicles by brand test")
         public void selectVehiclesTest() {
@@ -237,6 +448,215 @@ public class AgencyTests {
             assertEquals(5, agency.select(new MaxPriceCriterion(300)).size());
         }
 
+        @Test
+        @DisplayName("Indexed selection matches scan test")
+        public void indexedSelectionMatchesScanTest() {
+            agency.remove(new Car("Toyota", "Corolla", 2019, 7));
+            agency.add(new Car("Ford", "Focus", 2010, 2));
+            agency.add(car1);
+
+            for(String brand : List.of("Toyota", "Ford", "Honda", "Renault")) {
+                BrandCriterion criterion = new BrandCriterion(brand);
+                assertEquals(agency.select(criterion::test), agency.select(criterion));
+            }
+            for(double maxPrice : new double[]{0, 40, 80, 125, 250, 1000, Double.NaN}) {
+                MaxPriceCriterion criterion = new MaxPriceCriterion(maxPrice);
+                assertEquals(agency.select(criterion::test), agency.select(criterion));
+            }
+            assertThat(agency.select(new BrandCriterion("Toyota"))).containsExactly(car2, car1);
+        }
+
+        @Test
+        @DisplayName("Streamed selection matches selection test")
+        public void streamedSelectionTest() {
+            List<Predicate<Vehicle>> criteria = List.of(new BrandCriterion("Toyota"), new MaxPriceCriterion(100),
+                    new BrandCriterion("Toyota").and(new MaxPriceCriterion(100)), vehicle -> vehicle.getProductionYear() > 2019);
+            for(Predicate<Vehicle> criterion : criteria) {
+                assertEquals(agency.select(criterion), agency.selectStream(criterion).collect(Collectors.toList()));
+            }
+        }
+
+        @Test
+        @DisplayName("Parallel streamed selection keeps order test")
+        public void parallelStreamedSelectionTest() {
+            RentalAgency largeAgency = new RentalAgency();
+            for(int i = 0; i < 20_000; i++) {
+                largeAgency.add(new Car("Brand" + (i % 7), "Model" + i, 2000 + (i % 20), 1 + (i % 6)));
+            }
+            Criterion criterion = new MinSeatsCriterion(3).and(new ProductionYearCriterion(2005, 2015));
+
+            assertTrue(largeAgency.selectStream(criterion).isParallel());
+            assertEquals(largeAgency.select(criterion::test), largeAgency.selectStream(criterion).collect(Collectors.toList()));
+        }
+
+        @Test
+        @DisplayName("Columnar selection matches scan test")
+        public void columnarSelectionMatchesScanTest() {
+            RentalAgency columnarAgency = new RentalAgency(agency.getVehicles());
+            columnarAgency.enableColumnarStore();
+            Car removed = new Car("Peugeot", "208", 2021, 5);
+            columnarAgency.add(removed);
+            columnarAgency.remove(removed);
+            columnarAgency.add(new Motorbike("Toyota", "Bike", 2021, 125));
+            for(int i = 0; i < 50; i++) {
+                columnarAgency.add(new Car("Dacia", "Sandero" + i, 2015, 1 + i % 7));
+            }
+            for(int i = 0; i < 50; i += 3) {
+                columnarAgency.remove(new Car("Dacia", "Sandero" + i, 2015, 1));
+            }
+
+            List<Criterion> criteria = List.of(
+                    new BrandCriterion("Toyota").and(new MaxPriceCriterion(100)),
+                    new ProductionYearCriterion(2019, 2020),
+                    new MinSeatsCriterion(4).or(new MinCylinderCapacityCriterion(600)),
+                    new VehicleTypeCriterion(Motorbike.class).and(new BrandCriterion("Peugeot").negate()),
+                    new BrandCriterion("Dacia").and(new MinSeatsCriterion(4)),
+                    new VehicleTypeCriterion(AbstractVehicle.class).and(Criterion.of(vehicle -> vehicle.getModel().length() > 3)));
+            for(Criterion criterion : criteria) {
+                assertEquals(columnarAgency.select(criterion::test), columnarAgency.select(criterion));
+            }
+        }
+
+        @Test
+        @DisplayName("Streamed selection is lazy test")
+        public void streamedSelectionIsLazyTest() {
+            AtomicInteger evaluations = new AtomicInteger();
+            List<Vehicle> firstTwo = agency.selectStream(vehicle -> evaluations.incrementAndGet() > 0).limit(2).collect(Collectors.toList());
+            assertEquals(List.of(car1, car2), firstTwo);
+            assertEquals(2, evaluations.get());
+        }
+
+        @Test
+        @DisplayName("Streamed selection reads the agency as it was test")
+        public void streamedSelectionSnapshotTest() {
+            Car fiat = new Car("Fiat", "Panda", 2019, 4);
+            List<Vehicle> streamed = new ArrayList<>();
+            agency.selectStream(new BrandCriterion("Toyota")).forEach(vehicle -> {
+                streamed.add(vehicle);
+                agency.tryRemove(vehicle);
+                agency.add(new Car("Toyota", "Copy of " + vehicle.getModel(), vehicle.getProductionYear(), 4));
+            });
+            assertEquals(List.of(car1, car2), streamed);
+
+            List<Vehicle> all = agency.getVehicles();
+            assertEquals(all, agency.selectStream(ConstantCriterion.ALWAYS).peek(vehicle -> agency.add(fiat)).toList());
+            assertTrue(agency.contains(fiat));
+        }
+
+        @Test
+        @DisplayName("Prices follow year rollover test")
+        public void pricesFollowYearRolloverTest() {
+            ZoneId zone = ZoneId.systemDefault();
+            ManualClock clock = new ManualClock(LocalDate.of(2025, 12, 31).atStartOfDay(zone).toInstant(), zone);
+            TimeProvider.setClock(clock);
+            try {
+                Car car = new Car("Renault", "Clio", 2020, 2);
+                agency.add(car);
+                assertEquals(2*40, car.dailyRentalPrice());
+                assertThat(agency.select(new MaxPriceCriterion(40))).doesNotContain(car);
+
+                clock.advance(Duration.ofDays(1));
+                assertEquals(2*20, car.dailyRentalPrice());
+                assertThat(agency.select(new MaxPriceCriterion(40))).contains(car);
+            } finally {
+                TimeProvider.resetClock();
+            }
+        }
+
+        @Test
+        @DisplayName("Statistics test")
+        public void statisticsTest() {
+            FleetStatistics statistics = agency.getStatistics();
+            assertEquals(5, statistics.fleet().count());
+            assertEquals(agency.getVehicles().stream().mapToDouble(Vehicle::dailyRentalPrice).sum(), statistics.fleet().sum());
+            assertEquals(2, statistics.brand("Toyota").count());
+            assertEquals(motorbike1.dailyRentalPrice(), statistics.type(VehicleType.MOTORBIKE).min());
+            assertEquals(motorbike2.dailyRentalPrice(), statistics.type(VehicleType.MOTORBIKE).max());
+            assertEquals(0, statistics.brand("Fiat").count());
+            assertTrue(Double.isNaN(statistics.brand("Fiat").average()));
+
+            agency.remove(motorbike2);
+            agency.add(new Motorbike("Honda", "CB", 2020, 50));
+            assertEquals(new Motorbike("Honda", "CB", 2020, 50).dailyRentalPrice(), statistics.type(VehicleType.MOTORBIKE).min());
+            assertEquals(motorbike1.dailyRentalPrice(), statistics.type(VehicleType.MOTORBIKE).max());
+            assertEquals(Map.of("Toyota", 2L, "Ford", 1L, "Honda", 2L), statistics.countPerBrand());
+
+            agency.setRentalLimit(2);
+            agency.rentVehicle(client1, car1);
+            agency.rentVehicle(client1, motorbike1);
+            agency.rentAll(List.of(new RentalRequest(client2, car3)));
+            assertEquals(3, statistics.rented().count());
+            assertEquals(car1.dailyRentalPrice() + motorbike1.dailyRentalPrice() + car3.dailyRentalPrice(), statistics.rented().sum());
+            assertEquals(1, statistics.rentedBrand("Toyota").count());
+
+            agency.returnVehicle(client1);
+            agency.returnVehicle(client2, car3);
+            assertEquals(0, statistics.rented().count());
+            assertEquals(0, statistics.rentedType(VehicleType.CAR).count());
+        }
+
+        @Test
+        @DisplayName("Statistics follow year rollover test")
+        public void statisticsFollowYearRolloverTest() {
+            ZoneId zone = ZoneId.systemDefault();
+            ManualClock clock = new ManualClock(LocalDate.of(2025, 12, 31).atStartOfDay(zone).toInstant(), zone);
+            TimeProvider.setClock(clock);
+            try {
+                Car car = new Car("Renault", "Clio", 2020, 2);
+                agency.add(car);
+                FleetStatistics statistics = agency.getStatistics();
+                agency.rentVehicle(client1, car);
+                assertEquals(2*40, statistics.brand("Renault").sum());
+                assertEquals(2*40, statistics.rented().max());
+
+                clock.advance(Duration.ofDays(1));
+                assertEquals(2*20, statistics.brand("Renault").sum());
+                agency.returnVehicle(client1);
+                agency.remove(car);
+                assertEquals(0, statistics.brand("Renault").count());
+                assertEquals(0, statistics.rented().count());
+            } finally {
+                TimeProvider.resetClock();
+            }
+        }
+
+        @Test
+        @DisplayName("Statistics count changes made right after a year rollover once test")
+        public void statisticsMutateAfterRolloverTest() {
+            ZoneId zone = ZoneId.systemDefault();
+            ManualClock clock = new ManualClock(LocalDate.of(2025, 12, 31).atStartOfDay(zone).toInstant(), zone);
+            TimeProvider.setClock(clock);
+            try {
+                FleetStatistics statistics = agency.getStatistics();
+                Car car = new Car("Renault", "Clio", 2020, 2);
+
+                clock.advance(Duration.ofDays(1));
+                agency.add(car);
+                assertEquals(6, statistics.fleet().count());
+                assertEquals(agency.getVehicles().stream().mapToDouble(Vehicle::dailyRentalPrice).sum(), statistics.fleet().sum(), 1e-9);
+
+                clock.advance(Duration.ofDays(366));
+                agency.rentVehicle(client1, car);
+                assertEquals(1, statistics.rented().count());
+                assertEquals(car.dailyRentalPrice(), statistics.rented().sum());
+
+                clock.advance(Duration.ofDays(366));
+                agency.returnVehicle(client1);
+                assertEquals(0, statistics.rented().count());
+
+                clock.advance(Duration.ofDays(366));
+                agency.remove(car);
+                assertEquals(5, statistics.fleet().count());
+
+                clock.advance(Duration.ofDays(366));
+                agency.addAll(List.of(car, new Car("Renault", "Megane", 2021, 5)));
+                assertEquals(7, statistics.fleet().count());
+                assertEquals(2, statistics.brand("Renault").count());
+            } finally {
+                TimeProvider.resetClock();
+            }
+        }
+
         @Test
         @DisplayName("Remove vehicle test")
         public void removeVehicleTest() {
@@ -254,6 +674,26 @@ public class AgencyTests {
             agency.printSelectedVehicles(new MaxPriceCriterion(100));
         }
 
+        @Test
+        @DisplayName("Write selected vehicles test")
+        public void writeSelectedVehiclesTest() throws IOException {
+            StringWriter out = new StringWriter();
+            agency.writeSelectedVehicles(v -> true, out);
+            String expected = agency.getVehicles().stream()
+                    .map(vehicle -> vehicle + System.lineSeparator())
+                    .collect(Collectors.joining());
+            assertEquals(expected, out.toString());
+
+            for(int i = 0; i < 2000; i++) {
+                agency.add(new Motorbike("Brand" + i, "Model", 2000 + i % 20, 50 + i));
+            }
+            out = new StringWriter();
+            agency.writeSelectedVehicles(new VehicleTypeCriterion(Motorbike.class), out);
+            assertEquals(agency.select(new VehicleTypeCriterion(Motorbike.class)).stream()
+                    .map(vehicle -> vehicle.appendTo(new StringBuilder("> ")).substring(2) + System.lineSeparator())
+                    .collect(Collectors.joining()), out.toString());
+        }
+
         @Test
         @DisplayName("Rental creation test")
         public void rentalCreationTest() {
@@ -288,6 +728,147 @@ public class AgencyTests {
             assertTrue(agency.aVehicleIsRentedBy(client1));
             agency.returnVehicle(client1);
             assertFalse(agency.aVehicleIsRentedBy(client1));
+            assertFalse(agency.vehicleIsRented(car1));
+            assertDoesNotThrow(() -> agency.rentVehicle(client2, car1));
+        }
+
+        @Test
+        @DisplayName("Rental limit test")
+        public void rentalLimitTest() {
+            agency.rentVehicle(client1, car1);
+            assertThrows(IllegalStateException.class, () -> agency.rentVehicle(client1, car2));
+            assertThrows(IllegalArgumentException.class, () -> agency.setRentalLimit(0));
+
+            agency.setRentalLimit(3);
+            agency.rentVehicle(client1, car2);
+            agency.rentVehicle(client1, motorbike1);
+            assertThrows(IllegalStateException.class, () -> agency.rentVehicle(client1, car3));
+            assertThrows(IllegalStateException.class, () -> agency.rentVehicle(client2, car2));
+            assertEquals(List.of(car1, car2, motorbike1), List.copyOf(agency.vehiclesRentedBy(client1)));
+            assertEquals(client1, agency.renterOf(motorbike1));
+        }
+
+        @Test
+        @DisplayName("Return one vehicle test")
+        public void returnOneVehicleTest() {
+            agency.setRentalLimit(2);
+            agency.rentVehicle(client1, car1);
+            agency.rentVehicle(client1, car2);
+
+            assertFalse(agency.returnVehicle(client2, car1));
+            assertFalse(agency.returnVehicle(client1, car3));
+            assertTrue(agency.returnVehicle(client1, car1));
+            assertFalse(agency.vehicleIsRented(car1));
+            assertEquals(Set.of(car2), agency.vehiclesRentedBy(client1));
+            agency.rentVehicle(client1, car3);
+
+            agency.returnVehicle(client1);
+            assertFalse(agency.aVehicleIsRentedBy(client1));
+            assertTrue(agency.vehiclesRentedBy(client1).isEmpty());
+            assertTrue(agency.allRentedVehicles().isEmpty());
+        }
+
+        @Test
+        @DisplayName("Interned brands test")
+        public void internedBrandsTest() {
+            Car copy = new Car(new String("Toyota"), new String("Corolla"), 2019, 4);
+            assertSame(car1.getBrand(), copy.getBrand());
+            assertSame(car1.getModel(), copy.getModel());
+            assertEquals(car1, copy);
+            assertTrue(new BrandCriterion(new String("Toyota")).test(copy));
+            assertFalse(new BrandCriterion("Ford").test(copy));
+            assertEquals(List.of(car1, car2), agency.select(new BrandCriterion(new String("Toyota"))));
+        }
+
+        @Test
+        @DisplayName("Try rent vehicle test")
+        public void tryRentVehicleTest() {
+            assertEquals(RentalOutcome.RENTED, agency.tryRentVehicle(client1, car1));
+            assertEquals(RentalOutcome.RENTAL_LIMIT_REACHED, agency.tryRentVehicle(client1, car2));
+            assertEquals(RentalOutcome.VEHICLE_ALREADY_RENTED, agency.tryRentVehicle(client2, car1));
+            assertEquals(RentalOutcome.UNKNOWN_VEHICLE, agency.tryRentVehicle(client2, new Car("Fiat", "Panda", 2019, 4)));
+            assertEquals(Set.of(car1), Set.copyOf(agency.allRentedVehicles()));
+
+            assertFalse(agency.tryRemove(new Car("Fiat", "Panda", 2019, 4)));
+            assertTrue(agency.tryRemove(car3));
+            assertFalse(agency.contains(car3));
+        }
+
+        @Test
+        @DisplayName("Failure messages test")
+        public void failureMessagesTest() {
+            agency.rentVehicle(client1, car1);
+            RentalConflictException limit = assertThrows(RentalConflictException.class, () -> agency.rentVehicle(client1, car2));
+            assertEquals("Client " + client1 + " already has a rented vehicle.", limit.getMessage());
+            RentalConflictException rented = assertThrows(RentalConflictException.class, () -> agency.rentVehicle(client2, car1));
+            assertEquals(RentalOutcome.VEHICLE_ALREADY_RENTED, rented.getReason());
+            assertEquals("Vehicle " + car1 + " is already rented.", rented.getMessage());
+
+            Car unknown = new Car("Fiat", "Panda", 2019, 4);
+            assertEquals("Unknown vehicle: " + unknown, assertThrows(UnknownVehicleException.class, () -> agency.remove(unknown)).getMessage());
+            assertEquals(0, new UnknownVehicleException(unknown, false).getStackTrace().length);
+            assertEquals(0, new RentalConflictException(RentalOutcome.VEHICLE_ALREADY_RENTED, client2, car1, 0, false).getStackTrace().length);
+            assertTrue(limit.getStackTrace().length > 0);
+        }
+
+        @Test
+        @DisplayName("Rent all test")
+        public void rentAllTest() {
+            agency.setRentalLimit(2);
+            BatchRentalResult result = agency.rentAll(List.of(
+                    new RentalRequest(client1, car1),
+                    new RentalRequest(client1, motorbike1),
+                    new RentalRequest(client2, car2)));
+            assertTrue(result.isApplied());
+            assertEquals(car1.dailyRentalPrice() + motorbike1.dailyRentalPrice() + car2.dailyRentalPrice(), result.getTotalDailyPrice());
+            assertEquals(Set.of(car1, motorbike1), agency.vehiclesRentedBy(client1));
+            assertEquals(client2, agency.renterOf(car2));
+
+            result = agency.rentAll(List.of(
+                    new RentalRequest(client2, car3),
+                    new RentalRequest(client2, car1),
+                    new RentalRequest(client2, car3),
+                    new RentalRequest(client1, motorbike2),
+                    new RentalRequest(client2, new Car("Fiat", "Panda", 2019, 4)),
+                    new RentalRequest(client2, motorbike2)));
+            assertFalse(result.isApplied());
+            assertEquals(0, result.getTotalDailyPrice());
+            assertEquals(List.of(
+                    new BatchRentalResult.Failure(1, RentalOutcome.VEHICLE_ALREADY_RENTED),
+                    new BatchRentalResult.Failure(2, RentalOutcome.DUPLICATE_IN_BATCH),
+                    new BatchRentalResult.Failure(3, RentalOutcome.RENTAL_LIMIT_REACHED),
+                    new BatchRentalResult.Failure(4, RentalOutcome.UNKNOWN_VEHICLE),
+                    new BatchRentalResult.Failure(5, RentalOutcome.RENTAL_LIMIT_REACHED)), result.getFailures());
+            assertFalse(agency.vehicleIsRented(car3));
+            assertFalse(agency.vehicleIsRented(motorbike2));
+            assertEquals(Set.of(car2), agency.vehiclesRentedBy(client2));
+        }
+
+        @Test
+        @DisplayName("Return all test")
+        public void returnAllTest() {
+            agency.setRentalLimit(2);
+            agency.rentVehicle(client1, car1);
+            agency.rentVehicle(client1, car2);
+            agency.rentVehicle(client2, car3);
+
+            BatchRentalResult result = agency.returnAll(List.of(new RentalRequest(client1, car1), new RentalRequest(client1, car3)));
+            assertEquals(List.of(new BatchRentalResult.Failure(1, RentalOutcome.NOT_RENTED_BY_CLIENT)), result.getFailures());
+            assertTrue(agency.vehicleIsRented(car1));
+
+            result = agency.returnAll(List.of(new RentalRequest(client1, car1), new RentalRequest(client2, car3)));
+            assertTrue(result.isApplied());
+            assertEquals(car1.dailyRentalPrice() + car3.dailyRentalPrice(), result.getTotalDailyPrice());
+            assertEquals(List.of(car2), List.copyOf(agency.allRentedVehicles()));
+        }
+
+        @Test
+        @DisplayName("Renter of vehicle test")
+        public void renterOfVehicleTest() {
+            agency.rentVehicle(client1, car1);
+            assertTrue(agency.vehicleIsRented(car1));
+            assertEquals(client1, agency.renterOf(car1));
+            assertNull(agency.renterOf(car2));
         }
 
         @Test
@@ -296,5 +877,881 @@ public class AgencyTests {
             agency.rentVehicle(client1, car1);
             assertThat(agency.allRentedVehicles()).contains(car1);
         }
+
+        @Test
+        @DisplayName("Reserve test")
+        public void reserveTest() {
+            LocalDate start = LocalDate.of(2024, 7, 1);
+            Reservation reservation = agency.reserve(client1, car1, start, start.plusDays(7));
+            assertEquals(7, reservation.days());
+            assertEquals(car1.dailyRentalPrice() * 7, reservation.price());
+
+            assertThrows(IllegalStateException.class, () -> agency.reserve(client2, car1, start.plusDays(6), start.plusDays(9)));
+            assertThrows(IllegalStateException.class, () -> agency.reserve(client2, car1, start.minusDays(1), start.plusDays(1)));
+            assertThrows(IllegalStateException.class, () -> agency.reserve(client2, car1, start.plusDays(2), start.plusDays(3)));
+            assertThrows(IllegalArgumentException.class, () -> agency.reserve(client2, car2, start, start));
+            assertThrows(UnknownVehicleException.class, () -> agency.reserve(client2, new Car("Fiat", "Panda", 2019, 4), start, start.plusDays(1)));
+            assertEquals(List.of(reservation), agency.reservationsOf(car1));
+
+            Reservation before = agency.reserve(client2, car1, start.minusDays(3), start);
+            Reservation after = agency.reserve(client2, car1, start.plusDays(7), start.plusDays(8));
+            assertEquals(List.of(before, reservation, after), agency.reservationsOf(car1));
+        }
+
+        @Test
+        @DisplayName("Free vehicles test")
+        public void freeVehiclesTest() {
+            LocalDate start = LocalDate.of(2024, 7, 1);
+            Reservation reservation = agency.reserve(client1, car1, start, start.plusDays(7));
+            agency.reserve(client2, motorbike1, start.plusDays(10), start.plusDays(12));
+
+            assertFalse(agency.isFree(car1, start.plusDays(3), start.plusDays(4)));
+            assertTrue(agency.isFree(car1, start.plusDays(7), start.plusDays(10)));
+            assertEquals(List.of(car2, car3, motorbike1, motorbike2), agency.freeVehicles(v -> true, start, start.plusDays(2)));
+            assertEquals(List.of(car2), agency.freeVehicles(new BrandCriterion("Toyota"), start, start.plusDays(2)));
+            assertEquals(List.of(car2, car3, motorbike2), agency.freeVehicles(v -> true, start.plusDays(5), start.plusDays(11)));
+            assertEquals(List.of(car2), agency.freeVehicles(new BrandCriterion("Toyota").and(new MaxPriceCriterion(1000)), start, start.plusDays(2)));
+            assertEquals(List.of(motorbike1), agency.freeVehicles(new BrandCriterion("Honda").and(Criterion.of(vehicle -> vehicle == motorbike1)), start, start.plusDays(2)));
+            assertTrue(agency.freeVehicles(new BrandCriterion("Peugeot"), start, start.plusDays(2)).isEmpty());
+
+            assertTrue(agency.cancel(reservation));
+            assertFalse(agency.cancel(reservation));
+            assertTrue(agency.isFree(car1, start, start.plusDays(7)));
+
+            agency.reserve(client1, car2, start, start.plusDays(7));
+            agency.remove(car2);
+            agency.add(car2);
+            assertTrue(agency.isFree(car2, start, start.plusDays(7)));
+        }
+    }
+
+    @DisplayName("Concurrent rental agency tests")
+    @Nested
+    class ConcurrentRentalAgencyTests {
+        private static final int THREADS = 8;
+
+        ConcurrentRentalAgency agency;
+        List<Vehicle> vehicles;
+        List<Client> clients;
+
+        @BeforeEach
+        public void createAgency() {
+            vehicles = new ArrayList<>();
+            for(int i = 0; i < 16; i++) {
+                vehicles.add(new Car("Toyota", "Model" + i, 2019, 4));
+            }
+            clients = new ArrayList<>();
+            for(int i = 0; i < 24; i++) {
+                clients.add(new Client("Client", "" + i, 1990));
+            }
+            agency = new ConcurrentRentalAgency(vehicles);
+        }
+
+        @Test
+        @DisplayName("Concurrent agency keeps insertion order test")
+        public void insertionOrderTest() {
+            assertEquals(vehicles, agency.getVehicles());
+            assertFalse(agency.add(new Car("Toyota", "Model0", 2019, 5)));
+            agency.remove(vehicles.get(0));
+            assertEquals(vehicles.subList(1, vehicles.size()), agency.getVehicles());
+            assertThrows(UnknownVehicleException.class, () -> agency.remove(vehicles.get(0)));
+        }
+
+        @Test
+        @DisplayName("Only one client rents a contended vehicle test")
+        public void contendedVehicleTest() throws Exception {
+            Vehicle vehicle = vehicles.get(0);
+            AtomicInteger successes = new AtomicInteger();
+            CountDownLatch start = new CountDownLatch(1);
+            ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+            try {
+                List<Future<?>> futures = new ArrayList<>();
+                for(Client client : clients) {
+                    futures.add(executor.submit(() -> {
+                        start.await();
+                        try {
+                            agency.rentVehicle(client, vehicle);
+                            successes.incrementAndGet();
+                        } catch(IllegalStateException ignored) {
+                            // Another client won the vehicle.
+                        }
+                        return null;
+                    }));
+                }
+                start.countDown();
+                for(Future<?> future : futures) {
+                    future.get(10, TimeUnit.SECONDS);
+                }
+            } finally {
+                executor.shutdownNow();
+            }
+            assertEquals(1, successes.get());
+            assertTrue(agency.vehicleIsRented(vehicle));
+            assertTrue(agency.aVehicleIsRentedBy(agency.renterOf(vehicle)));
+        }
+
+        @Test
+        @DisplayName("Rental invariants hold under contention test")
+        public void rentalStressTest() throws Exception {
+            CountDownLatch start = new CountDownLatch(1);
+            ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+            try {
+                List<Future<?>> futures = new ArrayList<>();
+                for(int t = 0; t < THREADS; t++) {
+                    long seed = t;
+                    futures.add(executor.submit(() -> {
+                        Random random = new Random(seed);
+                        start.await();
+                        for(int i = 0; i < 20_000; i++) {
+                            Client client = clients.get(random.nextInt(clients.size()));
+                            if(random.nextBoolean()) {
+                                try {
+                                    agency.rentVehicle(client, vehicles.get(random.nextInt(vehicles.size())));
+                                } catch(IllegalStateException ignored) {
+                                    // Client or vehicle already busy.
+                                }
+                            } else {
+                                agency.returnVehicle(client);
+                            }
+                        }
+                        return null;
+                    }));
+                }
+                start.countDown();
+                for(Future<?> future : futures) {
+                    future.get(60, TimeUnit.SECONDS);
+                }
+            } finally {
+                executor.shutdownNow();
+            }
+
+            int rentingClients = 0;
+            for(Client client : clients) {
+                if(agency.aVehicleIsRentedBy(client)) {
+                    rentingClients++;
+                }
+            }
+            assertEquals(rentingClients, agency.allRentedVehicles().size());
+            for(Vehicle vehicle : agency.allRentedVehicles()) {
+                Client renter = agency.renterOf(vehicle);
+                assertNotNull(renter);
+                assertTrue(agency.aVehicleIsRentedBy(renter));
+                assertThrows(IllegalStateException.class, () -> agency.rentVehicle(renter, vehicle));
+            }
+        }
+
+        @Test
+        @DisplayName("Concurrent agency follows the rental limit of the sequential agency test")
+        public void rentalLimitTest() throws Exception {
+            RentalAgency sequential = new RentalAgency(vehicles);
+            agency.setRentalLimit(2);
+            sequential.setRentalLimit(2);
+            assertThrows(IllegalArgumentException.class, () -> agency.setRentalLimit(0));
+            assertEquals(2, agency.getRentalLimit());
+
+            Client client = clients.get(0);
+            for(Vehicle vehicle : List.of(vehicles.get(0), vehicles.get(1), vehicles.get(2), vehicles.get(1))) {
+                assertEquals(sequential.tryRentVehicle(client, vehicle), agency.tryRentVehicle(client, vehicle));
+            }
+            assertEquals(Set.of(vehicles.get(0), vehicles.get(1)), agency.vehiclesRentedBy(client));
+            RentalConflictException conflict = assertThrows(RentalConflictException.class, () -> agency.rentVehicle(client, vehicles.get(3)));
+            assertEquals(RentalOutcome.RENTAL_LIMIT_REACHED, conflict.getReason());
+            assertTrue(conflict.getMessage().contains("already has 2 rented vehicles"));
+
+            // The booking service returns every vehicle of the client before the next rentals.
+            try(BookingService service = new BookingService(agency)) {
+                service.returnVehicle(client);
+                assertEquals(RentalOutcome.RENTED, service.rent(clients.get(1), vehicles.get(0)).get(10, TimeUnit.SECONDS));
+                assertEquals(RentalOutcome.RENTED, service.rent(clients.get(1), vehicles.get(1)).get(10, TimeUnit.SECONDS));
+            }
+            assertFalse(agency.aVehicleIsRentedBy(client));
+            assertEquals(Set.of(vehicles.get(0), vehicles.get(1)), Set.copyOf(agency.allRentedVehicles()));
+        }
+
+        @Test
+        @DisplayName("Single vehicle returns hold under contention test")
+        public void returnOneVehicleTest() throws Exception {
+            agency.setRentalLimit(3);
+            Client client = clients.get(0);
+            agency.rentVehicle(client, vehicles.get(0));
+            agency.rentVehicle(client, vehicles.get(1));
+            assertFalse(agency.returnVehicle(clients.get(1), vehicles.get(0)));
+            assertFalse(agency.returnVehicle(client, vehicles.get(2)));
+            assertTrue(agency.returnVehicle(client, vehicles.get(0)));
+            assertEquals(Set.of(vehicles.get(1)), agency.vehiclesRentedBy(client));
+            assertTrue(agency.returnVehicle(client, vehicles.get(1)));
+            assertFalse(agency.aVehicleIsRentedBy(client));
+
+            CountDownLatch start = new CountDownLatch(1);
+            ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+            try {
+                List<Future<?>> futures = new ArrayList<>();
+                for(int t = 0; t < THREADS; t++) {
+                    long seed = t;
+                    futures.add(executor.submit(() -> {
+                        Random random = new Random(seed);
+                        start.await();
+                        for(int i = 0; i < 20_000; i++) {
+                            Client renter = clients.get(random.nextInt(clients.size()));
+                            Vehicle vehicle = vehicles.get(random.nextInt(vehicles.size()));
+                            switch(random.nextInt(5)) {
+                                case 0, 1 -> agency.tryRentVehicle(renter, vehicle);
+                                case 2, 3 -> agency.returnVehicle(renter, vehicle);
+                                default -> agency.returnVehicle(renter);
+                            }
+                        }
+                        return null;
+                    }));
+                }
+                start.countDown();
+                for(Future<?> future : futures) {
+                    future.get(60, TimeUnit.SECONDS);
+                }
+            } finally {
+                executor.shutdownNow();
+            }
+
+            int rented = 0;
+            for(Client renter : clients) {
+                Set<Vehicle> rentedByClient = agency.vehiclesRentedBy(renter);
+                assertTrue(rentedByClient.size() <= 3);
+                assertEquals(!rentedByClient.isEmpty(), agency.aVehicleIsRentedBy(renter));
+                for(Vehicle vehicle : rentedByClient) {
+                    assertEquals(renter, agency.renterOf(vehicle));
+                }
+                rented += rentedByClient.size();
+            }
+            assertEquals(rented, agency.allRentedVehicles().size());
+        }
+    }
+
+    @DisplayName("Fleet snapshot tests")
+    @Nested
+    class FleetSnapshotTests {
+        List<Vehicle> vehicles;
+        RentalAgency agency;
+
+        @BeforeEach
+        public void createAgency() {
+            vehicles = new ArrayList<>();
+            for(int i = 0; i < 1000; i++) {
+                vehicles.add(new Car("Toyota", "Model" + i, 2019, 4));
+            }
+            agency = new RentalAgency(vehicles);
+        }
+
+        @Test
+        @DisplayName("Snapshots are not affected by later changes test")
+        public void immutableSnapshotTest() {
+            FleetSnapshot before = agency.getVehicles();
+            Vehicle added = new Car("Peugeot", "208", 2020, 5);
+            agency.add(added);
+            agency.remove(vehicles.get(0));
+
+            assertEquals(vehicles, before);
+            assertTrue(agency.getVehicles().version() > before.version());
+            assertEquals(vehicles.get(1), agency.getVehicles().get(0));
+            assertEquals(added, agency.getVehicles().get(999));
+            assertThrows(UnsupportedOperationException.class, () -> agency.getVehicles().add(added));
+
+            // Iterating a snapshot while the agency changes never throws ConcurrentModificationException.
+            int count = 0;
+            for(Vehicle vehicle : agency.getVehicles()) {
+                agency.remove(vehicle);
+                count++;
+            }
+            assertEquals(1000, count);
+            assertTrue(agency.getVehicles().isEmpty());
+        }
+
+        @Test
+        @DisplayName("Limited streams do not flatten the fleet test")
+        public void lazyStreamTest() {
+            Vehicle added = new Car("Peugeot", "208", 2020, 5);
+            agency.add(added);
+            assertEquals(vehicles.subList(0, 20), agency.selectStream(vehicle -> vehicle.getProductionYear() > 2000).limit(20).toList());
+            assertEquals(added, agency.selectStream(new BrandCriterion("Peugeot")).findFirst().orElseThrow());
+            assertEquals(vehicles.get(0), agency.selectStream(new BrandCriterion("Toyota")).findFirst().orElseThrow());
+            assertFalse(agency.getVehicles().isFlattened());
+
+            // Once a snapshot is flattened, streams read its array.
+            assertEquals(1001, agency.select(ConstantCriterion.ALWAYS).size());
+            assertTrue(agency.getVehicles().isFlattened());
+            assertEquals(vehicles.get(1), agency.selectStream(vehicle -> true).skip(1).findFirst().orElseThrow());
+        }
+
+        @Test
+        @DisplayName("Snapshots keep insertion order after random removals test")
+        public void insertionOrderTest() {
+            List<Vehicle> expected = new ArrayList<>(vehicles);
+            Random random = new Random(42);
+            for(int i = 0; i < 700; i++) {
+                Vehicle removed = expected.remove(random.nextInt(expected.size()));
+                agency.remove(removed);
+                if(i % 7 == 0) {
+                    Vehicle added = new Motorbike("Yamaha", "MT" + i, 2018, 125);
+                    agency.add(added);
+                    expected.add(added);
+                }
+            }
+
+            FleetSnapshot snapshot = agency.getVehicles();
+            assertEquals(expected, snapshot);
+            for(int i = 0; i < expected.size(); i++) {
+                assertEquals(expected.get(i), snapshot.get(i));
+            }
+            assertEquals(expected, snapshot.stream().parallel().collect(Collectors.toList()));
+            // The stream flattened the snapshot, the following reads go through the array.
+            assertEquals(expected, new ArrayList<>(snapshot));
+            assertEquals(expected.get(expected.size() - 1), snapshot.get(expected.size() - 1));
+            assertEquals(expected.subList(10, 20), snapshot.subList(10, 20));
+            Predicate<Vehicle> motorbikes = vehicle -> vehicle instanceof Motorbike;
+            assertEquals(agency.select(motorbikes), snapshot.select(motorbikes));
+        }
+    }
+
+    @DisplayName("Ordered selection tests")
+    @Nested
+    class OrderedSelectionTests {
+        List<Vehicle> vehicles;
+        RentalAgency agency;
+
+        @BeforeEach
+        public void createAgency() {
+            vehicles = new ArrayList<>();
+            Random random = new Random(7);
+            for(int i = 0; i < 500; i++) {
+                String brand = List.of("Toyota", "Peugeot", "Renault").get(random.nextInt(3));
+                vehicles.add(new Car(brand, "Model" + i, 2000 + random.nextInt(20), 2 + random.nextInt(6)));
+            }
+            agency = new RentalAgency(vehicles);
+        }
+
+        List<Vehicle> sorted(Predicate<Vehicle> criterion, VehicleOrder order) {
+            // A stable sort keeps the insertion order of vehicles with the same key.
+            return vehicles.stream().filter(criterion).sorted(order).collect(Collectors.toList());
+        }
+
+        @ParameterizedTest
+        @CsvSource({"CHEAPEST", "MOST_EXPENSIVE", "NEWEST", "OLDEST", "BRAND"})
+        @DisplayName("Top vehicles test")
+        public void topVehiclesTest(VehicleOrder order) {
+            Predicate<Vehicle> recent = new ProductionYearCriterion(2005, 2015);
+            Predicate<Vehicle> peugeots = new BrandCriterion("Peugeot");
+
+            assertEquals(sorted(recent, order).subList(0, 20), agency.select(recent, order, 20));
+            assertEquals(sorted(peugeots, order).subList(0, 20), agency.select(peugeots, order, 20));
+            assertEquals(sorted(vehicle -> true, order), agency.select(vehicle -> true, order, 1000));
+            assertEquals(sorted(recent, order).subList(40, 60), agency.selectPage(recent, order, 40, 20).vehicles());
+            assertTrue(agency.select(recent, order, 0).isEmpty());
+            assertThrows(IllegalArgumentException.class, () -> agency.selectPage(recent, order, -1, 20));
+            assertThrows(IllegalArgumentException.class, () -> agency.selectPage(recent, order, 0, 0));
+        }
+
+        @ParameterizedTest
+        @CsvSource({"CHEAPEST", "NEWEST"})
+        @DisplayName("Pages follow each other test")
+        public void cursorTest(VehicleOrder order) {
+            Predicate<Vehicle> seats = new MinSeatsCriterion(4);
+            List<Vehicle> expected = sorted(seats, order);
+
+            List<Vehicle> paged = new ArrayList<>();
+            Page page = agency.selectPage(seats, order, 0, 30);
+            paged.addAll(page.vehicles());
+            while(page.hasNext()) {
+                page = agency.selectPage(seats, page.next(), 30);
+                assertFalse(page.vehicles().isEmpty());
+                paged.addAll(page.vehicles());
+            }
+            assertEquals(expected, paged);
+
+            // Changes between two pages neither repeat nor skip the vehicles of the next pages.
+            page = agency.selectPage(seats, order, 0, 30);
+            Vehicle last = page.vehicles().get(29);
+            agency.remove(last);
+            agency.remove(expected.get(0));
+            agency.remove(expected.get(35));
+            Page next = agency.selectPage(seats, page.next(), 30);
+            List<Vehicle> remaining = new ArrayList<>(expected.subList(30, 61));
+            remaining.remove(expected.get(35));
+            assertEquals(remaining, next.vehicles());
+        }
+    }
+
+    @DisplayName("Booking service tests")
+    @Nested
+    class BookingServiceTests {
+        ConcurrentRentalAgency agency;
+        List<Vehicle> vehicles;
+        BookingService service;
+
+        @BeforeEach
+        public void createService() {
+            vehicles = new ArrayList<>();
+            for(int i = 0; i < 64; i++) {
+                vehicles.add(new Car("Toyota", "Model" + i, 2019, 4));
+            }
+            agency = new ConcurrentRentalAgency(vehicles);
+            service = new BookingService(agency);
+        }
+
+        @AfterEach
+        public void closeService() {
+            service.close();
+        }
+
+        @Test
+        @DisplayName("Requests of a client run in order test")
+        public void clientOrderTest() {
+            List<CompletableFuture<RentalOutcome>> outcomes = new ArrayList<>();
+            for(int i = 0; i < 32; i++) {
+                Client client = new Client("Client", "" + i, 1990);
+                outcomes.add(service.rent(client, vehicles.get(i)));
+                service.returnVehicle(client);
+                outcomes.add(service.rent(client, vehicles.get(63 - i)));
+            }
+            for(CompletableFuture<RentalOutcome> outcome : outcomes) {
+                assertEquals(RentalOutcome.RENTED, outcome.join());
+            }
+            assertEquals(32, agency.allRentedVehicles().size());
+        }
+
+        @Test
+        @DisplayName("Rentals of a returned vehicle wait for the return test")
+        public void returnThenRentTest() {
+            List<CompletableFuture<RentalOutcome>> outcomes = new ArrayList<>();
+            for(int i = 0; i < 32; i++) {
+                Client first = new Client("First", "" + i, 1990);
+                Client second = new Client("Second", "" + i, 1990);
+                // The first rental is applied or still queued when the return is submitted.
+                if(i % 2 == 0) {
+                    service.rent(first, vehicles.get(i)).join();
+                } else {
+                    outcomes.add(service.rent(first, vehicles.get(i)));
+                }
+                service.returnVehicle(first);
+                outcomes.add(service.rent(second, vehicles.get(i)));
+            }
+            for(CompletableFuture<RentalOutcome> outcome : outcomes) {
+                assertEquals(RentalOutcome.RENTED, outcome.join());
+            }
+            assertEquals(32, agency.allRentedVehicles().size());
+        }
+
+        @Test
+        @DisplayName("Only one client rents a contended vehicle test")
+        public void contendedVehicleTest() {
+            List<CompletableFuture<RentalOutcome>> outcomes = new ArrayList<>();
+            for(int i = 0; i < 50; i++) {
+                outcomes.add(service.rent(new Client("Client", "" + i, 1990), vehicles.get(0)));
+            }
+            assertEquals(1, outcomes.stream().map(CompletableFuture::join).filter(RentalOutcome.RENTED::equals).count());
+            assertEquals(vehicles.subList(1, 64), service.select(vehicle -> !agency.vehicleIsRented(vehicle)).join());
+        }
+    }
+
+    @DisplayName("Event loop agency tests")
+    @Nested
+    class EventLoopRentalAgencyTests {
+        List<Vehicle> vehicles;
+        EventLoopRentalAgency agency;
+
+        @BeforeEach
+        public void createAgency() {
+            vehicles = new ArrayList<>();
+            for(int i = 0; i < 64; i++) {
+                vehicles.add(new Car("Toyota", "Model" + i, 2019, 4));
+            }
+            agency = new EventLoopRentalAgency(new RentalAgency(vehicles), 16);
+        }
+
+        @AfterEach
+        public void closeAgency() {
+            agency.close();
+        }
+
+        @Test
+        @DisplayName("Commands are applied in order test")
+        public void commandsOrderTest() throws Exception {
+            ExecutorService executor = Executors.newFixedThreadPool(8);
+            List<Future<RentalOutcome>> outcomes = new ArrayList<>();
+            for(int i = 0; i < 64; i++) {
+                Client client = new Client("Client", "" + i, 1990);
+                Vehicle vehicle = vehicles.get(i);
+                outcomes.add(executor.submit(() -> {
+                    agency.rent(client, vehicle);
+                    agency.returnVehicle(client);
+                    return agency.rent(client, vehicle).join();
+                }));
+            }
+            for(Future<RentalOutcome> outcome : outcomes) {
+                assertEquals(RentalOutcome.RENTED, outcome.get());
+            }
+            executor.shutdown();
+            assertEquals(64, agency.allRentedVehicles().size());
+            assertEquals(RentalOutcome.VEHICLE_ALREADY_RENTED, agency.rent(new Client("Other", "Client", 1990), vehicles.get(0)).join());
+        }
+
+        @Test
+        @DisplayName("Snapshots are published after each batch test")
+        public void snapshotsTest() {
+            EventLoopRentalAgency.Snapshot before = agency.snapshot();
+            Car car = new Car("Ford", "Fiesta", 2018, 4);
+            assertTrue(agency.add(car).join());
+            assertFalse(agency.add(car).join());
+            assertEquals(List.of(car), agency.select(new BrandCriterion("Ford")));
+            assertEquals(64, before.vehicles().size());
+            assertThrows(UnsupportedOperationException.class, () -> agency.snapshot().vehicles().clear());
+
+            assertTrue(agency.remove(car).join());
+            assertFalse(agency.remove(car).join());
+            assertTrue(agency.select(new BrandCriterion("Ford")).isEmpty());
+
+            agency.close();
+            assertThrows(IllegalStateException.class, () -> agency.rent(new Client("John", "Doe", 1990), car));
+        }
+
+        @Test
+        @DisplayName("Only changes publish a snapshot test")
+        public void unchangedSnapshotTest() {
+            Client john = new Client("John", "Doe", 1990);
+            Client jane = new Client("Jane", "Doe", 1990);
+            assertEquals(RentalOutcome.RENTED, agency.rent(john, vehicles.get(0)).join());
+            EventLoopRentalAgency.Snapshot rented = agency.snapshot();
+            assertEquals(Map.of(vehicles.get(0), john), rented.rentals());
+
+            assertEquals(RentalOutcome.VEHICLE_ALREADY_RENTED, agency.rent(jane, vehicles.get(0)).join());
+            assertEquals(RentalOutcome.RENTAL_LIMIT_REACHED, agency.rent(john, vehicles.get(1)).join());
+            agency.returnVehicle(jane).join();
+            assertFalse(agency.add(vehicles.get(2)).join());
+            assertSame(rented, agency.snapshot());
+
+            assertTrue(agency.add(new Car("Ford", "Fiesta", 2018, 4)).join());
+            assertSame(rented.rentals(), agency.snapshot().rentals());
+            agency.returnVehicle(john).join();
+            assertTrue(agency.snapshot().rentals().isEmpty());
+            assertEquals(Map.of(vehicles.get(0), john), rented.rentals());
+        }
+
+        @Test
+        @DisplayName("Failing commands do not stop the writer test")
+        public void failingCommandTest() {
+            Client broken = new Client("John", "Doe", 1990) {
+                @Override
+                public int hashCode() {
+                    throw new AssertionError("broken client");
+                }
+            };
+            CompletionException failure = assertThrows(CompletionException.class, () -> agency.rent(broken, vehicles.get(0)).join());
+            assertInstanceOf(AssertionError.class, failure.getCause());
+            assertEquals(RentalOutcome.RENTED, agency.rent(new Client("Jane", "Doe", 1990), vehicles.get(0)).join());
+        }
+
+        @Test
+        @DisplayName("Commands fail once the writer stopped test")
+        public void stoppedWriterTest() throws Exception {
+            Thread writer = Thread.getAllStackTraces().keySet().stream()
+                    .filter(thread -> thread.getName().equals("rental-agency-writer")).findFirst().orElseThrow();
+            writer.interrupt();
+            writer.join();
+
+            // More commands than the capacity of the buffer, none of them may wait forever.
+            for(int i = 0; i < 32; i++) {
+                CompletableFuture<RentalOutcome> outcome;
+                try {
+                    outcome = agency.rent(new Client("Client", "" + i, 1990), vehicles.get(i));
+                } catch(IllegalStateException e) {
+                    continue;
+                }
+                assertThrows(ExecutionException.class, () -> outcome.get(5, TimeUnit.SECONDS));
+            }
+            agency.close();
+        }
+    }
+
+    @DisplayName("Sharded agency tests")
+    @Nested
+    class ShardedRentalAgencyTests {
+        List<Vehicle> vehicles;
+        ShardedRentalAgency agency;
+        Client client1;
+        Client client2;
+
+        @BeforeEach
+        public void createAgency() {
+            vehicles = new ArrayList<>();
+            for(int i = 0; i < 200; i++) {
+                vehicles.add(new Car(i % 2 == 0 ? "Toyota" : "Peugeot", "Model" + i, 2000 + i % 20, 2 + i % 5));
+            }
+            agency = ShardedRentalAgency.local(4);
+            assertEquals(200, agency.addAll(vehicles));
+            client1 = new Client("John", "Doe", 1998);
+            client2 = new Client("Jane", "Smith", 2000);
+        }
+
+        @AfterEach
+        public void closeAgency() {
+            agency.close();
+        }
+
+        @Test
+        @DisplayName("Clients rent a single vehicle across shards test")
+        public void oneRentalPerClientTest() {
+            Vehicle first = vehicles.get(0);
+            Vehicle other = vehicles.stream().filter(vehicle -> agency.shardOf(vehicle) != agency.shardOf(first)).findFirst().orElseThrow();
+
+            assertEquals(RentalOutcome.RENTED, agency.tryRentVehicle(client1, first));
+            assertEquals(RentalOutcome.RENTAL_LIMIT_REACHED, agency.tryRentVehicle(client1, other));
+            assertEquals(RentalOutcome.VEHICLE_ALREADY_RENTED, agency.tryRentVehicle(client2, first));
+            assertEquals(RentalOutcome.UNKNOWN_VEHICLE, agency.tryRentVehicle(client1, new Car("Renault", "Clio", 2015, 5)));
+            RentalConflictException conflict = assertThrows(RentalConflictException.class, () -> agency.rentVehicle(client1, other));
+            assertEquals(RentalOutcome.RENTAL_LIMIT_REACHED, conflict.getReason());
+            assertEquals(1, agency.getRentalLimit());
+            assertTrue(agency.aVehicleIsRentedBy(client1));
+            assertEquals(List.of(first), agency.allRentedVehicles());
+
+            agency.returnVehicle(client1);
+            assertFalse(agency.vehicleIsRented(first));
+            assertEquals(RentalOutcome.RENTED, agency.tryRentVehicle(client1, other));
+            assertTrue(agency.vehicleIsRented(other));
+
+            agency.remove(first);
+            assertFalse(agency.contains(first));
+            assertEquals(199, agency.size());
+            assertThrows(UnknownVehicleException.class, () -> agency.remove(first));
+        }
+
+        @Test
+        @DisplayName("Selections are gathered from all shards test")
+        public void scatterGatherTest() {
+            Criterion toyotas = new BrandCriterion("Toyota");
+            List<Vehicle> expected = vehicles.stream().filter(toyotas).sorted(VehicleOrder.CHEAPEST).collect(Collectors.toList());
+
+            assertEquals(Set.copyOf(expected), Set.copyOf(agency.select(toyotas)));
+            List<Vehicle> cheapest = agency.select(toyotas, VehicleOrder.CHEAPEST, Integer.MAX_VALUE);
+            assertEquals(Set.copyOf(expected), Set.copyOf(cheapest));
+            // Equal prices are listed shard by shard, so only the prices are in a known order.
+            assertEquals(prices(expected), prices(cheapest));
+            assertEquals(prices(expected).subList(0, 7), prices(agency.select(toyotas, VehicleOrder.CHEAPEST, 7)));
+            assertEquals(5, agency.select(toyotas, null, 5).size());
+            assertTrue(agency.select(toyotas, VehicleOrder.CHEAPEST, 0).isEmpty());
+            assertThrows(IllegalArgumentException.class, () -> agency.select(toyotas, VehicleOrder.CHEAPEST, -1));
+            assertThrows(IllegalArgumentException.class, () -> agency.select(Criterion.of(vehicle -> true)));
+            assertThrows(IllegalArgumentException.class, () -> agency.select(toyotas.and(Criterion.of(vehicle -> true))));
+        }
+
+        private List<Double> prices(List<Vehicle> vehicles) {
+            return vehicles.stream().map(Vehicle::dailyRentalPrice).collect(Collectors.toList());
+        }
+    }
+
+    @DisplayName("Fleet serializer tests")
+    @Nested
+    class FleetSerializerTests {
+        @TempDir
+        Path directory;
+
+        List<Vehicle> vehicles;
+
+        @BeforeEach
+        public void createVehicles() {
+            vehicles = List.of(
+                    new Car("Toyota", "Corolla", 2019, 4),
+                    new Car("Citroën", "C3, \"Aircross\"", 2021, 5),
+                    new Motorbike("Honda", "CBR", 2020, 500),
+                    new Car("Toyota", "Yaris", 2019, 4));
+        }
+
+        @Test
+        @DisplayName("CSV round trip test")
+        public void csvRoundTripTest() throws IOException {
+            Path file = directory.resolve("fleet.csv");
+            try(Writer writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+                FleetSerializer.writeCsv(vehicles, writer);
+            }
+            RentalAgency agency = new RentalAgency();
+            ImportReport report = FleetSerializer.importCsv(file, agency);
+
+            assertTrue(report.isComplete());
+            assertEquals(vehicles, agency.getVehicles());
+            for(int i = 0; i < vehicles.size(); i++) {
+                assertEquals(vehicles.get(i).toString(), agency.getVehicles().get(i).toString());
+            }
+        }
+
+        @Test
+        @DisplayName("Binary round trip test")
+        public void binaryRoundTripTest() throws IOException {
+            Path file = directory.resolve("fleet.bin");
+            FleetSerializer.writeBinary(vehicles, file);
+            RentalAgency agency = new RentalAgency();
+            ImportReport report = FleetSerializer.importBinary(file, agency);
+
+            assertTrue(report.isComplete());
+            assertEquals(vehicles, agency.getVehicles());
+            for(int i = 0; i < vehicles.size(); i++) {
+                assertEquals(vehicles.get(i).toString(), agency.getVehicles().get(i).toString());
+            }
+        }
+
+        @Test
+        @DisplayName("Corrupted files test")
+        public void corruptedFilesTest() throws IOException {
+            Path binary = directory.resolve("fleet.bin");
+            FleetSerializer.writeBinary(vehicles, binary);
+            byte[] bytes = Files.readAllBytes(binary);
+            Files.write(binary, Arrays.copyOf(bytes, bytes.length - 3));
+            assertThrows(IOException.class, () -> FleetSerializer.readBinary(binary));
+
+            // Counts larger than the file, negative counts and unknown dictionary ids are reported, never allocated.
+            for(int offset : new int[] {Integer.BYTES, Integer.BYTES * 2, bytes.length - 15}) {
+                for(int value : new int[] {Integer.MAX_VALUE, -1}) {
+                    byte[] corrupted = bytes.clone();
+                    ByteBuffer.wrap(corrupted).putInt(offset, value);
+                    Files.write(binary, corrupted);
+                    assertThrows(IOException.class, () -> FleetSerializer.importBinary(binary, new RentalAgency()));
+                }
+            }
+
+            Path csv = directory.resolve("fleet.csv");
+            Files.writeString(csv, "type,brand,model,productionYear,capacity\nCAR,Toyota,Corolla,2019\n");
+            assertThrows(IllegalArgumentException.class, () -> FleetSerializer.importCsv(csv, new RentalAgency()));
+        }
+    }
+
+    @Nested
+    @DisplayName("DurableRentalAgency tests")
+    class DurableRentalAgencyTests {
+        @TempDir
+        Path directory;
+
+        Car car1, car2, car3;
+        Client client1, client2;
+
+        @BeforeEach
+        public void createObjects() {
+            car1 = new Car("Toyota", "Corolla", 2019, 4);
+            car2 = new Car("Renault", "Clio", 2020, 5);
+            car3 = new Car("Peugeot", "208", 2021, 5);
+            client1 = new Client("John", "Doe", 1990);
+            client2 = new Client("Jane", "Doe", 1992);
+        }
+
+        RentalAgency fleet() {
+            return new RentalAgency(List.of(car1, car2, car3));
+        }
+
+        @Test
+        @DisplayName("Restart test")
+        public void restartTest() throws IOException {
+            try(DurableRentalAgency agency = DurableRentalAgency.open(directory, fleet(), 2)) {
+                agency.rentVehicle(client1, car1);
+                agency.rentVehicle(client2, car2);
+                agency.returnVehicle(client1);
+                agency.rentVehicle(client1, car3);
+            }
+            try(DurableRentalAgency agency = DurableRentalAgency.open(directory, fleet(), 2)) {
+                assertEquals(Set.of(car3), agency.vehiclesRentedBy(client1));
+                assertEquals(Set.of(car2), agency.vehiclesRentedBy(client2));
+                assertFalse(agency.vehicleIsRented(car1));
+
+                agency.snapshot();
+                agency.returnVehicle(client2);
+            }
+            try(DurableRentalAgency agency = DurableRentalAgency.open(directory, fleet())) {
+                assertTrue(agency.aVehicleIsRentedBy(client1));
+                assertFalse(agency.aVehicleIsRentedBy(client2));
+            }
+
+            RentalAgency fleet = fleet();
+            fleet.setRentalLimit(3);
+            try(DurableRentalAgency agency = DurableRentalAgency.open(directory, fleet)) {
+                agency.rentVehicle(client1, car1);
+                agency.rentVehicle(client1, car2);
+                assertTrue(agency.returnVehicle(client1, car3));
+            }
+            fleet = fleet();
+            fleet.setRentalLimit(3);
+            try(DurableRentalAgency agency = DurableRentalAgency.open(directory, fleet)) {
+                assertEquals(Set.of(car1, car2), agency.vehiclesRentedBy(client1));
+            }
+        }
+
+        @Test
+        @DisplayName("Failed journal test")
+        public void failedJournalTest() throws Exception {
+            try(DurableRentalAgency agency = DurableRentalAgency.open(directory, fleet())) {
+                agency.rentVehicle(client1, car1);
+                for(Thread thread : Thread.getAllStackTraces().keySet()) {
+                    if(thread.getName().equals("rental-journal-writer")) {
+                        thread.interrupt();
+                        thread.join();
+                    }
+                }
+
+                // Operations which cannot be journaled are not applied either.
+                assertThrows(IOException.class, () -> agency.rentVehicle(client2, car2));
+                assertFalse(agency.vehicleIsRented(car2));
+                assertThrows(IOException.class, () -> agency.returnVehicle(client1));
+                assertThrows(IOException.class, () -> agency.returnVehicle(client1, car1));
+                assertEquals(Set.of(car1), agency.vehiclesRentedBy(client1));
+            }
+            try(DurableRentalAgency agency = DurableRentalAgency.open(directory, fleet())) {
+                assertEquals(Set.of(car1), agency.vehiclesRentedBy(client1));
+                assertFalse(agency.vehicleIsRented(car2));
+            }
+        }
+
+        @Test
+        @DisplayName("Torn record test")
+        public void tornRecordTest() throws IOException {
+            try(DurableRentalAgency agency = DurableRentalAgency.open(directory, fleet())) {
+                agency.rentVehicle(client1, car1);
+            }
+            Files.write(directory.resolve("rentals.log"), new byte[]{0, 0, 0, 40, 1, 2, 3}, StandardOpenOption.APPEND);
+
+            try(DurableRentalAgency agency = DurableRentalAgency.open(directory, fleet())) {
+                assertEquals(Set.of(car1), agency.vehiclesRentedBy(client1));
+                agency.rentVehicle(client2, car2);
+            }
+            try(DurableRentalAgency agency = DurableRentalAgency.open(directory, fleet())) {
+                assertEquals(Set.of(car1, car2), Set.copyOf(agency.allRentedVehicles()));
+            }
+        }
+
+        @Test
+        @DisplayName("Crash recovery test")
+        public void crashRecoveryTest() throws Exception {
+            String java = ProcessHandle.current().info().command().orElse("java");
+            Process process = new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"),
+                    JournalCrashHarness.class.getName(), directory.toString())
+                    .redirectError(ProcessBuilder.Redirect.DISCARD)
+                    .start();
+            int acknowledged = -1;
+            try(BufferedReader output = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
+                String line;
+                while(acknowledged < 500 && (line = output.readLine()) != null) {
+                    acknowledged = Integer.parseInt(line);
+                }
+            } finally {
+                process.destroyForcibly().waitFor();
+            }
+            assertTrue(acknowledged >= 500);
+
+            Map<Vehicle, Client> recovered;
+            try(DurableRentalAgency agency = DurableRentalAgency.open(directory, JournalCrashHarness.fleet())) {
+                recovered = Map.copyOf(agency.getAgency().getRentals());
+            }
+            // Every acknowledged operation is recovered, and the recovered state is a prefix of the operations.
+            RentalAgency expected = JournalCrashHarness.fleet();
+            int k = 0;
+            for(; k <= acknowledged; k++) {
+                JournalCrashHarness.apply(k, expected);
+            }
+            while(!expected.getRentals().equals(recovered) && k < JournalCrashHarness.OPERATIONS) {
+                JournalCrashHarness.apply(k++, expected);
+            }
+            assertEquals(expected.getRentals(), recovered);
+        }
     }
 }
@@ -0,0 +1,59 @@
+package agency;
+
+import agency.journal.DurableRentalAgency;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A process running bookings on a durable agency until it is killed.
+ * It prints the number of every operation acknowledged by the journal.
+ */
+public class JournalCrashHarness {
+    static final int OPERATIONS = 20_000;
+    static final int SNAPSHOT_INTERVAL = 64;
+
+    static RentalAgency fleet() {
+        List<Vehicle> vehicles = new ArrayList<>();
+        for(int i = 0; i < OPERATIONS; i++) {
+            vehicles.add(new Car("Brand", "Model " + i, 2020, 4));
+        }
+        return new RentalAgency(vehicles);
+    }
+
+    /**
+     * Apply the operation k: even operations rent a vehicle, and every other odd one returns it.
+     */
+    static void apply(int k, RentalAgency agency) {
+        Client client = client(k);
+        if(k % 2 == 0) {
+            agency.rentVehicle(client, vehicle(k));
+        } else if(k % 4 == 1) {
+            agency.returnVehicle(client);
+        }
+    }
+
+    static Client client(int k) {
+        return new Client(k / 2 + 1, "First", "Last", 2000);
+    }
+
+    static Vehicle vehicle(int k) {
+        return new Car("Brand", "Model " + k / 2, 2020, 4);
+    }
+
+    public static void main(String[] args) throws IOException {
+        try(DurableRentalAgency agency = DurableRentalAgency.open(Path.of(args[0]), fleet(), SNAPSHOT_INTERVAL)) {
+            for(int k = 0; k < OPERATIONS; k++) {
+                if(k % 2 == 0) {
+                    agency.rentVehicle(client(k), vehicle(k));
+                } else if(k % 4 == 1) {
+                    agency.returnVehicle(client(k));
+                }
+                System.out.println(k);
+                System.out.flush();
+            }
+        }
+    }
+}
@@ -1,21 +1,98 @@
 package agency;
 
+import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Tag;
 import org.junit.jupiter.api.Test;
+import util.Interner;
+import util.ManualClock;
+import util.PersistentHashMap;
 import util.TimeProvider;
 
+import java.time.*;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
 
 @Tag("util")
 @DisplayName("Util tests")
 public class UtilTests {
+    @AfterEach
+    public void resetClock() {
+        TimeProvider.resetClock();
+    }
+
     @Test
     @DisplayName("Test current year value")
     public void testCurrentYearValue() {
         TimeProvider timeProvider = new TimeProvider();
         assertEquals(timeProvider.currentYearValue(), new Date().getYear() + 1900);
     }
+
+    @Test
+    @DisplayName("Test pinned current year value")
+    public void testPinnedCurrentYearValue() {
+        TimeProvider.setClock(Clock.fixed(Instant.parse("2030-06-15T10:00:00Z"), ZoneOffset.UTC));
+        assertEquals(2030, TimeProvider.currentYearValue());
+        TimeProvider.resetClock();
+        assertEquals(new Date().getYear() + 1900, TimeProvider.currentYearValue());
+    }
+
+    @Test
+    @DisplayName("Test current year value at year boundary")
+    public void testCurrentYearValueAtYearBoundary() {
+        ZoneId paris = ZoneId.of("Europe/Paris");
+        ManualClock clock = new ManualClock(LocalDateTime.of(2030, 12, 31, 23, 59, 59).atZone(paris).toInstant(), paris);
+        TimeProvider.setClock(clock);
+        assertEquals(2030, TimeProvider.currentYearValue());
+        clock.advance(Duration.ofSeconds(1));
+        assertEquals(2031, TimeProvider.currentYearValue());
+        clock.setInstant(Instant.parse("2029-03-01T00:00:00Z"));
+        assertEquals(2029, TimeProvider.currentYearValue());
+    }
+
+    @Test
+    @DisplayName("Test interned strings")
+    public void testInternedStrings() {
+        String brand = new String("Toyota");
+        String canonical = Interner.intern(brand);
+        assertEquals("Toyota", canonical);
+        assertSame(canonical, Interner.intern(new String("Toyota")));
+        assertSame(canonical, Interner.intern(canonical));
+        assertNull(Interner.intern(null));
+    }
+
+    @Test
+    @DisplayName("Test persistent hash map versions")
+    public void testPersistentHashMap() {
+        // Keys 0 and 65536 share their spread hash, they end up in the same leaf.
+        Map<Integer, String> expected = new HashMap<>();
+        PersistentHashMap<Integer, String> map = PersistentHashMap.empty();
+        for(int i = 0; i < 2000; i++) {
+            int key = i % 2 == 0 ? i * 7919 : i << 16;
+            expected.put(key, "v" + i);
+            map = map.plus(key, "v" + i);
+        }
+        assertEquals(expected, map);
+        assertEquals(expected.hashCode(), map.hashCode());
+
+        PersistentHashMap<Integer, String> before = map;
+        assertSame(map, map.plus(0, map.get(0)));
+        assertSame(map, map.minus(-1));
+        for(int key : expected.keySet().stream().filter(key -> key % 3 == 0).toList()) {
+            map = map.minus(key);
+        }
+        expected.keySet().removeIf(key -> key % 3 == 0);
+        assertEquals(expected, map);
+        assertFalse(map.containsKey(0));
+        assertEquals("v0", before.get(0));
+        assertEquals(2000, before.size());
+        assertEquals("w", map.plus(65536, "w").get(65536));
+        assertEquals("v1", map.get(65536));
+    }
 }